@@ -0,0 +1,174 @@
+package de.ksbrwsk.people;
+
+import jakarta.validation.Validation;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.reactive.result.view.ViewResolver;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Shared setup of the benchmarks: a PersonHandler wired against a stubbed PersonRepository, without a database.
+ */
+final class BenchmarkFixtures {
+
+    static final HandlerStrategies STRATEGIES = HandlerStrategies.withDefaults();
+
+    static final ServerResponse.Context CONTEXT = new ServerResponse.Context() {
+        @Override
+        public List<HttpMessageWriter<?>> messageWriters() {
+            return STRATEGIES.messageWriters();
+        }
+
+        @Override
+        public List<ViewResolver> viewResolvers() {
+            return STRATEGIES.viewResolvers();
+        }
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Creates a list of valid persons with ascending ids.
+     *
+     * @param size The number of persons.
+     * @return The persons.
+     */
+    static List<Person> people(int size) {
+        return LongStream.rangeClosed(1, size)
+                .mapToObj(id -> new Person(id, "Name" + (id % 1000)))
+                .toList();
+    }
+
+    /**
+     * Creates a Validator as configured by Spring Boot.
+     *
+     * @return The Validator.
+     */
+    static Validator validator() {
+        return Validation.buildDefaultValidatorFactory().getValidator();
+    }
+
+    /**
+     * Creates a PersonRepository stub answering every query with the given persons.
+     *
+     * @param people The persons the stub answers with.
+     * @return The stubbed repository.
+     */
+    static PersonRepository repository(List<Person> people) {
+        PersonRepository repository = mock(PersonRepository.class, withSettings().stubOnly());
+        Person first = people.get(0);
+        when(repository.findAll()).thenReturn(Flux.fromIterable(people));
+        when(repository.findSnapshotHash()).thenReturn(Mono.just(1L));
+        when(repository.findPage(anyLong(), anyInt())).thenAnswer(invocation -> {
+            int limit = invocation.getArgument(1);
+            return Flux.fromIterable(people.subList(0, Math.min(limit, people.size())));
+        });
+        when(repository.findById(anyLong())).thenReturn(Mono.just(first));
+        when(repository.findFirstByName(anyString())).thenReturn(Mono.just(first));
+        when(repository.save(any(Person.class))).thenReturn(Mono.just(first));
+        return repository;
+    }
+
+    /**
+     * Creates a PersonHandler with the cache and lookup batching disabled, so every lookup reaches the stubbed repository.
+     *
+     * @param repository The repository to use.
+     * @return The handler.
+     */
+    static PersonHandler handler(PersonRepository repository) {
+        return handler(repository, false);
+    }
+
+    /**
+     * Creates a PersonHandler with lookup batching disabled.
+     *
+     * @param repository The repository to use.
+     * @param cached     Whether lookups and encoded bodies are cached.
+     * @return The handler.
+     */
+    static PersonHandler handler(PersonRepository repository, boolean cached) {
+        PeopleProperties properties = properties(cached);
+        PersonCache personCache = new PersonCache(repository, new PersonBatchLoader(repository, properties), properties);
+        return new PersonHandler(repository, personCache,
+                new PersonResponseCache(personCache, new StaticListableBeanFactory().getBeanProvider(CodecCustomizer.class), properties),
+                new PersonValidator(validator()), new PersonNameIndex(repository, properties),
+                new PersonChangeFeed(properties), properties);
+    }
+
+    /**
+     * Creates the settings of the benchmarks, with lookup batching and request limiting disabled.
+     *
+     * @param cached Whether lookups and encoded bodies are cached.
+     * @return The settings.
+     */
+    private static PeopleProperties properties(boolean cached) {
+        return TestPeopleProperties.defaults()
+                .cache(cached)
+                .autocomplete(false)
+                .lookups(false)
+                .limiter(false)
+                .build();
+    }
+
+    /**
+     * Creates a disabled PersonConcurrencyLimiter, so requests are not limited.
+     *
+     * @return The PersonConcurrencyLimiter.
+     */
+    static PersonConcurrencyLimiter limiter() {
+        return new PersonConcurrencyLimiter(properties(false));
+    }
+
+    /**
+     * Creates PersonMetrics without a MeterRegistry, so handler functions are not decorated.
+     *
+     * @return The PersonMetrics.
+     */
+    static PersonMetrics metrics() {
+        return new PersonMetrics(new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    /**
+     * Creates a ServerRequest for the given mock request.
+     *
+     * @param request The mock request.
+     * @return The ServerRequest.
+     */
+    static ServerRequest request(MockServerHttpRequest request) {
+        return ServerRequest.create(MockServerWebExchange.from(request), STRATEGIES.messageReaders());
+    }
+
+    /**
+     * Writes a ServerResponse into a fresh mock exchange and waits for the body to be written.
+     *
+     * @param response The response to write.
+     * @return The exchange the response was written to.
+     */
+    static MockServerWebExchange write(ServerResponse response) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(Constants.API));
+        response.writeTo(exchange, CONTEXT).block();
+        exchange.getResponse().getBodyAsString().block();
+        return exchange;
+    }
+}
@@ -0,0 +1,100 @@
+package de.ksbrwsk.people;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the representations of large findAll responses: the cost to encode a stream of persons as JSON, CBOR
+ * and Smile array, and to decode the encoded array again. The payload sizes are checked by the CodecConfigurationTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private static final ResolvableType PERSON_TYPE = ResolvableType.forClass(Person.class);
+    private static final TypeReference<List<Person>> PEOPLE_TYPE = new TypeReference<>() {
+    };
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private final ObjectMapper json = new ObjectMapper();
+    private final ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+    private final ObjectMapper smile = new ObjectMapper(new SmileFactory());
+    private final Jackson2JsonEncoder jsonEncoder = new Jackson2JsonEncoder(this.json);
+    private final CodecConfiguration.CborArrayEncoder cborEncoder = new CodecConfiguration.CborArrayEncoder(this.cbor);
+    private final CodecConfiguration.SmileArrayEncoder smileEncoder = new CodecConfiguration.SmileArrayEncoder(this.smile);
+    private List<Person> people;
+    private byte[] jsonPayload;
+    private byte[] cborPayload;
+    private byte[] smilePayload;
+
+    @Setup
+    public void setup() throws IOException {
+        this.people = BenchmarkFixtures.people(this.size);
+        this.jsonPayload = this.json.writeValueAsBytes(this.people);
+        this.cborPayload = this.cbor.writeValueAsBytes(this.people);
+        this.smilePayload = this.smile.writeValueAsBytes(this.people);
+    }
+
+    @Benchmark
+    public long encodeJson() {
+        return encode(this.jsonEncoder, MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public long encodeCbor() {
+        return encode(this.cborEncoder, MediaType.APPLICATION_CBOR);
+    }
+
+    @Benchmark
+    public long encodeSmile() {
+        return encode(this.smileEncoder, CodecConfiguration.APPLICATION_SMILE);
+    }
+
+    @Benchmark
+    public List<Person> decodeJson() throws IOException {
+        return this.json.readValue(this.jsonPayload, PEOPLE_TYPE);
+    }
+
+    @Benchmark
+    public List<Person> decodeCbor() throws IOException {
+        return this.cbor.readValue(this.cborPayload, PEOPLE_TYPE);
+    }
+
+    @Benchmark
+    public List<Person> decodeSmile() throws IOException {
+        return this.smile.readValue(this.smilePayload, PEOPLE_TYPE);
+    }
+
+    private long encode(Encoder<Object> encoder, MediaType mediaType) {
+        return encoder.encode(Flux.fromIterable(this.people), DefaultDataBufferFactory.sharedInstance,
+                        PERSON_TYPE, mediaType, Collections.emptyMap())
+                .map(buffer -> {
+                    int readable = buffer.readableByteCount();
+                    DataBufferUtils.release(buffer);
+                    return (long) readable;
+                })
+                .reduce(0L, Long::sum)
+                .block();
+    }
+}
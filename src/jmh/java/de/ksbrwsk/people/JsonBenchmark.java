@@ -0,0 +1,69 @@
+package de.ksbrwsk.people;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import reactor.core.publisher.Flux;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Jackson serialization of a single Person and of Person streams, encoded as JSON array and as NDJSON.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    private static final ResolvableType PERSON_TYPE = ResolvableType.forClass(Person.class);
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Jackson2JsonEncoder encoder = new Jackson2JsonEncoder(this.objectMapper);
+    private final Person person = new Person(1L, "Name");
+    private List<Person> people;
+
+    @Setup
+    public void setup() {
+        this.people = BenchmarkFixtures.people(this.size);
+    }
+
+    @Benchmark
+    public byte[] person() throws JsonProcessingException {
+        return this.objectMapper.writeValueAsBytes(this.person);
+    }
+
+    @Benchmark
+    public long jsonArray() {
+        return encode(MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public long ndjson() {
+        return encode(MediaType.APPLICATION_NDJSON);
+    }
+
+    private long encode(MediaType mediaType) {
+        return this.encoder.encode(Flux.fromIterable(this.people), DefaultDataBufferFactory.sharedInstance,
+                        PERSON_TYPE, mediaType, Collections.emptyMap())
+                .map(buffer -> {
+                    int readable = buffer.readableByteCount();
+                    DataBufferUtils.release(buffer);
+                    return (long) readable;
+                })
+                .reduce(0L, Long::sum)
+                .block();
+    }
+}
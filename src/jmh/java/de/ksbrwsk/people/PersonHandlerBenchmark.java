@@ -0,0 +1,88 @@
+package de.ksbrwsk.people;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static de.ksbrwsk.people.Constants.API;
+
+/**
+ * Measures the handler methods end to end, from the ServerRequest to the written response body,
+ * against a stubbed PersonRepository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersonHandlerBenchmark {
+
+    @Param({"100", "10000"})
+    public int size;
+
+    private PersonHandler handler;
+    private PersonHandler cachedHandler;
+
+    @Setup
+    public void setup() {
+        var repository = BenchmarkFixtures.repository(BenchmarkFixtures.people(this.size));
+        this.handler = BenchmarkFixtures.handler(repository);
+        this.cachedHandler = BenchmarkFixtures.handler(repository, true);
+    }
+
+    @Benchmark
+    public MockServerWebExchange findAll() {
+        return handle(this.handler.handleFindAll(BenchmarkFixtures.request(MockServerHttpRequest.get(API).build())).block());
+    }
+
+    @Benchmark
+    public MockServerWebExchange streamAll() {
+        var request = MockServerHttpRequest.get(API).accept(MediaType.APPLICATION_NDJSON).build();
+        return handle(this.handler.handleStreamAll(BenchmarkFixtures.request(request)).block());
+    }
+
+    @Benchmark
+    public MockServerWebExchange findPage() {
+        var request = MockServerHttpRequest.get(API).queryParam("limit", "100").build();
+        return handle(this.handler.handleFindPage(BenchmarkFixtures.request(request)).block());
+    }
+
+    @Benchmark
+    public MockServerWebExchange findById() {
+        var request = BenchmarkFixtures.request(MockServerHttpRequest.get(API + "/1").build());
+        return handle(this.handler.handleFindById(withId(request)).block());
+    }
+
+    @Benchmark
+    public MockServerWebExchange findByIdCached() {
+        var request = BenchmarkFixtures.request(MockServerHttpRequest.get(API + "/1").build());
+        return handle(this.cachedHandler.handleFindById(withId(request)).block());
+    }
+
+    @Benchmark
+    public MockServerWebExchange create() {
+        var request = MockServerHttpRequest.post(API)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body("{\"name\":\"Name\"}");
+        return handle(this.handler.handleCreate(BenchmarkFixtures.request(request)).block());
+    }
+
+    private static ServerRequest withId(ServerRequest serverRequest) {
+        serverRequest.exchange().getAttributes().put(
+                RouterFunctions.URI_TEMPLATE_VARIABLES_ATTRIBUTE,
+                Map.of("id", "1"));
+        return serverRequest;
+    }
+
+    private static MockServerWebExchange handle(ServerResponse response) {
+        return BenchmarkFixtures.write(response);
+    }
+}
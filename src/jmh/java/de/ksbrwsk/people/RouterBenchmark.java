@@ -0,0 +1,52 @@
+package de.ksbrwsk.people;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import java.util.concurrent.TimeUnit;
+
+import static de.ksbrwsk.people.Constants.API;
+
+/**
+ * Measures the dispatch of requests through the predicates of {@link PersonRouter#http(PersonHandler, PersonMetrics, PersonConcurrencyLimiter)}.
+ * The first and the last routes are measured, as predicates are evaluated in declaration order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+
+    private RouterFunction<ServerResponse> router;
+
+    @Setup
+    public void setup() {
+        PersonHandler handler = BenchmarkFixtures.handler(BenchmarkFixtures.repository(BenchmarkFixtures.people(1)));
+        this.router = new PersonRouter().http(handler, BenchmarkFixtures.metrics(), BenchmarkFixtures.limiter());
+    }
+
+    @Benchmark
+    public HandlerFunction<ServerResponse> findAll() {
+        return route(MockServerHttpRequest.get(API).accept(MediaType.APPLICATION_JSON).build());
+    }
+
+    @Benchmark
+    public HandlerFunction<ServerResponse> findById() {
+        return route(MockServerHttpRequest.get(API + "/1").build());
+    }
+
+    @Benchmark
+    public HandlerFunction<ServerResponse> update() {
+        return route(MockServerHttpRequest.put(API + "/1").contentType(MediaType.APPLICATION_JSON).build());
+    }
+
+    private HandlerFunction<ServerResponse> route(MockServerHttpRequest request) {
+        return this.router.route(BenchmarkFixtures.request(request)).block();
+    }
+}
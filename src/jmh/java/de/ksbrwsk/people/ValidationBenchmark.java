@@ -0,0 +1,48 @@
+package de.ksbrwsk.people;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the compiled PersonValidator with the Bean Validation of a Person, including the formatting
+ * of the error messages. Run with {@code -Djmh.args="-prof gc ValidationBenchmark"} to compare the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    private final Person valid = new Person(1L, "Name");
+    private final Person invalid = new Person(1L, "NameNameNameName");
+    private PersonValidator personValidator;
+
+    @Setup
+    public void setup() {
+        this.personValidator = new PersonValidator(BenchmarkFixtures.validator());
+    }
+
+    @Benchmark
+    public List<String> compiledValid() {
+        return this.personValidator.errors(this.valid);
+    }
+
+    @Benchmark
+    public List<String> compiledInvalid() {
+        return this.personValidator.errors(this.invalid);
+    }
+
+    @Benchmark
+    public List<String> validatorValid() {
+        return this.personValidator.validatorErrors(this.valid);
+    }
+
+    @Benchmark
+    public List<String> validatorInvalid() {
+        return this.personValidator.validatorErrors(this.invalid);
+    }
+}
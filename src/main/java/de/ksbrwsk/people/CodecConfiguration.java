@@ -0,0 +1,210 @@
+package de.ksbrwsk.people;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class registers the binary representations of persons, CBOR and Jackson Smile, next to JSON.
+ * They are encoded by Jackson with the settings of the JSON ObjectMapper, but carry no field separators or quoting,
+ * which makes them smaller and cheaper to encode and decode for service to service calls.
+ * The encoders of Spring only encode single values in these formats, so streams of persons are written
+ * by the encoders below as one binary array, element by element. CBOR is only used if asked for with a content type,
+ * since its codecs are not ordered behind the JSON codecs like the Smile codecs.
+ */
+@Configuration
+public class CodecConfiguration {
+    /**
+     * The media type of Jackson Smile.
+     */
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    /**
+     * The Smile media types including structured suffixes, the codecs of Spring default to the JSON media types
+     * when they are given an ObjectMapper, so they have to be passed explicitly.
+     */
+    private static final MimeType[] SMILE_MIME_TYPES = {APPLICATION_SMILE, new MediaType("application", "*+x-jackson-smile")};
+
+    /**
+     * The binary media types persons can be exchanged with, besides JSON.
+     */
+    static final List<MediaType> BINARY_MEDIA_TYPES = List.of(MediaType.APPLICATION_CBOR, APPLICATION_SMILE);
+
+    /**
+     * Registers the CBOR and Smile codecs on the server and on the web clients.
+     *
+     * @param jackson2ObjectMapperBuilder The builder of the auto-configured JSON ObjectMapper.
+     * @return The CodecCustomizer.
+     */
+    @Bean
+    CodecCustomizer binaryCodecCustomizer(Jackson2ObjectMapperBuilder jackson2ObjectMapperBuilder) {
+        ObjectMapper cbor = jackson2ObjectMapperBuilder.factory(new CBORFactory()).build();
+        ObjectMapper smile = jackson2ObjectMapperBuilder.factory(new SmileFactory()).build();
+        return configurer -> {
+            configurer.defaultCodecs().jackson2SmileEncoder(new SmileArrayEncoder(smile));
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smile, SMILE_MIME_TYPES));
+            configurer.customCodecs().registerWithDefaultConfig(new CborArrayEncoder(cbor));
+            configurer.customCodecs().registerWithDefaultConfig(new CborArrayDecoder(cbor));
+        };
+    }
+
+    /**
+     * Encodes a stream of values as one array of the format of the given ObjectMapper, using a single generator,
+     * so the result is a valid document of the format no matter how many values there are.
+     *
+     * @param objectMapper  The ObjectMapper of the format.
+     * @param inputStream   The values.
+     * @param bufferFactory The factory of the buffers.
+     * @param elementType   The type of the values.
+     * @return The encoded array, one buffer per value plus the start and the end of the array.
+     */
+    static Flux<DataBuffer> encodeArray(ObjectMapper objectMapper, Publisher<?> inputStream,
+                                        DataBufferFactory bufferFactory, ResolvableType elementType) {
+        return Flux.using(() -> new ArrayWriter(objectMapper, elementType),
+                        writer -> Flux.concat(
+                                Mono.fromCallable(writer::start),
+                                Flux.from(inputStream).map(writer::write),
+                                Mono.fromCallable(writer::end)),
+                        ArrayWriter::close)
+                .map(bufferFactory::wrap);
+    }
+
+    /**
+     * Writes the values of an array to a generator and hands out what has been written so far.
+     */
+    private static final class ArrayWriter {
+        private final ByteArrayBuilder output = new ByteArrayBuilder();
+        private final JsonGenerator generator;
+        private final ObjectWriter writer;
+
+        ArrayWriter(ObjectMapper objectMapper, ResolvableType elementType) throws IOException {
+            this.generator = objectMapper.getFactory().createGenerator(this.output);
+            this.writer = objectMapper.writerFor(objectMapper.constructType(elementType.getType()));
+        }
+
+        byte[] start() throws IOException {
+            this.generator.writeStartArray();
+            return this.drain();
+        }
+
+        byte[] write(Object value) {
+            try {
+                this.writer.writeValue(this.generator, value);
+                return this.drain();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        byte[] end() throws IOException {
+            this.generator.writeEndArray();
+            this.generator.close();
+            return this.output.toByteArray();
+        }
+
+        private byte[] drain() throws IOException {
+            this.generator.flush();
+            var written = this.output.toByteArray();
+            this.output.reset();
+            return written;
+        }
+
+        void close() {
+            try {
+                this.generator.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Encodes single values and arrays of values as CBOR.
+     */
+    static final class CborArrayEncoder extends Jackson2CborEncoder {
+        CborArrayEncoder(ObjectMapper objectMapper) {
+            super(objectMapper, MediaType.APPLICATION_CBOR);
+        }
+
+        @Override
+        public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+            return mimeType != null && super.canEncode(elementType, mimeType);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                       ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+            if (inputStream instanceof Mono<?> mono) {
+                return mono.map(value -> this.encodeValue(value, bufferFactory, elementType, mimeType, hints)).flux();
+            }
+            return encodeArray(this.getObjectMapper(), inputStream, bufferFactory, elementType);
+        }
+    }
+
+    /**
+     * Decodes single values and arrays of values from CBOR. Jackson cannot parse CBOR without blocking,
+     * so a stream of values is read as a whole array first, limited like any other body read into memory.
+     */
+    static final class CborArrayDecoder extends Jackson2CborDecoder {
+        CborArrayDecoder(ObjectMapper objectMapper) {
+            super(objectMapper, MediaType.APPLICATION_CBOR);
+        }
+
+        @Override
+        public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+            return mimeType != null && super.canDecode(elementType, mimeType);
+        }
+
+        @Override
+        public Flux<Object> decode(Publisher<DataBuffer> input, ResolvableType elementType,
+                                   MimeType mimeType, Map<String, Object> hints) {
+            var arrayType = ResolvableType.forClassWithGenerics(List.class, elementType);
+            return this.decodeToMono(input, arrayType, mimeType, hints)
+                    .flatMapIterable(values -> (List<?>) values);
+        }
+    }
+
+    /**
+     * Encodes single values and arrays of values as Smile, streams of values of the streaming Smile media type
+     * are still written as separate documents.
+     */
+    static final class SmileArrayEncoder extends Jackson2SmileEncoder {
+        SmileArrayEncoder(ObjectMapper objectMapper) {
+            super(objectMapper, SMILE_MIME_TYPES);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                       ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+            if (inputStream instanceof Mono<?> || this.getStreamingMediaTypes().stream().anyMatch(streaming ->
+                    streaming.isCompatibleWith(mimeType))) {
+                return super.encode(inputStream, bufferFactory, elementType, mimeType, hints);
+            }
+            return encodeArray(this.getObjectMapper(), inputStream, bufferFactory, elementType);
+        }
+    }
+}
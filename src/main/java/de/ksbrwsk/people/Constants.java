@@ -8,4 +8,9 @@ public class Constants {
      * The base API endpoint for all people-related operations.
      */
     public static final String API = "/api/people";
+
+    /**
+     * The response header carrying the cursor of the next page of people.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+package de.ksbrwsk.people;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * This interface declares the Person queries that are written by hand instead of being derived by Spring Data.
+ * It is implemented by {@link CustomPersonRepositoryImpl} and mixed into {@link PersonRepository}.
+ */
+public interface CustomPersonRepository {
+    /**
+     * This method inserts the given people with a single statement and one round trip.
+     * @param people The people to insert, their ids are ignored.
+     * @return A Flux that emits the inserted people with their generated ids, in the order of the given list.
+     */
+    Flux<Person> insertAll(List<Person> people);
+
+    /**
+     * This method finds the people with the given ids with a single statement and one round trip.
+     * @param ids The ids of the people to find.
+     * @return A Flux that emits the people found, in no particular order; ids without a Person are skipped.
+     */
+    Flux<Person> findAllByIds(Collection<Long> ids);
+
+    /**
+     * This method streams CSV encoded names into the person table using the PostgreSQL COPY protocol.
+     * The buffers are written to the database connection as they are requested, so memory use does not grow
+     * with the size of the import.
+     * @param csv The CSV content, one name per line.
+     * @param header Whether the first line is a header line that has to be skipped.
+     * @return A Mono that emits the number of rows copied.
+     */
+    Mono<Long> copyFromCsv(Publisher<? extends DataBuffer> csv, boolean header);
+
+    /**
+     * This method deletes the Person with the given id and returns the deleted row in the same round trip.
+     * @param id The id of the Person to delete.
+     * @return A Mono that emits the deleted Person or completes without emitting any items if no Person is found.
+     */
+    Mono<Person> deleteReturning(Long id);
+
+    /**
+     * This method renames the Person with the given id, raises its version and returns the updated row
+     * in the same round trip.
+     * @param id The id of the Person to update.
+     * @param name The new name.
+     * @return A Mono that emits the updated Person or completes without emitting any items if no Person is found.
+     */
+    Mono<Person> updateName(Long id, String name);
+
+    /**
+     * This method renames the Person with the given id only if it still has the given version,
+     * raises its version and returns the updated row in the same round trip.
+     * @param id The id of the Person to update.
+     * @param name The new name.
+     * @param version The version the Person must have.
+     * @return A Mono that emits the updated Person or completes without emitting any items
+     * if no Person is found or its version is a different one.
+     */
+    Mono<Person> updateName(Long id, String name, long version);
+
+    /**
+     * This method reads the snapshot of the database and the names of all people, in one read only transaction
+     * with repeatable read isolation, so the names are the ones written by exactly the transactions the snapshot sees.
+     * @param fetchSize The number of names fetched from the database at once.
+     * @param reader A function reducing the names, given the text of the snapshot as xmin:xmax:xip_list,
+     *               it is subscribed within the transaction.
+     * @return A Mono that emits the result of the reader.
+     * @param <T> The type of the result.
+     */
+    <T> Mono<T> findAllNamesInSnapshot(int fetchSize, BiFunction<String, Flux<String>, Mono<T>> reader);
+
+    /**
+     * This method reads statistics of the people without scanning the person table. The name lengths are counted
+     * by the triggers on the table as it changes and the id range is read from both ends of the primary key index.
+     * @return A Mono that emits the statistics.
+     */
+    Mono<PersonStats> findStats();
+}
@@ -0,0 +1,185 @@
+package de.ksbrwsk.people;
+
+import io.r2dbc.postgresql.api.PostgresTransactionDefinition;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.IsolationLevel;
+import io.r2dbc.spi.Readable;
+import io.r2dbc.spi.Wrapped;
+import lombok.RequiredArgsConstructor;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * This class implements the hand written Person queries using the DatabaseClient.
+ */
+@RequiredArgsConstructor
+class CustomPersonRepositoryImpl implements CustomPersonRepository {
+    /**
+     * Inserts all names passed as one array parameter, so the statement text does not depend on the number of rows.
+     * The ids are drawn before the insert and returned with the position of their name in the array,
+     * since the order of the rows returned by an insert is not defined.
+     */
+    private static final String INSERT_ALL = """
+            WITH input AS (
+                SELECT nextval(pg_get_serial_sequence('person', 'id')) AS id, name, ordinal
+                FROM unnest(CAST(:names AS varchar[])) WITH ORDINALITY AS names (name, ordinal)
+            ), inserted AS (
+                INSERT INTO person (id, name) SELECT id, name FROM input
+            )
+            SELECT id, ordinal FROM input ORDER BY ordinal""";
+    /**
+     * Finds all ids passed as one array parameter, so the statement text does not depend on the number of ids.
+     */
+    private static final String FIND_ALL_BY_IDS = "SELECT id, name, version FROM person WHERE id = ANY(CAST(:ids AS bigint[]))";
+    private static final String COPY_CSV = "COPY person (name) FROM STDIN WITH (FORMAT csv, HEADER %s)";
+    private static final String DELETE_RETURNING = "DELETE FROM person WHERE id = :id RETURNING id, name, version";
+    private static final String UPDATE_NAME = """
+            UPDATE person SET name = :name, version = version + 1
+            WHERE id = :id
+            RETURNING id, name, version""";
+    private static final String UPDATE_NAME_IF_VERSION = """
+            UPDATE person SET name = :name, version = version + 1
+            WHERE id = :id AND version = :version
+            RETURNING id, name, version""";
+    private static final String FIND_SNAPSHOT = "SELECT CAST(pg_current_snapshot() AS text)";
+    private static final String FIND_ALL_NAMES = "SELECT name FROM person WHERE name IS NOT NULL";
+    /**
+     * Reads see the snapshot taken by their first statement, and do not need to wait for concurrent writers.
+     */
+    private static final PostgresTransactionDefinition SNAPSHOT =
+            PostgresTransactionDefinition.from(IsolationLevel.REPEATABLE_READ).readOnly();
+    private static final String NAME_LENGTHS = "SELECT length, people FROM person_name_lengths WHERE people > 0 ORDER BY length";
+    private static final String ID_RANGE = "SELECT min(id) AS min_id, max(id) AS max_id FROM person";
+    /**
+     * The version of rows inserted without one, the column default.
+     */
+    private static final long INITIAL_VERSION = 0L;
+
+    private final DatabaseClient databaseClient;
+
+    @Override
+    public Flux<Person> insertAll(List<Person> people) {
+        if (people.isEmpty()) {
+            return Flux.empty();
+        }
+        var names = people.stream()
+                .map(Person::name)
+                .toArray(String[]::new);
+        return this.databaseClient.sql(INSERT_ALL)
+                .bind("names", names)
+                .map(row -> new Person(row.get("id", Long.class),
+                        people.get(Math.toIntExact(row.get("ordinal", Long.class)) - 1).name(), INITIAL_VERSION))
+                .all();
+    }
+
+    @Override
+    public Flux<Person> findAllByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        return this.databaseClient.sql(FIND_ALL_BY_IDS)
+                .bind("ids", ids.toArray(Long[]::new))
+                .map(CustomPersonRepositoryImpl::toPerson)
+                .all();
+    }
+
+    @Override
+    public Mono<Long> copyFromCsv(Publisher<? extends DataBuffer> csv, boolean header) {
+        var sql = COPY_CSV.formatted(header);
+        return this.databaseClient.inConnection(connection -> postgresql(connection)
+                .copyIn(sql, Flux.from(csv).map(NettyDataBufferFactory::toByteBuf)));
+    }
+
+    @Override
+    public Mono<Person> deleteReturning(Long id) {
+        return this.databaseClient.sql(DELETE_RETURNING)
+                .bind("id", id)
+                .map(CustomPersonRepositoryImpl::toPerson)
+                .one();
+    }
+
+    @Override
+    public Mono<Person> updateName(Long id, String name) {
+        return this.databaseClient.sql(UPDATE_NAME)
+                .bind("id", id)
+                .bind("name", name)
+                .map(CustomPersonRepositoryImpl::toPerson)
+                .one();
+    }
+
+    @Override
+    public Mono<Person> updateName(Long id, String name, long version) {
+        return this.databaseClient.sql(UPDATE_NAME_IF_VERSION)
+                .bind("id", id)
+                .bind("name", name)
+                .bind("version", version)
+                .map(CustomPersonRepositoryImpl::toPerson)
+                .one();
+    }
+
+    @Override
+    public <T> Mono<T> findAllNamesInSnapshot(int fetchSize, BiFunction<String, Flux<String>, Mono<T>> reader) {
+        return this.databaseClient.inConnection(connection -> Mono.usingWhen(
+                Mono.from(connection.beginTransaction(SNAPSHOT)).thenReturn(connection),
+                transaction -> Mono.from(transaction.createStatement(FIND_SNAPSHOT).execute())
+                        .flatMap(result -> Mono.from(result.map(row -> row.get(0, String.class))))
+                        .flatMap(snapshot -> reader.apply(snapshot,
+                                Flux.from(transaction.createStatement(FIND_ALL_NAMES).fetchSize(fetchSize).execute())
+                                        .flatMap(result -> result.map(row -> row.get(0, String.class))))),
+                Connection::commitTransaction,
+                (transaction, e) -> transaction.rollbackTransaction(),
+                Connection::rollbackTransaction));
+    }
+
+    @Override
+    public Mono<PersonStats> findStats() {
+        var nameLengths = this.databaseClient.sql(NAME_LENGTHS)
+                .map(row -> Map.entry(row.get("length", Integer.class), row.get("people", Long.class)))
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue, LinkedHashMap::new);
+        var idRange = this.databaseClient.sql(ID_RANGE)
+                .map(row -> new Long[]{row.get("min_id", Long.class), row.get("max_id", Long.class)})
+                .one();
+        return Mono.zip(nameLengths, idRange, (lengths, range) -> new PersonStats(
+                lengths.values().stream().mapToLong(Long::longValue).sum(), range[0], range[1], lengths));
+    }
+
+    /**
+     * Maps a row returned by one of the statements above.
+     *
+     * @param row The row with the id, name and version columns.
+     * @return The Person.
+     */
+    private static Person toPerson(Readable row) {
+        return new Person(row.get("id", Long.class), row.get("name", String.class), row.get("version", Long.class));
+    }
+
+    /**
+     * Unwraps the native PostgreSQL connection from the pooled and transaction aware connection proxies.
+     *
+     * @param connection The connection handed out by the DatabaseClient.
+     * @return The PostgreSQL connection.
+     * @throws IllegalStateException If the connection is not a PostgreSQL connection.
+     */
+    private static PostgresqlConnection postgresql(Connection connection) {
+        Object target = connection;
+        while (!(target instanceof PostgresqlConnection) && target instanceof Wrapped<?> wrapped) {
+            target = wrapped.unwrap();
+        }
+        if (target instanceof PostgresqlConnection postgresqlConnection) {
+            return postgresqlConnection;
+        }
+        throw new IllegalStateException("COPY requires a PostgreSQL connection, got " + connection.getClass().getName());
+    }
+}
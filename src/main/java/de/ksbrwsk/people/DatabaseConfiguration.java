@@ -0,0 +1,161 @@
+package de.ksbrwsk.people;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Option;
+import io.r2dbc.spi.Wrapped;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.PropertyMapper;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/**
+ * This class complements the auto-configured R2DBC connection pool, which is sized by the spring.r2dbc.pool properties.
+ * It routes read only work to the read replicas, if any are configured, times every connection acquisition
+ * and every repository query, and opens the initial connections before the application reports readiness.
+ * The pool gauges (acquired, idle, pending, allocated) are published by Spring Boot as r2dbc.pool.* meters.
+ */
+@Configuration
+@Slf4j
+public class DatabaseConfiguration {
+    private static final Duration DEFAULT_WARMUP_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * Decorates the pooled ConnectionFactory with a timer for the acquire latency.
+     * If read replicas are configured, the pool of the primary is put behind a ReplicaRoutingConnectionFactory first,
+     * so the timer covers the replica pools as well.
+     *
+     * @param meterRegistry    The registry the timer is registered with, resolved lazily.
+     * @param peopleProperties The application settings holding the replica urls, resolved lazily.
+     * @param r2dbcProperties  The R2DBC settings the replica pools are configured with, resolved lazily.
+     * @return The BeanPostProcessor decorating the pool.
+     */
+    @Bean
+    static BeanPostProcessor meteredConnectionFactoryPostProcessor(ObjectProvider<MeterRegistry> meterRegistry,
+                                                                   ObjectProvider<PeopleProperties> peopleProperties,
+                                                                   ObjectProvider<R2dbcProperties> r2dbcProperties) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof ConnectionPool connectionPool) {
+                    var replicas = peopleProperties.getObject().replicas();
+                    if (replicas.urls().isEmpty()) {
+                        return new MeteredConnectionFactory(connectionPool, meterRegistry);
+                    }
+                    var replicaPools = IntStream.range(0, replicas.urls().size())
+                            .mapToObj(i -> replicaPool(i, replicas.urls().get(i), r2dbcProperties.getObject()))
+                            .toList();
+                    var routing = new ReplicaRoutingConnectionFactory(connectionPool, replicaPools, replicas);
+                    routing.start();
+                    log.info("routing reads to {} replicas", replicaPools.size());
+                    return new MeteredConnectionFactory(routing, meterRegistry);
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * Creates the connection pool of a replica, using the credentials, connection properties and pool settings
+     * of the primary.
+     *
+     * @param index           The index of the replica, used to name the pool.
+     * @param url             The R2DBC url of the replica.
+     * @param r2dbcProperties The R2DBC settings of the primary.
+     * @return The connection pool of the replica.
+     */
+    private static ConnectionPool replicaPool(int index, String url, R2dbcProperties r2dbcProperties) {
+        var urlOptions = ConnectionFactoryOptions.parse(url);
+        var options = urlOptions.mutate();
+        var map = PropertyMapper.get().alwaysApplyingWhenNonNull();
+        if (!urlOptions.hasOption(ConnectionFactoryOptions.USER)) {
+            map.from(r2dbcProperties.getUsername()).to(username -> options.option(ConnectionFactoryOptions.USER, username));
+            map.from(r2dbcProperties.getPassword()).to(password -> options.option(ConnectionFactoryOptions.PASSWORD, password));
+        }
+        r2dbcProperties.getProperties().forEach((key, value) -> options.option(Option.valueOf(key), value));
+        var pool = r2dbcProperties.getPool();
+        var configuration = ConnectionPoolConfiguration.builder(ConnectionFactories.get(options.build()))
+                .name("replica-" + index);
+        map.from(pool.getInitialSize()).to(configuration::initialSize);
+        map.from(pool.getMaxSize()).to(configuration::maxSize);
+        map.from(pool.getMinIdle()).to(configuration::minIdle);
+        map.from(pool.getMaxIdleTime()).to(configuration::maxIdleTime);
+        map.from(pool.getMaxLifeTime()).to(configuration::maxLifeTime);
+        map.from(pool.getMaxAcquireTime()).to(configuration::maxAcquireTime);
+        map.from(pool.getMaxCreateConnectionTime()).to(configuration::maxCreateConnectionTime);
+        map.from(pool.getMaxValidationTime()).to(configuration::maxValidationTime);
+        map.from(pool.getValidationQuery()).to(configuration::validationQuery);
+        map.from(pool.getValidationDepth()).to(configuration::validationDepth);
+        return new ConnectionPool(configuration.build());
+    }
+
+    /**
+     * Adds a timer and a row count to every query of the repositories.
+     * The repository factories are customized before they create the repository proxies.
+     *
+     * @param meterRegistry The registry the meters are registered with, resolved lazily.
+     * @return The BeanPostProcessor customizing the repository factories.
+     */
+    @Bean
+    static BeanPostProcessor meteredRepositoryPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        var interceptor = new MeteredRepositoryInterceptor(meterRegistry);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> repositoryFactoryBean) {
+                    repositoryFactoryBean.addRepositoryFactoryCustomizer(repositoryFactory ->
+                            repositoryFactory.addRepositoryProxyPostProcessor((proxyFactory, repositoryInformation) ->
+                                    proxyFactory.addAdvice(interceptor)));
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * Opens the initial connections of the pool at startup.
+     * Application runners complete before the readiness state changes to accepting traffic, so the first requests
+     * do not pay for opening connections. A failing warm up is logged and does not prevent the startup.
+     *
+     * @param connectionFactory The configured ConnectionFactory.
+     * @param r2dbcProperties   The R2DBC settings holding the pool configuration.
+     * @return The ApplicationRunner warming up the pool.
+     */
+    @Bean
+    ApplicationRunner connectionPoolWarmup(ConnectionFactory connectionFactory, R2dbcProperties r2dbcProperties) {
+        var timeout = Optional.ofNullable(r2dbcProperties.getPool().getMaxCreateConnectionTime())
+                .orElse(DEFAULT_WARMUP_TIMEOUT);
+        return args -> connectionPool(connectionFactory).ifPresent(connectionPool -> {
+            try {
+                var connections = connectionPool.warmup()
+                        .block(timeout);
+                log.info("connection pool warmed up with {} connections", connections);
+            } catch (RuntimeException e) {
+                log.warn("connection pool warm up failed -> {}", e.getMessage());
+            }
+        });
+    }
+
+    private static Optional<ConnectionPool> connectionPool(ConnectionFactory connectionFactory) {
+        Object target = connectionFactory;
+        while (!(target instanceof ConnectionPool) && target instanceof Wrapped<?> wrapped) {
+            target = wrapped.unwrap();
+        }
+        return target instanceof ConnectionPool connectionPool
+                ? Optional.of(connectionPool)
+                : Optional.empty();
+    }
+}
@@ -0,0 +1,70 @@
+package de.ksbrwsk.people;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.Wrapped;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * This class decorates the pooled ConnectionFactory and times how long it takes to acquire a connection,
+ * including the time spent waiting for a free connection when the pool is exhausted.
+ * The timer is tagged with the outcome of the acquisition: success, error or cancelled.
+ */
+@RequiredArgsConstructor
+class MeteredConnectionFactory implements ConnectionFactory, Wrapped<ConnectionFactory> {
+    /**
+     * The name of the acquire latency timer.
+     */
+    static final String ACQUIRE_METRIC = "r2dbc.pool.acquire";
+
+    private final ConnectionFactory delegate;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Override
+    public Mono<Connection> create() {
+        var registry = this.meterRegistry.getIfAvailable();
+        if (registry == null) {
+            return Mono.from(this.delegate.create());
+        }
+        return Mono.defer(() -> {
+            var sample = Timer.start(registry);
+            return Mono.<Connection>from(this.delegate.create())
+                    .doOnSuccess(connection -> sample.stop(timer(registry, "success")))
+                    .doOnError(e -> sample.stop(timer(registry, "error")))
+                    .doOnCancel(() -> sample.stop(timer(registry, "cancelled")));
+        });
+    }
+
+    private static Timer timer(MeterRegistry registry, String outcome) {
+        return Timer.builder(ACQUIRE_METRIC)
+                .description("Time taken to acquire a connection from the pool")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return this.delegate.getMetadata();
+    }
+
+    /**
+     * Disposes the decorated ConnectionFactory, the pool is declared with this destroy method.
+     */
+    public void dispose() {
+        if (this.delegate instanceof Disposable disposable) {
+            disposable.dispose();
+        }
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return this.delegate;
+    }
+}
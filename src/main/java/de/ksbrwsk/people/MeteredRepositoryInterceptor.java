@@ -0,0 +1,89 @@
+package de.ksbrwsk.people;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class times the queries of the PersonRepository, from the subscription until the last row has been emitted,
+ * and counts the rows each query returns.
+ * The timer is tagged with the repository method and the outcome of the query: success, error or cancelled.
+ */
+@RequiredArgsConstructor
+class MeteredRepositoryInterceptor implements MethodInterceptor {
+    /**
+     * The name of the query timer.
+     */
+    static final String QUERY_METRIC = "people.query";
+
+    /**
+     * The name of the row count summary.
+     */
+    static final String ROWS_METRIC = "people.query.rows";
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        var result = invocation.proceed();
+        var registry = this.meterRegistry.getIfAvailable();
+        if (registry == null) {
+            return result;
+        }
+        var query = invocation.getMethod().getName();
+        if (result instanceof Flux<?> flux) {
+            return metered(registry, query, flux);
+        }
+        if (result instanceof Mono<?> mono) {
+            return metered(registry, query, mono.flux()).singleOrEmpty();
+        }
+        return result;
+    }
+
+    private static <T> Flux<T> metered(MeterRegistry registry, String query, Flux<T> flux) {
+        return Flux.defer(() -> {
+            var sample = Timer.start(registry);
+            var rows = new AtomicLong();
+            return flux
+                    .doOnNext(row -> rows.incrementAndGet())
+                    .doFinally(signal -> {
+                        sample.stop(timer(registry, query, outcome(signal)));
+                        rows(registry, query).record(rows.get());
+                    });
+        });
+    }
+
+    private static String outcome(SignalType signal) {
+        return switch (signal) {
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancelled";
+            default -> "success";
+        };
+    }
+
+    private static Timer timer(MeterRegistry registry, String query, String outcome) {
+        return Timer.builder(QUERY_METRIC)
+                .description("Time taken to run a repository query and read its rows")
+                .tag("query", query)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static DistributionSummary rows(MeterRegistry registry, String query) {
+        return DistributionSummary.builder(ROWS_METRIC)
+                .description("Number of rows returned by a repository query")
+                .baseUnit("rows")
+                .tag("query", query)
+                .register(registry);
+    }
+}
@@ -0,0 +1,162 @@
+package de.ksbrwsk.people;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * This record holds the application specific configuration properties, bound from the "people" prefix.
+ *
+ * @param stream       The settings used when streaming the people collection.
+ * @param batch        The settings used when creating people in bulk.
+ * @param cache        The settings of the cache in front of the single person lookups.
+ * @param replicas     The settings of the read replicas.
+ * @param autocomplete The settings of the in memory name index answering autocomplete queries.
+ * @param lookups      The settings of the single person lookups by id.
+ * @param changes      The settings of the change feed.
+ * @param limiter      The settings of the adaptive concurrency limit in front of the people API.
+ */
+@ConfigurationProperties(prefix = "people")
+public record PeopleProperties(
+        @DefaultValue Stream stream,
+        @DefaultValue Batch batch,
+        @DefaultValue Cache cache,
+        @DefaultValue Replicas replicas,
+        @DefaultValue Autocomplete autocomplete,
+        @DefaultValue Lookups lookups,
+        @DefaultValue Changes changes,
+        @DefaultValue Limiter limiter
+) {
+    /**
+     * The settings used when streaming the people collection.
+     *
+     * @param fetchSize The number of rows requested from the database at once, also used as the downstream demand.
+     */
+    public record Stream(
+            @DefaultValue("250") int fetchSize
+    ) {
+    }
+
+    /**
+     * The settings used when creating people in bulk.
+     *
+     * @param chunkSize The number of people written with one insert statement.
+     */
+    public record Batch(
+            @DefaultValue("500") int chunkSize
+    ) {
+    }
+
+    /**
+     * The settings of the cache in front of the single person lookups.
+     *
+     * @param enabled                  Whether lookups are cached at all.
+     * @param maximumSize              The maximum number of entries per lookup kind.
+     * @param expireAfterWrite         How long a found person is cached.
+     * @param negativeExpireAfterWrite How long the absence of a person is cached.
+     */
+    public record Cache(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("10000") long maximumSize,
+            @DefaultValue("60s") Duration expireAfterWrite,
+            @DefaultValue("5s") Duration negativeExpireAfterWrite
+    ) {
+    }
+
+    /**
+     * The settings of the read replicas. Reads are only routed to replicas if at least one url is configured,
+     * the credentials and pool settings are taken from the spring.r2dbc properties.
+     *
+     * @param urls             The R2DBC urls of the streaming replicas.
+     * @param maxLag           The replay lag above which a replica receives no reads.
+     * @param lagCheckInterval How often the replay lag of the replicas is checked.
+     * @param stickiness       How long a client reads from the primary after a write, to read its own writes.
+     */
+    public record Replicas(
+            @DefaultValue List<String> urls,
+            @DefaultValue("1s") Duration maxLag,
+            @DefaultValue("5s") Duration lagCheckInterval,
+            @DefaultValue("5s") Duration stickiness
+    ) {
+    }
+
+    /**
+     * The settings of the in memory name index answering autocomplete queries.
+     *
+     * @param enabled Whether the index is loaded and kept current at all.
+     */
+    public record Autocomplete(
+            @DefaultValue("true") boolean enabled
+    ) {
+    }
+
+    /**
+     * The settings of the single person lookups by id. Lookups arriving within a short window are answered
+     * by one query for all their ids.
+     *
+     * @param batched     Whether lookups are batched at all.
+     * @param batchSize   The maximum number of ids queried at once, a full batch is queried without waiting.
+     * @param batchWindow How long the first lookup of a batch waits for others, the latency added at most.
+     */
+    public record Lookups(
+            @DefaultValue("true") boolean batched,
+            @DefaultValue("100") int batchSize,
+            @DefaultValue("2ms") Duration batchWindow
+    ) {
+    }
+
+    /**
+     * The settings of the change feed, streaming the changes of the person table to subscribers.
+     *
+     * @param enabled    Whether changes are streamed at all.
+     * @param history    The number of recent changes kept to resume subscriptions from.
+     * @param bufferSize The number of changes buffered per subscriber that does not keep up.
+     * @param onOverflow What happens to a subscriber whose buffer is full.
+     */
+    public record Changes(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("10000") int history,
+            @DefaultValue("256") int bufferSize,
+            @DefaultValue("disconnect") Overflow onOverflow
+    ) {
+        /**
+         * What happens to a subscriber whose buffer is full.
+         */
+        public enum Overflow {
+            /**
+             * The subscription is terminated once the buffered changes are written, the subscriber resumes it.
+             */
+            DISCONNECT,
+            /**
+             * Changes are dropped until the subscriber catches up, it then gets a reset before the next change.
+             */
+            DROP
+        }
+    }
+
+    /**
+     * The settings of the adaptive concurrency limit in front of the people API. The limit follows the latency
+     * of the cheap requests: it shrinks when their latency rises above its long term average and grows again
+     * while it stays there.
+     *
+     * @param enabled      Whether requests are limited at all.
+     * @param initialLimit The limit at startup.
+     * @param minLimit     The lowest limit.
+     * @param maxLimit     The highest limit.
+     * @param tolerance    How much the latency may exceed its long term average before the limit shrinks.
+     * @param smoothing    How fast the limit moves towards its new estimate, between 0 and 1.
+     * @param retryAfter   The delay rejected clients are asked to wait before retrying.
+     */
+    public record Limiter(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("20") int initialLimit,
+            @DefaultValue("4") int minLimit,
+            @DefaultValue("200") int maxLimit,
+            @DefaultValue("1.5") double tolerance,
+            @DefaultValue("0.2") double smoothing,
+            @DefaultValue("1s") Duration retryAfter
+    ) {
+    }
+}
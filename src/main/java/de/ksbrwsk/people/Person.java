@@ -4,10 +4,12 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 
 /**
  * This class represents a Person entity.
  * It includes validation and API documentation annotations.
+ * The version guards against lost updates: saving a person whose version is not the current one fails.
  */
 public record Person(
         @Id
@@ -16,7 +18,10 @@ public record Person(
         @NotBlank
         @Size(min = 1, max = 10)
         @Schema(minLength = 1, maxLength = 10, nullable = false, name = "name", description = "The person's name")
-        String name
+        String name,
+        @Version
+        @Schema(name = "version", description = "The person's version, raised by every update")
+        Long version
 ) {
     /**
      * Constructor that sets the name of the person.
@@ -24,6 +29,16 @@ public record Person(
      * @param name The name of the person.
      */
     public Person(String name) {
-        this(null, name);
+        this(null, name, null);
+    }
+
+    /**
+     * Constructor that sets the id and the name of the person, without a version.
+     *
+     * @param id   The id of the person.
+     * @param name The name of the person.
+     */
+    public Person(Long id, String name) {
+        this(id, name, null);
     }
 }
\ No newline at end of file
@@ -0,0 +1,133 @@
+package de.ksbrwsk.people;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class answers lookups by id arriving within a short window with one query for all their ids.
+ * The first lookup of a batch waits at most for the configured window, a batch reaching the configured size
+ * is queried at once. A batch of a single id is queried like a single lookup.
+ * Queries run without the subscriber context of the lookups, since their result is shared between requests.
+ * A lookup cancelled before its batch is queried leaves its id in the batch.
+ * The sizes of the batches are published as a Micrometer distribution summary.
+ */
+@Component
+public class PersonBatchLoader implements MeterBinder {
+    static final String BATCH_SIZE_METRIC = "people.lookups.batch.size";
+
+    private final PersonRepository personRepository;
+    private final boolean batched;
+    private final int batchSize;
+    private final long batchWindowNanos;
+    private final Scheduler scheduler = Schedulers.parallel();
+    private Map<Long, Sinks.One<Person>> pending = new HashMap<>();
+    private Disposable window;
+    private volatile DistributionSummary batchSizes;
+
+    /**
+     * Creates the loader according to the configured settings.
+     *
+     * @param personRepository The repository the batches are queried from.
+     * @param peopleProperties The application settings.
+     */
+    public PersonBatchLoader(PersonRepository personRepository, PeopleProperties peopleProperties) {
+        this.personRepository = personRepository;
+        this.batched = peopleProperties.lookups().batched();
+        this.batchSize = Math.max(1, peopleProperties.lookups().batchSize());
+        this.batchWindowNanos = peopleProperties.lookups().batchWindow().toNanos();
+    }
+
+    /**
+     * Finds a person by id, together with the other lookups of its batch.
+     *
+     * @param id The id of the person.
+     * @return A Mono that emits the person or completes empty if there is no person with the given id.
+     */
+    public Mono<Person> findById(Long id) {
+        if (!this.batched) {
+            return this.personRepository.findById(id);
+        }
+        return Mono.defer(() -> this.enqueue(id).asMono());
+    }
+
+    private Sinks.One<Person> enqueue(Long id) {
+        Sinks.One<Person> lookup;
+        Map<Long, Sinks.One<Person>> full = null;
+        synchronized (this) {
+            lookup = this.pending.computeIfAbsent(id, key -> Sinks.one());
+            if (this.pending.size() >= this.batchSize) {
+                full = this.takePending();
+            } else if (this.window == null) {
+                this.window = this.scheduler.schedule(this::dispatchPending, this.batchWindowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            this.dispatch(full);
+        }
+        return lookup;
+    }
+
+    private void dispatchPending() {
+        Map<Long, Sinks.One<Person>> batch;
+        synchronized (this) {
+            batch = this.takePending();
+        }
+        if (!batch.isEmpty()) {
+            this.dispatch(batch);
+        }
+    }
+
+    /**
+     * Takes the pending batch and stops its window, the caller has to hold the lock.
+     *
+     * @return The lookups of the pending batch by id.
+     */
+    private Map<Long, Sinks.One<Person>> takePending() {
+        var batch = this.pending;
+        this.pending = new HashMap<>();
+        if (this.window != null) {
+            this.window.dispose();
+            this.window = null;
+        }
+        return batch;
+    }
+
+    private void dispatch(Map<Long, Sinks.One<Person>> batch) {
+        var summary = this.batchSizes;
+        if (summary != null) {
+            summary.record(batch.size());
+        }
+        var rows = batch.size() == 1
+                ? Flux.defer(() -> this.personRepository.findById(batch.keySet().iterator().next()))
+                : Flux.defer(() -> this.personRepository.findAllByIds(batch.keySet()));
+        rows.subscribe(
+                person -> {
+                    var lookup = batch.get(person.id());
+                    if (lookup != null) {
+                        lookup.tryEmitValue(person);
+                    }
+                },
+                error -> batch.values().forEach(lookup -> lookup.tryEmitError(error)),
+                // ids without a row are still waiting
+                () -> batch.values().forEach(Sinks.One::tryEmitEmpty));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.batchSizes = DistributionSummary.builder(BATCH_SIZE_METRIC)
+                .description("The number of distinct ids found with one query")
+                .register(registry);
+    }
+}
@@ -0,0 +1,40 @@
+package de.ksbrwsk.people;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * This record represents the outcome of one element of a batch create request.
+ * Either the id of the created person or the validation error is set.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PersonBatchResult(
+        @Schema(name = "index", description = "The position of the person in the request body")
+        long index,
+        @Schema(name = "id", description = "The id of the created person")
+        Long id,
+        @Schema(name = "error", description = "The reason the person was not created")
+        String error
+) {
+    /**
+     * Creates the result of a person that was created.
+     *
+     * @param index  The position of the person in the request body.
+     * @param person The created person.
+     * @return The result.
+     */
+    public static PersonBatchResult created(long index, Person person) {
+        return new PersonBatchResult(index, person.id(), null);
+    }
+
+    /**
+     * Creates the result of a person that was rejected.
+     *
+     * @param index The position of the person in the request body.
+     * @param error The reason the person was rejected.
+     * @return The result.
+     */
+    public static PersonBatchResult rejected(long index, String error) {
+        return new PersonBatchResult(index, null, error);
+    }
+}
@@ -0,0 +1,222 @@
+package de.ksbrwsk.people;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * This class is a bounded, read-through cache in front of the single person lookups of the PersonRepository.
+ * Found persons and the absence of a person are cached, with a shorter lifetime for the latter.
+ * Concurrent lookups of the same key share one query, also when the cache is disabled.
+ * Writes have to be reported with the invalidate methods. The names whose cached lookup found a person are indexed
+ * by its id, so a write only evicts the entries of the names of that person.
+ * Hits, misses and evictions are published as Micrometer cache metrics, the queries saved by sharing as a counter.
+ */
+@Component
+@Slf4j
+public class PersonCache implements MeterBinder {
+    private final PersonRepository personRepository;
+    private final PersonBatchLoader personBatchLoader;
+    private final boolean enabled;
+    private final AsyncCache<Long, Optional<Person>> byId;
+    private final AsyncCache<String, Optional<Person>> byName;
+    private final SingleFlight<Long, Person> byIdFlights = new SingleFlight<>();
+    private final SingleFlight<String, Person> byNameFlights = new SingleFlight<>();
+    private final LongAdder byIdJoins = new LongAdder();
+    private final LongAdder byNameJoins = new LongAdder();
+    // the names whose cached lookup found the person with the id, may list names no longer cached
+    private final Map<Long, Set<String>> namesById = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the cache according to the configured settings.
+     *
+     * @param personRepository  The repository the lookups by name are delegated to on a miss.
+     * @param personBatchLoader The loader the lookups by id are delegated to on a miss.
+     * @param peopleProperties  The application settings.
+     */
+    public PersonCache(PersonRepository personRepository, PersonBatchLoader personBatchLoader,
+                       PeopleProperties peopleProperties) {
+        this.personRepository = personRepository;
+        this.personBatchLoader = personBatchLoader;
+        this.enabled = peopleProperties.cache().enabled();
+        this.byId = newCache(peopleProperties.cache());
+        this.byName = newCache(peopleProperties.cache(), (name, person, cause) -> {
+            if (name != null && person != null) {
+                person.ifPresent(found -> this.unindex(found.id(), name));
+            }
+        });
+    }
+
+    private static <K> AsyncCache<K, Optional<Person>> newCache(PeopleProperties.Cache settings) {
+        return newCache(settings, (key, person, cause) -> {
+        });
+    }
+
+    private static <K> AsyncCache<K, Optional<Person>> newCache(PeopleProperties.Cache settings,
+                                                                RemovalListener<K, Optional<Person>> evictionListener) {
+        return Caffeine.newBuilder()
+                .maximumSize(settings.maximumSize())
+                .evictionListener(evictionListener)
+                .expireAfter(new Expiry<K, Optional<Person>>() {
+                    @Override
+                    public long expireAfterCreate(K key, Optional<Person> value, long currentTime) {
+                        return value.isPresent()
+                                ? settings.expireAfterWrite().toNanos()
+                                : settings.negativeExpireAfterWrite().toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(K key, Optional<Person> value, long currentTime, long currentDuration) {
+                        return this.expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(K key, Optional<Person> value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+    }
+
+    /**
+     * Finds a person by id, using the cache if possible.
+     *
+     * @param id The id of the person.
+     * @return A Mono that emits the person or completes empty if there is no person with the given id.
+     */
+    public Mono<Person> findById(Long id) {
+        if (!this.enabled) {
+            return this.byIdFlights.execute(id, this.personBatchLoader::findById);
+        }
+        return lookup(this.byId, this.byIdJoins, id, this.personBatchLoader::findById);
+    }
+
+    /**
+     * Finds the first person with the given name, using the cache if possible.
+     *
+     * @param name The name of the person.
+     * @return A Mono that emits the person or completes empty if there is no person with the given name.
+     */
+    public Mono<Person> findFirstByName(String name) {
+        if (!this.enabled) {
+            return this.byNameFlights.execute(name, this.personRepository::findFirstByName);
+        }
+        return lookup(this.byName, this.byNameJoins, name, key -> this.personRepository.findFirstByName(key)
+                .doOnNext(person -> this.namesById.computeIfAbsent(person.id(), id -> ConcurrentHashMap.newKeySet())
+                        .add(key)));
+    }
+
+    /**
+     * Removes a name from the names indexed for a person, once its entry was evicted or invalidated.
+     *
+     * @param id   The id of the person.
+     * @param name The name.
+     */
+    private void unindex(Long id, String name) {
+        this.namesById.computeIfPresent(id, (key, names) -> {
+            names.remove(name);
+            return names.isEmpty() ? null : names;
+        });
+    }
+
+    private static <K> Mono<Person> lookup(AsyncCache<K, Optional<Person>> cache, LongAdder joins, K key,
+                                           Function<K, Mono<Person>> query) {
+        // the query is subscribed without the context of the request, so loads always read from the primary
+        // and a lagging replica cannot put a stale person back into the cache right after an eviction
+        var loaded = new boolean[1];
+        var future = cache.get(key, (k, executor) -> {
+            loaded[0] = true;
+            return query.apply(k)
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .toFuture();
+        });
+        if (!loaded[0] && !future.isDone()) {
+            joins.increment();
+        }
+        // the future is shared with other subscribers, so a cancelled request must not cancel it
+        return Mono.fromFuture(future, true)
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    /**
+     * Removes everything cached about a person that was created, updated or deleted.
+     * This covers the entry of its id, the entry of its name, which may be absent or point to another person,
+     * and the entries of the names indexed for its id. Lookups of these keys that are still running are dropped
+     * as well, since they may have read the row before the write. A lookup of a name the person had before the write
+     * is dropped once that name is reported, as the notification of the write lists the person before and after it.
+     *
+     * @param person The person that was written.
+     */
+    public void invalidate(Person person) {
+        this.invalidate(person.id());
+        if (person.name() != null) {
+            this.invalidateName(person.name());
+        }
+    }
+
+    /**
+     * Removes everything cached about the person with the given id, the entry of its id and the entries
+     * of the names indexed for it, and drops the running lookups of these keys.
+     *
+     * @param id The id of the person that was written.
+     */
+    public void invalidate(Long id) {
+        this.byId.synchronous().invalidate(id);
+        this.byIdFlights.forget(id);
+        var names = this.namesById.remove(id);
+        if (names != null) {
+            names.forEach(this::invalidateName);
+        }
+    }
+
+    private void invalidateName(String name) {
+        var future = this.byName.asMap().remove(name);
+        if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+            future.join().ifPresent(person -> this.unindex(person.id(), name));
+        }
+        this.byNameFlights.forget(name);
+    }
+
+    /**
+     * Removes all entries, for example when writes may have been missed.
+     */
+    public void invalidateAll() {
+        this.byId.synchronous().invalidateAll();
+        this.byName.synchronous().invalidateAll();
+        this.namesById.clear();
+        this.byIdFlights.forgetAll();
+        this.byNameFlights.forgetAll();
+        log.info("person cache flushed");
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, this.byId, "people.byId");
+        CaffeineCacheMetrics.monitor(registry, this.byName, "people.byName");
+        FunctionCounter.builder("people.lookups.coalesced", this, cache -> cache.byIdFlights.coalesced() + cache.byIdJoins.sum())
+                .description("Lookups that joined a running query for the same key instead of issuing their own")
+                .tag("lookup", "byId")
+                .register(registry);
+        FunctionCounter.builder("people.lookups.coalesced", this, cache -> cache.byNameFlights.coalesced() + cache.byNameJoins.sum())
+                .description("Lookups that joined a running query for the same key instead of issuing their own")
+                .tag("lookup", "byName")
+                .register(registry);
+    }
+}
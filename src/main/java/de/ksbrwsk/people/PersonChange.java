@@ -0,0 +1,60 @@
+package de.ksbrwsk.people;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * This record represents a change of the person table as streamed by the change feed.
+ * The sequence is the version drawn by the statement that made the change, all changes of one statement share it
+ * and are numbered by their index. Sequences are unique, but not ordered like the commits. A subscription is resumed
+ * after the position of a change, its sequence and index, or after the sequence of a reset, which stands for all
+ * changes of that statement. A reset tells the subscriber that changes may have been missed and it has to reload
+ * the people.
+ *
+ * @param sequence The version drawn by the statement that made the change.
+ * @param index    The position of the change among the changes of its statement, 0 for a reset.
+ * @param type     The kind of change.
+ * @param id       The id of the changed person, null for a reset.
+ * @param name     The name of the person after the change, before it for a delete, null for a reset.
+ */
+public record PersonChange(
+        @Schema(name = "sequence", description = "The version of the statement that made the change")
+        long sequence,
+        @Schema(name = "index", description = "The position of the change among the changes of its statement")
+        int index,
+        @Schema(name = "type", description = "The kind of change")
+        Type type,
+        @Schema(name = "id", description = "The id of the changed person, null for a reset")
+        Long id,
+        @Schema(name = "name", description = "The name of the person after the change, before it for a delete")
+        String name
+) {
+    /**
+     * The kinds of changes.
+     */
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED,
+        RESET
+    }
+
+    /**
+     * Returns the position to resume a subscription after this change, the sequence and index of a change
+     * separated by a colon or the sequence of a reset.
+     *
+     * @return The position.
+     */
+    public String position() {
+        return this.type == Type.RESET ? String.valueOf(this.sequence) : this.sequence + ":" + this.index;
+    }
+
+    /**
+     * Creates a reset.
+     *
+     * @param sequence The latest sequence known when the changes were missed.
+     * @return The reset.
+     */
+    public static PersonChange reset(long sequence) {
+        return new PersonChange(sequence, 0, Type.RESET, null, null);
+    }
+}
@@ -0,0 +1,238 @@
+package de.ksbrwsk.people;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * This class streams the changes of the person table, published by the PersonChangeListener from its single
+ * database connection, to any number of subscribers. Every subscriber has a bounded buffer of its own, a subscriber
+ * that does not keep up is disconnected or misses changes as configured, without slowing down the others.
+ * The most recent changes are kept, so a subscription can be resumed after the position of the last change received,
+ * even in the middle of a statement. Sequences are unique but not ordered like the commits, so the changes following
+ * that position in the history are replayed; all instances receive the changes in commit order and number the changes
+ * of a statement alike, so a subscription can be resumed on any of them.
+ * If the position is no longer known, the resumed subscription starts with a reset. A subscriber that missed changes
+ * because its buffer was full gets a reset before the next change that fits into it.
+ * The number of subscribers and of the changes dropped and subscribers disconnected are published as Micrometer metrics.
+ */
+@Component
+public class PersonChangeFeed implements MeterBinder {
+    /**
+     * The number of changes a subscriber takes over from its buffer at once, to be written on its own thread.
+     */
+    private static final int PREFETCH = 32;
+
+    private final boolean enabled;
+    private final int historySize;
+    private final int bufferSize;
+    private final PeopleProperties.Changes.Overflow onOverflow;
+    private final ArrayDeque<PersonChange> history = new ArrayDeque<>();
+    private final Set<Sinks.Many<PersonChange>> subscribers = ConcurrentHashMap.newKeySet();
+    // the subscribers that missed changes and are told to reload before the next change, guarded by this
+    private final Set<Sinks.Many<PersonChange>> lagging = new HashSet<>();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    // resuming after this change misses none of the changes in the history, null if unknown, guarded by this
+    private PersonChange anchor;
+    // the sequence of the last change or reset published, guarded by this
+    private long latest;
+
+    /**
+     * Creates the feed according to the configured settings.
+     *
+     * @param peopleProperties The application settings.
+     */
+    public PersonChangeFeed(PeopleProperties peopleProperties) {
+        this.enabled = peopleProperties.changes().enabled();
+        this.historySize = Math.max(0, peopleProperties.changes().history());
+        this.bufferSize = Math.max(1, peopleProperties.changes().bufferSize());
+        this.onOverflow = peopleProperties.changes().onOverflow();
+    }
+
+    /**
+     * Returns whether changes are streamed at all.
+     *
+     * @return True if the feed is enabled.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Subscribes to the changes of the person table.
+     *
+     * @param since The position of the last change received, to resume a subscription, or null to start with
+     *              the next change.
+     * @return A Flux of the changes, the changes after the given position first.
+     */
+    public Flux<PersonChange> changes(String since) {
+        return Flux.defer(() -> {
+            Sinks.Many<PersonChange> subscriber = Sinks.many().unicast()
+                    .onBackpressureBuffer(Queues.<PersonChange>get(this.bufferSize).get());
+            List<PersonChange> missed;
+            synchronized (this) {
+                missed = this.since(since);
+                this.subscribers.add(subscriber);
+            }
+            return Flux.fromIterable(missed)
+                    .concatWith(subscriber.asFlux().publishOn(Schedulers.parallel(), PREFETCH))
+                    .doFinally(signal -> {
+                        this.subscribers.remove(subscriber);
+                        synchronized (this) {
+                            this.lagging.remove(subscriber);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Returns the changes a resumed subscription missed, the caller has to hold the lock.
+     *
+     * @param since The position of the last change received, or a sequence for all changes of its statement.
+     * @return The changes following the position or a reset if it is not known.
+     */
+    private List<PersonChange> since(String since) {
+        if (since == null) {
+            return List.of();
+        }
+        var missed = new ArrayList<PersonChange>();
+        for (var changes = this.history.descendingIterator(); changes.hasNext(); ) {
+            var change = changes.next();
+            if (resumesAfter(since, change)) {
+                return missed.reversed();
+            }
+            missed.add(change);
+        }
+        if (this.anchor != null && resumesAfter(since, this.anchor)) {
+            return List.copyOf(this.history);
+        }
+        return List.of(PersonChange.reset(this.latest));
+    }
+
+    /**
+     * Tells whether a subscription is resumed after a change, named by its position or, as the last change
+     * of its statement, by its sequence.
+     *
+     * @param since  The position or sequence the subscription is resumed after.
+     * @param change The change.
+     * @return true if the change is the one named.
+     */
+    private static boolean resumesAfter(String since, PersonChange change) {
+        return since.equals(change.position()) || since.equals(String.valueOf(change.sequence()));
+    }
+
+    /**
+     * Publishes the rows changed by a statement, ids found before and after it are updated, ids only found
+     * after it are created and ids only found before it are deleted.
+     *
+     * @param sequence The version drawn by the statement.
+     * @param before   The changed rows before the statement.
+     * @param after    The changed rows after the statement.
+     */
+    public void publish(long sequence, List<Person> before, List<Person> after) {
+        if (!this.enabled) {
+            return;
+        }
+        var existed = before.stream().collect(Collectors.toMap(Person::id, Function.identity(), (first, second) -> first));
+        var changes = new ArrayList<PersonChange>(before.size() + after.size());
+        for (var person : after) {
+            var type = existed.remove(person.id()) == null ? PersonChange.Type.CREATED : PersonChange.Type.UPDATED;
+            changes.add(new PersonChange(sequence, changes.size(), type, person.id(), person.name()));
+        }
+        existed.values().forEach(person -> changes.add(
+                new PersonChange(sequence, changes.size(), PersonChange.Type.DELETED, person.id(), person.name())));
+        synchronized (this) {
+            this.latest = sequence;
+            for (var change : changes) {
+                this.history.addLast(change);
+                if (this.history.size() > this.historySize) {
+                    this.anchor = this.history.removeFirst();
+                }
+                this.emit(change);
+            }
+        }
+    }
+
+    /**
+     * Tells all subscribers to reload, since changes may have been missed or were too many to be listed.
+     *
+     * @param sequence The version after which all changes will be published, or null if it is not known.
+     */
+    public void reset(Long sequence) {
+        if (!this.enabled) {
+            return;
+        }
+        synchronized (this) {
+            this.history.clear();
+            this.anchor = sequence == null ? null : PersonChange.reset(sequence);
+            if (sequence != null) {
+                this.latest = sequence;
+            }
+            this.emit(PersonChange.reset(this.latest));
+        }
+    }
+
+    /**
+     * Hands a change to every subscriber, the caller has to hold the lock.
+     * A subscriber that missed changes gets a reset first, as soon as it fits into its buffer.
+     *
+     * @param change The change.
+     */
+    private void emit(PersonChange change) {
+        for (var subscriber : this.subscribers) {
+            var result = this.lagging.contains(subscriber) && change.type() != PersonChange.Type.RESET
+                    ? subscriber.tryEmitNext(PersonChange.reset(this.latest))
+                    : Sinks.EmitResult.OK;
+            if (result == Sinks.EmitResult.OK) {
+                result = subscriber.tryEmitNext(change);
+                if (result == Sinks.EmitResult.OK) {
+                    this.lagging.remove(subscriber);
+                }
+            }
+            if (result == Sinks.EmitResult.FAIL_OVERFLOW) {
+                if (this.onOverflow == PeopleProperties.Changes.Overflow.DROP) {
+                    this.dropped.increment();
+                    this.lagging.add(subscriber);
+                    continue;
+                }
+                // the changes buffered are still written, the subscriber resumes after the last of them
+                subscriber.tryEmitError(Exceptions.failWithOverflow("subscriber did not keep up with the changes"));
+                this.subscribers.remove(subscriber);
+                this.disconnected.increment();
+            } else if (result.isFailure()) {
+                this.subscribers.remove(subscriber);
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("people.changes.subscribers", this.subscribers, Set::size)
+                .description("The number of subscribers of the change feed")
+                .register(registry);
+        FunctionCounter.builder("people.changes.dropped", this.dropped, LongAdder::sum)
+                .description("Changes not delivered to subscribers whose buffer was full")
+                .register(registry);
+        FunctionCounter.builder("people.changes.disconnected", this.disconnected, LongAdder::sum)
+                .description("Subscribers disconnected because their buffer was full")
+                .register(registry);
+    }
+}
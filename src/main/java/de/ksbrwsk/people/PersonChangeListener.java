@@ -0,0 +1,198 @@
+package de.ksbrwsk.people;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.r2dbc.postgresql.api.Notification;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.postgresql.api.PostgresqlResult;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Wrapped;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class keeps the PersonCache, the PersonResponseCache and the PersonNameIndex of this instance consistent
+ * with writes made by this and other instances. It listens on a dedicated, non pooled connection for the notifications published
+ * by the triggers on the person table, evicts the changed persons, moves their names in the index
+ * and publishes them on the PersonChangeFeed.
+ * Whenever the connection is lost the caches are flushed, the index is rebuilt and the feed is reset, since notifications
+ * may have been missed, and the connection is reopened with an exponential backoff.
+ */
+@Component
+@ConditionalOnExpression("${people.cache.enabled:true} or ${people.autocomplete.enabled:true} or ${people.changes.enabled:true}")
+@RequiredArgsConstructor
+@Slf4j
+public class PersonChangeListener implements SmartLifecycle {
+    /**
+     * The channel the triggers on the person table publish to.
+     */
+    static final String CHANNEL = "person_changes";
+
+    private final ConnectionFactory connectionFactory;
+    private final PersonCache personCache;
+    private final PersonResponseCache personResponseCache;
+    private final PersonNameIndex personNameIndex;
+    private final PersonChangeFeed personChangeFeed;
+    private final ObjectMapper objectMapper;
+    private volatile Disposable subscription;
+    // the rows of the statement listed in the notifications so far, only used by the subscription
+    private final List<Person> pendingBefore = new ArrayList<>();
+    private final List<Person> pendingAfter = new ArrayList<>();
+
+    /**
+     * The rows changed by a statement, a statement changing more rows than fit in one notification is listed
+     * in several notifications with the same version.
+     *
+     * @param version The version drawn by the statement.
+     * @param xid     The id of the transaction of the statement.
+     * @param flush   True if too many rows changed to list them.
+     * @param more    True if more rows of the statement are listed in the next notification.
+     * @param before  The changed rows before the change, null for inserts.
+     * @param after   The changed rows after the change, null for deletes.
+     */
+    record Changes(Long version, long xid, boolean flush, boolean more, List<Person> before, List<Person> after) {
+        Changes {
+            before = before == null ? List.of() : before;
+            after = after == null ? List.of() : after;
+        }
+    }
+
+    @Override
+    public void start() {
+        this.subscription = this.listen()
+                .doOnError(e -> log.warn("listening on {} failed -> {}", CHANNEL, e.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(this::onNotification);
+    }
+
+    @Override
+    public void stop() {
+        var current = this.subscription;
+        if (current != null) {
+            current.dispose();
+        }
+        this.subscription = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        var current = this.subscription;
+        return current != null && !current.isDisposed();
+    }
+
+    /**
+     * Opens a connection, subscribes to the channel and emits the payloads of all notifications.
+     * The cache is flushed, the index rebuilt and the feed reset to a version drawn for this purpose once
+     * the subscription is in place, the cache is flushed and the feed reset again when the connection terminates,
+     * which is always signalled as an error so it is retried.
+     * Until the rebuild completes, the index keeps answering from its previous state.
+     *
+     * @return A Flux of notification payloads.
+     */
+    Flux<String> listen() {
+        return Flux.usingWhen(unwrap(this.connectionFactory).create(),
+                        connection -> {
+                            var postgresqlConnection = (PostgresqlConnection) connection;
+                            var subscribe = postgresqlConnection.createStatement("LISTEN " + CHANNEL)
+                                    .execute()
+                                    .flatMap(PostgresqlResult::getRowsUpdated)
+                                    // drawn after LISTEN, so every statement committed later is notified after it
+                                    .thenMany(postgresqlConnection.createStatement("SELECT nextval('person_version_seq')")
+                                            .execute())
+                                    .flatMap(result -> result.map((row, metadata) -> row.get(0, Long.class)))
+                                    .next()
+                                    .doOnNext(version -> {
+                                        log.info("listening on {} from version {}", CHANNEL, version);
+                                        this.flush(version);
+                                    });
+                            return Flux.merge(postgresqlConnection.getNotifications(), subscribe.thenMany(Flux.empty()))
+                                    .mapNotNull(Notification::getParameter);
+                        },
+                        Connection::close)
+                .concatWith(Mono.error(() -> new IllegalStateException("notification connection closed")))
+                .doOnError(e -> {
+                    this.pendingBefore.clear();
+                    this.pendingAfter.clear();
+                    this.personCache.invalidateAll();
+                    this.personResponseCache.invalidateAll();
+                    this.personChangeFeed.reset(null);
+                });
+    }
+
+    /**
+     * Evicts the persons listed in a notification payload from the cache, moves their names in the index
+     * and publishes them on the change feed, once all rows of the statement are listed, so a subscriber
+     * resuming after its version has not missed some of them.
+     *
+     * @param payload The JSON object with the version and the changed persons before and after the change,
+     *                or with the version and the flush marker.
+     */
+    void onNotification(String payload) {
+        try {
+            var changes = this.objectMapper.readValue(payload, Changes.class);
+            if (changes.flush() || changes.version() == null) {
+                this.flush(changes.version());
+                return;
+            }
+            changes.before().forEach(this.personCache::invalidate);
+            changes.after().forEach(this.personCache::invalidate);
+            changes.before().forEach(this.personResponseCache::invalidate);
+            this.personNameIndex.remove(changes.xid(), changes.before());
+            this.personNameIndex.add(changes.xid(), changes.after());
+            this.pendingBefore.addAll(changes.before());
+            this.pendingAfter.addAll(changes.after());
+            if (!changes.more()) {
+                this.personChangeFeed.publish(changes.version(), List.copyOf(this.pendingBefore),
+                        List.copyOf(this.pendingAfter));
+                this.pendingBefore.clear();
+                this.pendingAfter.clear();
+            }
+        } catch (JsonProcessingException e) {
+            log.warn("notification not readable -> {}", payload);
+            this.flush(null);
+        }
+    }
+
+    /**
+     * Flushes the caches, rebuilds the index in the background and resets the change feed.
+     *
+     * @param version The version after which all changes will be notified, or null if it is not known.
+     */
+    private void flush(Long version) {
+        this.pendingBefore.clear();
+        this.pendingAfter.clear();
+        this.personCache.invalidateAll();
+        this.personResponseCache.invalidateAll();
+        this.personChangeFeed.reset(version);
+        this.personNameIndex.rebuild()
+                .subscribe(null, e -> log.warn("rebuilding the person name index failed -> {}", e.getMessage()));
+    }
+
+    /**
+     * Unwraps the ConnectionFactory from the connection pool, so the listening connection does not occupy
+     * a pooled connection for the lifetime of the application.
+     *
+     * @param connectionFactory The configured ConnectionFactory.
+     * @return The innermost ConnectionFactory.
+     */
+    private static ConnectionFactory unwrap(ConnectionFactory connectionFactory) {
+        var target = connectionFactory;
+        while (target instanceof Wrapped<?> wrapped && wrapped.unwrap() instanceof ConnectionFactory inner) {
+            target = inner;
+        }
+        return target;
+    }
+}
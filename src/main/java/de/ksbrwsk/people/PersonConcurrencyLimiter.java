@@ -0,0 +1,254 @@
+package de.ksbrwsk.people;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.util.pattern.PathPattern;
+import reactor.core.publisher.Mono;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static de.ksbrwsk.people.Constants.API;
+
+/**
+ * This class limits the number of requests of the people API handled at once, so requests are rejected right away
+ * instead of piling up when the database slows down. The limit adapts to the latency of the requests reading
+ * or writing single persons, whose cost does not depend on the size of the table: it shrinks by the ratio of
+ * their long term average latency to their recent latency, once that exceeds the configured tolerance, and grows by
+ * its square root while the latency stays within it and the limit is used. Requests scanning the table
+ * are admitted up to half the limit, writes up to nine tenths and reads by key up to the whole limit,
+ * so scans are shed first and reads by key last. Rejected requests are answered with a 503 status and a
+ * Retry-After header. The change feed is not limited, its subscriptions last as long as the client stays connected.
+ * The limit, the requests in flight and the rejected requests are published as Micrometer metrics.
+ */
+@Component
+public class PersonConcurrencyLimiter implements HandlerFilterFunction<ServerResponse, ServerResponse>, MeterBinder {
+    /**
+     * The number of samples the long term average latency is taken over.
+     */
+    private static final int LONG_WINDOW = 600;
+
+    /**
+     * The number of samples the recent latency is taken over.
+     */
+    private static final int SHORT_WINDOW = 10;
+
+    /**
+     * The route counting the persons, a scan if the count is exact.
+     */
+    private static final String COUNT = API + "/count";
+
+    /**
+     * The routes reading single persons, answering from memory or from small tables kept by the triggers.
+     */
+    private static final Set<String> READS = Set.of(API + "/{id}", API + "/firstByName/{name}", COUNT,
+            API + "/stats", API + "/autocomplete");
+
+    /**
+     * The routes writing or looking up many persons at once.
+     */
+    private static final Set<String> BULK_WRITES = Set.of(API + "/lookup", API + "/batch", API + "/import");
+
+    /**
+     * The routes that are not limited.
+     */
+    private static final Set<String> UNLIMITED = Set.of(API + "/changes");
+
+    /**
+     * The priorities of the requests, in the order they are shed.
+     */
+    enum Priority {
+        /**
+         * Requests scanning the table or handling many persons at once.
+         */
+        SCAN(0.5),
+        /**
+         * Requests writing a single person.
+         */
+        WRITE(0.9),
+        /**
+         * Requests reading a single person or answering from memory.
+         */
+        READ(1.0);
+
+        private final double share;
+
+        Priority(double share) {
+            this.share = share;
+        }
+    }
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final String retryAfter;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<Priority, LongAdder> rejected = new EnumMap<>(Priority.class);
+    private volatile double limit;
+    // the average latencies in nanoseconds, guarded by this
+    private double longLatency;
+    private double shortLatency;
+
+    /**
+     * Creates the limiter according to the configured settings.
+     *
+     * @param peopleProperties The application settings.
+     */
+    public PersonConcurrencyLimiter(PeopleProperties peopleProperties) {
+        var settings = peopleProperties.limiter();
+        this.enabled = settings.enabled();
+        this.minLimit = Math.max(1, settings.minLimit());
+        this.maxLimit = Math.max(this.minLimit, settings.maxLimit());
+        this.tolerance = Math.max(1.0, settings.tolerance());
+        this.smoothing = Math.min(1.0, Math.max(0.0, settings.smoothing()));
+        // Retry-After is given in whole seconds, rounded up
+        this.retryAfter = String.valueOf(Math.max(1, (settings.retryAfter().toMillis() + 999) / 1000));
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, settings.initialLimit()));
+        for (var priority : Priority.values()) {
+            this.rejected.put(priority, new LongAdder());
+        }
+    }
+
+    /**
+     * Returns the current limit of the requests handled at once.
+     *
+     * @return The limit.
+     */
+    public int limit() {
+        return (int) this.limit;
+    }
+
+    /**
+     * Returns the number of requests being handled.
+     *
+     * @return The requests in flight.
+     */
+    public int inFlight() {
+        return this.inFlight.get();
+    }
+
+    @Override
+    public Mono<ServerResponse> filter(ServerRequest request, HandlerFunction<ServerResponse> next) {
+        var pattern = pattern(request);
+        if (!this.enabled || UNLIMITED.contains(pattern)) {
+            return next.handle(request);
+        }
+        var priority = priority(request.method(), pattern, request.queryParams());
+        var admitted = this.inFlight.incrementAndGet();
+        if (admitted > this.limit * priority.share) {
+            this.inFlight.decrementAndGet();
+            this.rejected.get(priority).increment();
+            return ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, this.retryAfter)
+                    .build();
+        }
+        var start = System.nanoTime();
+        var released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                this.inFlight.decrementAndGet();
+            }
+        };
+        return Mono.defer(() -> next.handle(request))
+                .<ServerResponse>map(response -> new PersonMetrics.TimedServerResponse(response, status -> {
+                    release.run();
+                    if (status != null && priority != Priority.SCAN) {
+                        this.sample(System.nanoTime() - start, admitted);
+                    }
+                }))
+                .doOnError(e -> release.run())
+                .doOnCancel(release);
+    }
+
+    /**
+     * Returns the pattern of the route matching a request.
+     *
+     * @param request The incoming server request.
+     * @return The pattern, empty if the request was not routed by pattern.
+     */
+    static String pattern(ServerRequest request) {
+        return request.attribute(RouterFunctions.MATCHING_PATTERN_ATTRIBUTE)
+                .filter(PathPattern.class::isInstance)
+                .map(pattern -> ((PathPattern) pattern).getPatternString())
+                .orElse("");
+    }
+
+    /**
+     * Returns the priority of a request.
+     * Counting exactly scans the table, only the estimated count is answered in constant time.
+     *
+     * @param method      The method of the request.
+     * @param pattern     The pattern of the route matching it.
+     * @param queryParams The query parameters of the request.
+     * @return The priority.
+     */
+    static Priority priority(HttpMethod method, String pattern, MultiValueMap<String, String> queryParams) {
+        if (HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method)) {
+            if (COUNT.equals(pattern) && Boolean.parseBoolean(queryParams.getFirst("exact"))) {
+                return Priority.SCAN;
+            }
+            return READS.contains(pattern) ? Priority.READ : Priority.SCAN;
+        }
+        return BULK_WRITES.contains(pattern) ? Priority.SCAN : Priority.WRITE;
+    }
+
+    /**
+     * Adapts the limit to the latency of a request.
+     * While fewer than half of the limit were in flight the latency says nothing about the limit, it is kept.
+     *
+     * @param latency  The time taken to handle the request, including writing the response body, in nanoseconds.
+     * @param inFlight The requests in flight when it was admitted.
+     */
+    synchronized void sample(long latency, int inFlight) {
+        if (this.longLatency == 0) {
+            this.longLatency = latency;
+            this.shortLatency = latency;
+        }
+        this.longLatency += (latency - this.longLatency) / LONG_WINDOW;
+        this.shortLatency += (latency - this.shortLatency) / SHORT_WINDOW;
+        if (this.longLatency > 2 * this.shortLatency) {
+            // the load dropped, let the long term average recover faster than its window
+            this.longLatency *= 0.95;
+        }
+        var current = this.limit;
+        if (inFlight < current / 2) {
+            return;
+        }
+        var gradient = Math.max(0.5, Math.min(1.0, this.tolerance * this.longLatency / this.shortLatency));
+        var estimate = current * gradient + Math.sqrt(current);
+        var next = current * (1 - this.smoothing) + estimate * this.smoothing;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, next));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("people.limiter.limit", this, PersonConcurrencyLimiter::limit)
+                .description("The number of requests of the people API handled at once")
+                .register(registry);
+        Gauge.builder("people.limiter.inflight", this, PersonConcurrencyLimiter::inFlight)
+                .description("The number of requests of the people API being handled")
+                .register(registry);
+        this.rejected.forEach((priority, count) -> FunctionCounter.builder("people.limiter.rejected", count, LongAdder::sum)
+                .description("Requests of the people API rejected because the limit was reached")
+                .tag("priority", priority.name())
+                .register(registry));
+    }
+}
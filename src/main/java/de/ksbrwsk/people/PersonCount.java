@@ -0,0 +1,17 @@
+package de.ksbrwsk.people;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * This record represents the number of people.
+ *
+ * @param count The number of people.
+ * @param exact Whether the people have been counted or the number is an estimate.
+ */
+public record PersonCount(
+        @Schema(name = "count", description = "The number of people")
+        long count,
+        @Schema(name = "exact", description = "Whether the people have been counted or the number is an estimate")
+        boolean exact
+) {
+}
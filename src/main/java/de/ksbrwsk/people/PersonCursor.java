@@ -0,0 +1,61 @@
+package de.ksbrwsk.people;
+
+import org.springframework.web.server.ServerWebInputException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * This record represents an opaque keyset cursor used to page through the people collection.
+ * It wraps the id of the last Person of a page, so the next page can be read with an index seek on the primary key.
+ *
+ * @param afterId The id after which the next page starts.
+ */
+public record PersonCursor(long afterId) {
+
+    /**
+     * The cursor pointing before the first Person.
+     */
+    public static final PersonCursor FIRST = new PersonCursor(0L);
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    /**
+     * Creates the cursor pointing after the given person.
+     *
+     * @param person The last person of the current page.
+     * @return A cursor for the following page.
+     */
+    public static PersonCursor after(Person person) {
+        return new PersonCursor(person.id());
+    }
+
+    /**
+     * Parses a cursor previously returned by {@link #encode()}.
+     *
+     * @param value The encoded cursor.
+     * @return The decoded cursor.
+     * @throws ServerWebInputException If the value is not a valid cursor.
+     */
+    public static PersonCursor parse(String value) {
+        try {
+            var afterId = Long.parseLong(new String(DECODER.decode(value), StandardCharsets.US_ASCII));
+            if (afterId < 0) {
+                throw new ServerWebInputException("cursor not valid");
+            }
+            return new PersonCursor(afterId);
+        } catch (IllegalArgumentException e) {
+            throw new ServerWebInputException("cursor not valid");
+        }
+    }
+
+    /**
+     * Encodes this cursor into an opaque, URL-safe string.
+     *
+     * @return The encoded cursor.
+     */
+    public String encode() {
+        return ENCODER.encodeToString(Long.toString(this.afterId).getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -1,25 +1,40 @@
 package de.ksbrwsk.people;
 
-import jakarta.validation.ConstraintViolation;
-import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.server.ServerWebInputException;
+import org.springframework.web.server.UnsupportedMediaTypeStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static de.ksbrwsk.people.Constants.API;
+import static de.ksbrwsk.people.Constants.NEXT_CURSOR_HEADER;
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.CONFLICT;
+import static org.springframework.http.HttpStatus.PRECONDITION_FAILED;
 import static org.springframework.web.reactive.function.BodyInserters.fromValue;
 import static org.springframework.web.reactive.function.server.ServerResponse.*;
 
@@ -31,31 +46,389 @@ import static org.springframework.web.reactive.function.server.ServerResponse.*;
 @RequiredArgsConstructor
 @Slf4j
 public class PersonHandler {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int DEFAULT_SEARCH_LIMIT = 10;
+    private static final int MIN_QUERY_LENGTH = 3;
+    private static final int MAX_QUERY_LENGTH = 255;
+    private static final int MAX_LOOKUP_IDS = 1000;
+
+    /**
+     * The media types the people collection can be streamed with, one element at a time.
+     */
+    static final List<MediaType> STREAMING_MEDIA_TYPES = List.of(MediaType.APPLICATION_NDJSON, MediaType.TEXT_EVENT_STREAM);
+
+    /**
+     * The media type of CSV encoded imports.
+     */
+    static final MediaType TEXT_CSV = new MediaType("text", "csv");
+
+    /**
+     * The media types persons are written with, JSON first.
+     */
+    static final List<MediaType> PERSON_MEDIA_TYPES = Stream.concat(Stream.of(MediaType.APPLICATION_JSON),
+            CodecConfiguration.BINARY_MEDIA_TYPES.stream()).toList();
+
     private final PersonRepository personRepository;
-    private final Validator validator;
+    private final PersonCache personCache;
+    private final PersonResponseCache personResponseCache;
+    private final PersonValidator personValidator;
+    private final PersonNameIndex personNameIndex;
+    private final PersonChangeFeed personChangeFeed;
+    private final PeopleProperties peopleProperties;
 
     /**
      * Handles a request to get all persons.
+     * The ETag is a hash of the database snapshot, read before the persons, so a client never keeps a list older
+     * than its ETag. It is weak, since the order of the persons may change without a write.
      *
      * @param serverRequest The incoming server request.
-     * @return A ServerResponse with the list of all persons.
+     * @return A ServerResponse with the list of all persons or a 304 status if the client's list is current.
      */
     public Mono<ServerResponse> handleFindAll(ServerRequest serverRequest) {
+        return this.personRepository.findSnapshotHash()
+                .map(hash -> "W/\"" + Long.toHexString(hash) + "\"")
+                .flatMap(etag -> ifNoneMatch(serverRequest, etag, () -> okNegotiated(serverRequest)
+                        .eTag(etag)
+                        .body(this.personRepository.findAll(), Person.class)))
+                .switchIfEmpty(Mono.defer(() -> okNegotiated(serverRequest)
+                        .body(this.personRepository.findAll(), Person.class)));
+    }
+
+    /**
+     * Starts a successful response carrying persons in the representation negotiated with the request.
+     *
+     * @param serverRequest The incoming server request.
+     * @return The response builder.
+     */
+    private static ServerResponse.BodyBuilder okNegotiated(ServerRequest serverRequest) {
+        return ok()
+                .contentType(personMediaType(serverRequest))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+    }
+
+    /**
+     * Returns the media type persons are written with, the JSON or binary media type accepted with the highest quality.
+     * Wildcards do not count, so clients that do not ask for a binary representation keep getting JSON.
+     *
+     * @param serverRequest The incoming server request.
+     * @return The media type of the response.
+     */
+    static MediaType personMediaType(ServerRequest serverRequest) {
+        return serverRequest.headers().accept().stream()
+                .sorted(Comparator.comparingDouble(MediaType::getQualityValue).reversed())
+                .flatMap(accepted -> PERSON_MEDIA_TYPES.stream()
+                        .filter(supported -> supported.equalsTypeAndSubtype(accepted)))
+                .findFirst()
+                .orElse(MediaType.APPLICATION_JSON);
+    }
+
+    /**
+     * Handles a request to stream all persons as newline delimited JSON or as server-sent events.
+     * Rows are written as they arrive from the database and only requested in batches of the configured fetch size,
+     * so the server never buffers the whole collection.
+     *
+     * @param serverRequest The incoming server request.
+     * @return A ServerResponse streaming all persons.
+     */
+    public Mono<ServerResponse> handleStreamAll(ServerRequest serverRequest) {
+        var people = this.personRepository.findAll()
+                .limitRate(this.peopleProperties.stream().fetchSize());
+        var mediaType = streamingMediaType(serverRequest).orElse(MediaType.APPLICATION_NDJSON);
+        if (MediaType.TEXT_EVENT_STREAM.equalsTypeAndSubtype(mediaType)) {
+            return ok()
+                    .contentType(MediaType.TEXT_EVENT_STREAM)
+                    .body(people.map(person -> ServerSentEvent.builder(person)
+                            .id(String.valueOf(person.id()))
+                            .build()), ServerSentEvent.class);
+        }
         return ok()
-                .body(this.personRepository.findAll(), Person.class);
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(people, Person.class);
+    }
+
+    /**
+     * Returns the first streaming media type explicitly accepted by the request.
+     * Wildcards do not count, so clients that do not ask for a stream keep getting a JSON array.
+     *
+     * @param serverRequest The incoming server request.
+     * @return The accepted streaming media type, if any.
+     */
+    static Optional<MediaType> streamingMediaType(ServerRequest serverRequest) {
+        return serverRequest.headers().accept().stream()
+                .flatMap(accepted -> STREAMING_MEDIA_TYPES.stream()
+                        .filter(streaming -> streaming.equalsTypeAndSubtype(accepted)))
+                .findFirst();
+    }
+
+    /**
+     * Handles a request to get one page of persons.
+     * The page starts after the given cursor and the cursor of the next page is returned in a response header.
+     *
+     * @param serverRequest The incoming server request.
+     * @return A ServerResponse with the persons of the page or a 400 status if cursor or limit are invalid.
+     */
+    public Mono<ServerResponse> handleFindPage(ServerRequest serverRequest) {
+        var limit = serverRequest.queryParam("limit")
+                .map(this::parseLimit)
+                .orElse(DEFAULT_PAGE_SIZE);
+        var cursor = serverRequest.queryParam("cursor")
+                .map(PersonCursor::parse)
+                .orElse(PersonCursor.FIRST);
+        return this.personRepository.findPage(cursor.afterId(), limit + 1)
+                .collectList()
+                .flatMap(people -> {
+                    if (people.size() <= limit) {
+                        return ok().bodyValue(people);
+                    }
+                    var page = people.subList(0, limit);
+                    return ok()
+                            .header(NEXT_CURSOR_HEADER, PersonCursor.after(page.getLast()).encode())
+                            .bodyValue(page);
+                });
+    }
+
+    /**
+     * Handles a request to search persons by name.
+     * Names containing the query or similar to it are streamed, the most similar first, up to the given limit.
+     * Queries need at least three characters, the length of a trigram, to be served by the index.
+     *
+     * @param serverRequest The incoming server request.
+     * @return A ServerResponse with the persons found or a 400 status if query or limit are invalid.
+     */
+    public Mono<ServerResponse> handleSearch(ServerRequest serverRequest) {
+        var query = serverRequest.queryParam("q")
+                .map(String::strip)
+                .filter(q -> q.length() >= MIN_QUERY_LENGTH && q.length() <= MAX_QUERY_LENGTH)
+                .orElseThrow(() -> new ServerWebInputException(
+                        "q must have between " + MIN_QUERY_LENGTH + " and " + MAX_QUERY_LENGTH + " characters"));
+        var limit = serverRequest.queryParam("limit")
+                .map(this::parseLimit)
+                .orElse(DEFAULT_SEARCH_LIMIT);
+        var pattern = "%" + query.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return ok()
+                .contentType(streamingMediaType(serverRequest).orElse(MediaType.APPLICATION_JSON))
+                .body(this.personRepository.search(query, pattern, limit), Person.class);
+    }
+
+    /**
+     * Handles a request to complete a name prefix.
+     * The distinct names starting with the prefix, ignoring case, are answered from the in memory name index
+     * in alphabetical order, up to the given limit.
+     *
+     * @param serverRequest The incoming server request.
+     * @return A ServerResponse with the names found, a 400 status if prefix or limit are invalid
+     * or a 503 status if the index is not loaded.
+     */
+    public Mono<ServerResponse> handleAutocomplete(ServerRequest serverRequest) {
+        var prefix = serverRequest.queryParam("prefix")
+                .filter(p -> !p.isEmpty() && p.length() <= MAX_QUERY_LENGTH)
+                .orElseThrow(() -> new ServerWebInputException(
+                        "prefix must have between 1 and " + MAX_QUERY_LENGTH + " characters"));
+        var limit = serverRequest.queryParam("limit")
+                .map(this::parseLimit)
+                .orElse(DEFAULT_SEARCH_LIMIT);
+        if (!this.personNameIndex.isLoaded()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "name index not loaded");
+        }
+        return ok()
+                .bodyValue(this.personNameIndex.complete(prefix, limit));
+    }
+
+    /**
+     * Handles a request to count the persons.
+     * By default the count is the estimate of the query planner, read in constant time and kept current
+     * by VACUUM and ANALYZE; with exact=true the persons are counted, which scans the table.
+     * Until the table has been analyzed the count of the statistics is answered.
+     *
+     * @param serverRequest The incoming server request.
+     * @return A ServerResponse with the number of persons and whether it is exact.
+     */
+    public Mono<ServerResponse> handleCount(ServerRequest serverRequest) {
+        var exact = serverRequest.queryParam("exact")
+                .map(Boolean::parseBoolean)
+                .orElse(false);
+        if (exact) {
+            return this.personRepository.count()
+                    .flatMap(count -> ok()
+                            .bodyValue(new PersonCount(count, true)));
+        }
+        return this.personRepository.estimateCount()
+                .filter(estimate -> estimate >= 0)
+                .map(estimate -> new PersonCount(estimate, false))
+                .switchIfEmpty(Mono.defer(this.personRepository::findStats)
+                        .map(stats -> new PersonCount(stats.count(), true)))
+                .flatMap(personCount -> ok()
+                        .bodyValue(personCount));
+    }
+
+    /**
+     * Handles a request to get statistics of the persons, the number of persons, the id range and the distribution
+     * of the name lengths. They are maintained as the persons change, so reading them does not scan the table.
+     *
+     * @param serverRequest The incoming server request.
+     * @return A ServerResponse with the statistics.
+     */
+    public Mono<ServerResponse> handleStats(ServerRequest serverRequest) {
+        return this.personRepository.findStats()
+                .flatMap(stats -> ok()
+                        .bodyValue(stats));
+    }
+
+    /**
+     * Handles a request to stream the changes of the persons as server-sent events or as newline delimited JSON.
+     * Every change carries its position, the sequence of its statement and its index within it, as the id of its event.
+     * A client resumes after the last change received by passing its position as the since parameter or, when
+     * reconnecting to the event stream, as the Last-Event-ID header. A reset tells the client it has to reload
+     * the persons, since the changes after that position are no longer known.
+     *
+     * @param serverRequest The incoming server request.
+     * @return A ServerResponse streaming the changes, a 400 status if the position is invalid
+     * or a 503 status if the change feed is disabled.
+     */
+    public Mono<ServerResponse> handleChanges(ServerRequest serverRequest) {
+        var since = serverRequest.queryParam("since")
+                .or(() -> Optional.ofNullable(serverRequest.headers().firstHeader("Last-Event-ID")))
+                .map(PersonHandler::parsePosition)
+                .orElse(null);
+        if (!this.personChangeFeed.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "change feed disabled");
+        }
+        var changes = this.personChangeFeed.changes(since);
+        if (streamingMediaType(serverRequest).filter(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype).isPresent()) {
+            return ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(changes, PersonChange.class);
+        }
+        return ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(changes.map(change -> ServerSentEvent.builder(change)
+                        .id(change.position())
+                        .event(change.type().name())
+                        .build()), ServerSentEvent.class);
+    }
+
+    /**
+     * Parses the position of the last change received, a sequence and an index separated by a colon,
+     * or a sequence alone for all changes of its statement.
+     *
+     * @param position The position as passed by the client.
+     * @return The position, as the change feed writes it.
+     * @throws ServerWebInputException If the position is not a sequence with an optional index.
+     */
+    private static String parsePosition(String position) {
+        var parts = position.strip().split(":", -1);
+        try {
+            var sequence = Long.parseLong(parts[0]);
+            return switch (parts.length) {
+                case 1 -> String.valueOf(sequence);
+                case 2 -> sequence + ":" + Integer.parseUnsignedInt(parts[1]);
+                default -> throw new NumberFormatException(position);
+            };
+        } catch (NumberFormatException e) {
+            throw new ServerWebInputException("since must be the position of a change");
+        }
+    }
+
+    /**
+     * Handles a request to get the persons with the ids of a query parameter.
+     *
+     * @param serverRequest The incoming server request.
+     * @return A ServerResponse with the persons found and the ids missing, in request order,
+     * or a 400 status if the ids are invalid.
+     */
+    public Mono<ServerResponse> handleFindAllByIds(ServerRequest serverRequest) {
+        var ids = serverRequest.queryParam("ids")
+                .map(PersonHandler::parseIds)
+                .orElseThrow(() -> new ServerWebInputException("ids must not be empty"));
+        return this.lookup(serverRequest, Flux.fromIterable(ids));
+    }
+
+    /**
+     * Handles a request to get the persons with the ids of the request body, a JSON array or a newline delimited
+     * JSON stream of ids. Streamed responses are written chunk by chunk while the ids are read, so lookups
+     * of any size pass without being buffered; other responses are limited to 1000 ids.
+     *
+     * @param serverRequest The incoming server request.
+     * @return A ServerResponse with the persons found and the ids missing, in request order,
+     * or a 400 status if the ids are invalid.
+     */
+    public Mono<ServerResponse> handleLookup(ServerRequest serverRequest) {
+        return this.lookup(serverRequest, serverRequest.bodyToFlux(Long.class));
+    }
+
+    /**
+     * Finds persons by id, one query per chunk of the configured batch size.
+     * Streamed responses emit the result of every chunk, other responses the result of all ids.
+     *
+     * @param serverRequest The incoming server request.
+     * @param ids           The requested ids.
+     * @return A ServerResponse with the results.
+     */
+    private Mono<ServerResponse> lookup(ServerRequest serverRequest, Flux<Long> ids) {
+        var streaming = streamingMediaType(serverRequest);
+        if (streaming.isPresent()) {
+            return ok()
+                    .contentType(streaming.get())
+                    .body(this.lookupChunks(ids), PersonLookupResult.class);
+        }
+        var limited = ids.index((index, id) -> {
+            if (index >= MAX_LOOKUP_IDS) {
+                throw new ServerWebInputException("at most " + MAX_LOOKUP_IDS + " ids, stream larger lookups as "
+                        + MediaType.APPLICATION_NDJSON_VALUE);
+            }
+            return id;
+        });
+        return this.lookupChunks(limited)
+                .collectList()
+                .flatMap(chunks -> ok()
+                        .bodyValue(PersonLookupResult.concat(chunks)));
+    }
+
+    private Flux<PersonLookupResult> lookupChunks(Flux<Long> ids) {
+        return ids.buffer(this.peopleProperties.lookups().batchSize())
+                .concatMap(chunk -> this.personRepository.findAllByIds(new LinkedHashSet<>(chunk))
+                        .collectMap(Person::id)
+                        .map(found -> PersonLookupResult.of(chunk, found)));
+    }
+
+    /**
+     * Parses a comma separated list of ids.
+     *
+     * @param ids The ids query parameter.
+     * @return The ids, in request order.
+     * @throws ServerWebInputException If an id is not a number or there are too many ids.
+     */
+    private static List<Long> parseIds(String ids) {
+        try {
+            var parsed = Arrays.stream(ids.split(","))
+                    .map(String::strip)
+                    .map(Long::valueOf)
+                    .toList();
+            if (parsed.size() <= MAX_LOOKUP_IDS) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            log.info("ids not valid -> {}", ids);
+        }
+        throw new ServerWebInputException("ids must be a comma separated list of at most " + MAX_LOOKUP_IDS + " ids");
     }
 
     /**
      * Handles a request to get a person by id.
+     * The body is written as encoded by the PersonResponseCache, without serializing the person again.
      *
      * @param serverRequest The incoming server request.
-     * @return A ServerResponse with the person found or a 404 status if not found.
+     * @return A ServerResponse with the person found, a 304 status if the client's copy is current
+     * or a 404 status if not found.
      */
     public Mono<ServerResponse> handleFindById(ServerRequest serverRequest) {
         var id = Long.parseLong(serverRequest.pathVariable("id"));
-        return this.personRepository.findById(id)
-                .flatMap(person -> ok()
-                        .bodyValue(person))
+        return this.personResponseCache.findById(id, personMediaType(serverRequest))
+                .flatMap(encoded -> ifNoneMatch(serverRequest, encoded.etag(), () -> okNegotiated(serverRequest)
+                        .eTag(encoded.etag())
+                        .contentLength(encoded.length())
+                        .body(BodyInserters.fromDataBuffers(Mono.fromSupplier(encoded::buffer)))))
                 .switchIfEmpty(notFound().build());
     }
 
@@ -63,29 +436,34 @@ public class PersonHandler {
      * Handles a request to get the first person found by name.
      *
      * @param serverRequest The incoming server request.
-     * @return A ServerResponse with the person found or a 404 status if not found.
+     * @return A ServerResponse with the person found, a 304 status if the client's copy is current
+     * or a 404 status if not found.
      */
     public Mono<ServerResponse> handleFindFirstByName(ServerRequest serverRequest) {
         log.info("Handle request {} {}", serverRequest.method(), serverRequest.path());
         var name = serverRequest.pathVariable("name");
-        Mono<Person> firstByName = this.personRepository.findFirstByName(name);
+        Mono<Person> firstByName = this.personCache.findFirstByName(name);
         Mono<ServerResponse> notFound = notFound().build();
-        return firstByName.flatMap(person -> ok()
-                        .body(fromValue(person)))
+        var mediaType = personMediaType(serverRequest);
+        return firstByName.flatMap(person -> ifNoneMatch(serverRequest, etag(person, mediaType), () -> okNegotiated(serverRequest)
+                        .eTag(etag(person, mediaType))
+                        .body(fromValue(person))))
                 .switchIfEmpty(notFound);
     }
 
     /**
      * Handles a request to delete a person by id.
+     * The person is deleted with a single statement that also tells whether it existed.
      *
      * @param serverRequest The incoming server request.
      * @return A ServerResponse with a success message or a 404 status if not found.
      */
     public Mono<ServerResponse> handleDeleteById(ServerRequest serverRequest) {
         var id = Long.parseLong(serverRequest.pathVariable("id"));
-        return this.personRepository.findById(id)
+        return this.personRepository.deleteReturning(id)
                 .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "person not found")))
-                .flatMap(this.personRepository::delete)
+                .doOnNext(this.personCache::invalidate)
+                .doOnNext(this.personResponseCache::invalidate)
                 .thenReturn("successfully deleted!")
                 .flatMap(msg -> ok()
                         .contentType(MediaType.APPLICATION_JSON)
@@ -94,6 +472,7 @@ public class PersonHandler {
 
     /**
      * Handles a request to create a new person.
+     * An id or version in the request body is ignored, the person is always inserted.
      *
      * @param serverRequest The incoming server request.
      * @return A ServerResponse with the created person or a 400 status if the request body is invalid.
@@ -102,56 +481,359 @@ public class PersonHandler {
         return serverRequest.bodyToMono(Person.class)
                 .switchIfEmpty(Mono.error(new ServerWebInputException("person must not be null")))
                 .doOnNext(this::validate)
+                .map(person -> new Person(person.name()))
                 .flatMap(this.personRepository::save)
+                .doOnNext(this.personCache::invalidate)
                 .flatMap(person ->
                         created(URI.create(API + "/" + person.id()))
+                                .contentType(personMediaType(serverRequest))
+                                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
                                 .bodyValue(person));
     }
 
+    /**
+     * Handles a request to create many persons at once.
+     * The body is a JSON array or a newline delimited JSON stream of persons. Every person is validated on its own
+     * and the valid ones are inserted in chunks of the configured size, one statement per chunk.
+     * Every chunk is committed on its own and its results are streamed as soon as it is, so the batch is not atomic:
+     * if a chunk fails, its persons are reported as rejected, the chunks before it stay committed
+     * and the chunks after it are still inserted. The response always lists every person of the body.
+     *
+     * @param serverRequest The incoming server request.
+     * @return A ServerResponse with the id or the validation error of every person, in request order.
+     */
+    public Mono<ServerResponse> handleCreateBatch(ServerRequest serverRequest) {
+        var results = serverRequest.bodyToFlux(Person.class)
+                .index()
+                .buffer(this.peopleProperties.batch().chunkSize())
+                .concatMap(this::createChunk);
+        return ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(results, PersonBatchResult.class);
+    }
+
+    /**
+     * Validates and inserts one chunk of a batch create request.
+     *
+     * @param chunk The persons of the chunk together with their position in the request body.
+     * @return The results of the chunk, in request order, all persons rejected if the insert failed.
+     */
+    private Flux<PersonBatchResult> createChunk(List<Tuple2<Long, Person>> chunk) {
+        var errors = chunk.stream()
+                .map(element -> this.errors(element.getT2()))
+                .toList();
+        var valid = IntStream.range(0, chunk.size())
+                .filter(i -> errors.get(i).isEmpty())
+                .mapToObj(i -> chunk.get(i).getT2())
+                .toList();
+        return this.personRepository.insertAll(valid)
+                .doOnNext(this.personCache::invalidate)
+                .collectList()
+                .flatMapIterable(created -> {
+                    var inserted = created.iterator();
+                    return IntStream.range(0, chunk.size())
+                            .mapToObj(i -> errors.get(i).isEmpty()
+                                    ? PersonBatchResult.created(chunk.get(i).getT1(), inserted.next())
+                                    : PersonBatchResult.rejected(chunk.get(i).getT1(), errors.get(i).toString()))
+                            .toList();
+                })
+                .onErrorResume(e -> {
+                    log.warn("inserting a chunk of {} persons failed -> {}", valid.size(), e.getMessage());
+                    return Flux.fromStream(IntStream.range(0, chunk.size())
+                            .mapToObj(i -> PersonBatchResult.rejected(chunk.get(i).getT1(), errors.get(i).isEmpty()
+                                    ? "not inserted, the chunk failed" : errors.get(i).toString())));
+                });
+    }
+
+    /**
+     * Handles a request to import persons with the PostgreSQL COPY protocol.
+     * A CSV body with one name per line or a newline delimited JSON body is parsed, validated and converted
+     * to CSV on the fly, so the imported names meet the same constraints as those written by the other endpoints.
+     * The body is consumed only as fast as the database accepts it.
+     *
+     * @param serverRequest The incoming server request.
+     * @return A ServerResponse with the number of imported persons, a 400 status if a person is invalid
+     * or a 415 status for other content types.
+     */
+    public Mono<ServerResponse> handleImport(ServerRequest serverRequest) {
+        var contentType = serverRequest.headers().contentType().orElse(TEXT_CSV);
+        Flux<Person> persons;
+        if (TEXT_CSV.equalsTypeAndSubtype(contentType)) {
+            var header = serverRequest.queryParam("header")
+                    .map(Boolean::parseBoolean)
+                    .orElse(false);
+            persons = csvRecords(serverRequest.bodyToFlux(String.class))
+                    .skip(header ? 1 : 0)
+                    .map(PersonHandler::fromCsv);
+        } else if (MediaType.APPLICATION_NDJSON.equalsTypeAndSubtype(contentType)) {
+            persons = serverRequest.bodyToFlux(Person.class);
+        } else {
+            return Mono.error(new UnsupportedMediaTypeStatusException(contentType,
+                    List.of(TEXT_CSV, MediaType.APPLICATION_NDJSON)));
+        }
+        var csv = persons
+                .doOnNext(this::validate)
+                .map(PersonHandler::toCsv)
+                .buffer(this.peopleProperties.batch().chunkSize())
+                .map(lines -> DefaultDataBufferFactory.sharedInstance
+                        .wrap(String.join("", lines).getBytes(StandardCharsets.UTF_8)));
+        var rows = this.personRepository.copyFromCsv(csv, false);
+        // evicts the lookups cached by this instance right away, not only once the notification of the import arrives
+        return rows
+                .doOnSuccess(count -> {
+                    this.personCache.invalidateAll();
+                    this.personResponseCache.invalidateAll();
+                })
+                .flatMap(count -> ok()
+                        .bodyValue(new PersonImportResult(count)));
+    }
+
+    /**
+     * Answers a conditional request with a 304 status if the client already has the current representation,
+     * without building the response.
+     *
+     * @param serverRequest The incoming server request.
+     * @param etag          The ETag of the current representation.
+     * @param response      Builds the response if the client's representation is not current.
+     * @return The 304 response or the built response.
+     */
+    private static Mono<ServerResponse> ifNoneMatch(ServerRequest serverRequest, String etag,
+                                                    Supplier<Mono<ServerResponse>> response) {
+        return serverRequest.checkNotModified(etag)
+                .switchIfEmpty(Mono.defer(response));
+    }
+
+    /**
+     * Derives a strong ETag from a representation of a person, a 64 bit FNV-1a hash of its id, name and version
+     * and of the media type, since the representations differ byte by byte.
+     *
+     * @param person    The person.
+     * @param mediaType The media type of the representation.
+     * @return The quoted ETag.
+     */
+    static String etag(Person person, MediaType mediaType) {
+        var hash = fnv1a(0xcbf29ce484222325L, person.id() == null ? 0L : person.id());
+        hash = fnv1a(hash, person.name() == null ? "" : person.name());
+        if (person.version() != null) {
+            hash = fnv1a(hash, person.version());
+        }
+        hash = fnv1a(hash, mediaType.getType() + '/' + mediaType.getSubtype());
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+
+    /**
+     * Tells whether an If-Match header lists the ETag of any representation of a person.
+     *
+     * @param ifMatch The ETags of the If-Match header.
+     * @param person  The current person.
+     * @return true if the person is matched.
+     */
+    private static boolean matches(List<String> ifMatch, Person person) {
+        return ifMatch.contains("*") || PERSON_MEDIA_TYPES.stream()
+                .anyMatch(mediaType -> ifMatch.contains(etag(person, mediaType)));
+    }
+
+    private static long fnv1a(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long fnv1a(long hash, long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash = (hash ^ ((value >>> (8 * i)) & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Joins the lines of a CSV body to records, a quoted field may span several lines.
+     * A field is quoted while an odd number of quotes was read, as every quote opens or closes a quoted section
+     * and an escaped quote counts twice.
+     *
+     * @param lines The lines of the body, without line breaks.
+     * @return A Flux of the records, without the final line break.
+     */
+    static Flux<String> csvRecords(Flux<String> lines) {
+        return Flux.defer(() -> {
+            var record = new StringBuilder();
+            var quotes = new int[1];
+            return lines
+                    .<String>handle((line, sink) -> {
+                        if (quotes[0] % 2 == 1) {
+                            record.append('\n');
+                        }
+                        record.append(line);
+                        quotes[0] += (int) line.chars().filter(c -> c == '"').count();
+                        if (quotes[0] % 2 == 0) {
+                            sink.next(record.toString());
+                            record.setLength(0);
+                            quotes[0] = 0;
+                        }
+                    })
+                    .concatWith(Mono.defer(() -> record.isEmpty() && quotes[0] == 0
+                            ? Mono.empty()
+                            : Mono.error(new ServerWebInputException("CSV body ends within a quoted field"))));
+        });
+    }
+
+    /**
+     * Decodes a person from a CSV record with a single name field, following the CSV format of PostgreSQL COPY:
+     * a quote opens or closes a quoted section, two quotes within a quoted section stand for one, and an empty
+     * field that is not quoted is NULL.
+     *
+     * @param record The CSV record.
+     * @return The person, without an id.
+     */
+    static Person fromCsv(String record) {
+        var name = new StringBuilder(record.length());
+        var quoted = false;
+        var inQuotes = false;
+        var end = record.endsWith("\r") ? record.length() - 1 : record.length();
+        for (int i = 0; i < end; i++) {
+            var c = record.charAt(i);
+            if (inQuotes) {
+                if (c != '"') {
+                    name.append(c);
+                } else if (i + 1 < end && record.charAt(i + 1) == '"') {
+                    name.append(c);
+                    i++;
+                } else {
+                    inQuotes = false;
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+                quoted = true;
+            } else if (c == ',') {
+                throw new ServerWebInputException("CSV record has more than one field");
+            } else {
+                name.append(c);
+            }
+        }
+        return new Person(quoted || !name.isEmpty() ? name.toString() : null);
+    }
+
+    /**
+     * Encodes the name of a person as one quoted CSV line.
+     *
+     * @param person The person to encode.
+     * @return The CSV line including the line break.
+     */
+    private static String toCsv(Person person) {
+        return '"' + person.name().replace("\"", "\"\"") + "\"\n";
+    }
+
     /**
      * Handles a request to update a person by id.
+     * The person is updated with a single statement that returns the updated row, without reading it first.
+     * With an If-Match header the person is only updated if its ETag is listed, otherwise the response is 412.
+     * Without one, a version in the body is required to be the current one, otherwise the response is 409.
+     * Without both the update is unconditional.
      *
      * @param serverRequest The incoming server request.
-     * @return A ServerResponse with the updated person or a 404 status if not found.
+     * @return A ServerResponse with the updated person, a 404 status if not found
+     * or a 412 or 409 status if it has been changed by someone else.
      */
     public Mono<ServerResponse> handleUpdate(ServerRequest serverRequest) {
         var id = Long.parseLong(serverRequest.pathVariable("id"));
-        var update = serverRequest.bodyToMono(Person.class)
+        var ifMatch = ifMatch(serverRequest);
+        return serverRequest.bodyToMono(Person.class)
                 .doOnNext(this::validate)
-                .switchIfEmpty(Mono.error(new ResponseStatusException(BAD_REQUEST, "Body is required")));
-        return this.personRepository.findById(id)
-                .zipWith(update, (person, personUpdate) -> new Person(person.id(), personUpdate.name()))
-                .flatMap(this.personRepository::save)
-                .flatMap(person -> ServerResponse.ok().bodyValue(person))
+                .switchIfEmpty(Mono.error(new ResponseStatusException(BAD_REQUEST, "Body is required")))
+                .flatMap(personUpdate -> this.update(id, personUpdate, ifMatch))
+                .doOnNext(this.personCache::invalidate)
+                .doOnNext(this.personResponseCache::invalidate)
+                .flatMap(person -> okNegotiated(serverRequest)
+                        .eTag(etag(person, personMediaType(serverRequest)))
+                        .bodyValue(person))
                 .switchIfEmpty(ServerResponse.notFound().build());
     }
 
     /**
-     * Validates a person using the Validator.
+     * Renames a person, guarded by the If-Match header or else by the version in the body.
+     * The If-Match header is checked against the current row, which is then updated only if it still has
+     * the version it was checked with.
+     *
+     * @param id           The id of the person.
+     * @param personUpdate The person from the request body.
+     * @param ifMatch      The ETags of the If-Match header, empty if there is none.
+     * @return The updated person or an empty Mono if not found.
+     * @throws ResponseStatusException If the person has been changed by someone else.
+     */
+    private Mono<Person> update(Long id, Person personUpdate, List<String> ifMatch) {
+        if (!ifMatch.isEmpty()) {
+            return this.personRepository.findById(id)
+                    .filter(current -> matches(ifMatch, current))
+                    .flatMap(current -> this.personRepository.updateName(id, personUpdate.name(), current.version()))
+                    .switchIfEmpty(Mono.error(() -> new ResponseStatusException(PRECONDITION_FAILED,
+                            "person has been changed or does not exist")));
+        }
+        if (personUpdate.version() != null) {
+            return this.personRepository.updateName(id, personUpdate.name(), personUpdate.version())
+                    .switchIfEmpty(Mono.defer(() -> this.personRepository.existsById(id))
+                            .filter(Boolean::booleanValue)
+                            .flatMap(exists -> Mono.error(new ResponseStatusException(CONFLICT,
+                                    "person has been changed, version " + personUpdate.version() + " is outdated"))));
+        }
+        return this.personRepository.updateName(id, personUpdate.name());
+    }
+
+    /**
+     * Reads the ETags of the If-Match header.
+     *
+     * @param serverRequest The incoming server request.
+     * @return The ETags, "*" for any, empty if there is no If-Match header.
+     * @throws ServerWebInputException If the header is malformed.
+     */
+    private static List<String> ifMatch(ServerRequest serverRequest) {
+        try {
+            return serverRequest.headers().asHttpHeaders().getIfMatch();
+        } catch (IllegalArgumentException e) {
+            throw new ServerWebInputException("If-Match not valid");
+        }
+    }
+
+    /**
+     * Parses the requested page size.
+     *
+     * @param limit The limit query parameter.
+     * @return The page size.
+     * @throws ServerWebInputException If the limit is not a number between 1 and the maximum page size.
+     */
+    private int parseLimit(String limit) {
+        try {
+            var pageSize = Integer.parseInt(limit);
+            if (pageSize >= 1 && pageSize <= MAX_PAGE_SIZE) {
+                return pageSize;
+            }
+        } catch (NumberFormatException e) {
+            log.info("limit not valid -> {}", limit);
+        }
+        throw new ServerWebInputException("limit must be between 1 and " + MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Validates a person using the PersonValidator.
      *
      * @param person The person to validate.
      * @throws ServerWebInputException If the person is not valid.
      */
-    private void validate(Person person) {
-        Set<ConstraintViolation<Person>> violations = this.validator.validate(person);
-        if (!violations.isEmpty()) {
-            List<String> errors = violations.stream()
-                    .map(this::formatError)
-                    .toList();
+    void validate(Person person) {
+        List<String> errors = this.errors(person);
+        if (!errors.isEmpty()) {
             log.info("person not valid -> {}", errors);
             throw new ServerWebInputException(errors.toString());
         }
     }
 
     /**
-     * Formats a validation error.
+     * Collects the validation errors of a person using the PersonValidator.
      *
-     * @param personConstraintViolation The validation error.
-     * @return A string representation of the validation error.
+     * @param person The person to validate.
+     * @return The formatted validation errors, empty if the person is valid.
      */
-    private String formatError(ConstraintViolation<Person> personConstraintViolation) {
-        String field = StringUtils.capitalize(personConstraintViolation.getPropertyPath().toString());
-        String error = personConstraintViolation.getMessage();
-        return String.format("%s - %s", field, error);
+    List<String> errors(Person person) {
+        return this.personValidator.errors(person);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,14 @@
+package de.ksbrwsk.people;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * This record represents the outcome of an import request.
+ *
+ * @param rows The number of people imported.
+ */
+public record PersonImportResult(
+        @Schema(name = "rows", description = "The number of people imported")
+        long rows
+) {
+}
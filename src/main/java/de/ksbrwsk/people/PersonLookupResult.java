@@ -0,0 +1,46 @@
+package de.ksbrwsk.people;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This record represents the outcome of a lookup of many persons by id.
+ * Streamed lookups emit one result per chunk of ids, in request order.
+ *
+ * @param people  The persons found, in the order of the requested ids.
+ * @param missing The requested ids without a person, in request order.
+ */
+public record PersonLookupResult(
+        @Schema(name = "people", description = "The persons found, in the order of the requested ids")
+        List<Person> people,
+        @Schema(name = "missing", description = "The requested ids without a person, in request order")
+        List<Long> missing
+) {
+    /**
+     * Creates the result of a chunk of ids from the persons found for them.
+     *
+     * @param ids   The requested ids, in request order.
+     * @param found The persons found by id.
+     * @return The result.
+     */
+    public static PersonLookupResult of(List<Long> ids, Map<Long, Person> found) {
+        return new PersonLookupResult(
+                ids.stream().map(found::get).filter(Objects::nonNull).toList(),
+                ids.stream().filter(id -> !found.containsKey(id)).toList());
+    }
+
+    /**
+     * Joins the results of consecutive chunks of ids.
+     *
+     * @param chunks The results of the chunks, in request order.
+     * @return The result of all ids.
+     */
+    public static PersonLookupResult concat(List<PersonLookupResult> chunks) {
+        return new PersonLookupResult(
+                chunks.stream().flatMap(chunk -> chunk.people().stream()).toList(),
+                chunks.stream().flatMap(chunk -> chunk.missing().stream()).toList());
+    }
+}
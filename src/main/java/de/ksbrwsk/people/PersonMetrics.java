@@ -0,0 +1,125 @@
+package de.ksbrwsk.people;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * This class times the handler functions of the PersonRouter.
+ * The timer runs until the response body is written, so it covers the repository queries, which only run
+ * when the body is subscribed, and the serialization. It is tagged with the handler, the response status and
+ * the outcome (SUCCESS, CLIENT_ERROR, SERVER_ERROR or UNKNOWN if the client went away).
+ */
+@Component
+@RequiredArgsConstructor
+public class PersonMetrics {
+    /**
+     * The name of the handler timer.
+     */
+    static final String HANDLER_METRIC = "people.handler";
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    /**
+     * Decorates a handler function with a timer.
+     *
+     * @param handler         The name of the handler, used as tag.
+     * @param handlerFunction The handler function to time.
+     * @return The timed handler function.
+     */
+    HandlerFunction<ServerResponse> timed(String handler, HandlerFunction<ServerResponse> handlerFunction) {
+        return request -> {
+            var registry = this.meterRegistry.getIfAvailable();
+            if (registry == null) {
+                return handlerFunction.handle(request);
+            }
+            var sample = Timer.start(registry);
+            return Mono.defer(() -> handlerFunction.handle(request))
+                    .<ServerResponse>map(response -> new TimedServerResponse(response, status ->
+                            sample.stop(timer(registry, handler, status))))
+                    .doOnError(e -> sample.stop(timer(registry, handler, status(e))))
+                    .doOnCancel(() -> sample.stop(timer(registry, handler, null)));
+        };
+    }
+
+    private static HttpStatusCode status(Throwable e) {
+        return e instanceof ResponseStatusException responseStatusException
+                ? responseStatusException.getStatusCode()
+                : HttpStatusCode.valueOf(500);
+    }
+
+    private static Timer timer(MeterRegistry registry, String handler, HttpStatusCode status) {
+        return Timer.builder(HANDLER_METRIC)
+                .description("Time taken to handle a request, including writing the response body")
+                .tag("handler", handler)
+                .tag("status", status == null ? "UNKNOWN" : String.valueOf(status.value()))
+                .tag("outcome", outcome(status))
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static String outcome(HttpStatusCode status) {
+        if (status == null) {
+            return "UNKNOWN";
+        }
+        if (status.is5xxServerError()) {
+            return "SERVER_ERROR";
+        }
+        return status.is4xxClientError() ? "CLIENT_ERROR" : "SUCCESS";
+    }
+
+    /**
+     * A ServerResponse reporting its status once it has been written, or null if the write was cancelled.
+     * A failure while writing the body is reported as server error, even if the status line has already been sent.
+     * It is also used by the PersonConcurrencyLimiter, which holds a request in flight until its body is written.
+     */
+    @RequiredArgsConstructor
+    static class TimedServerResponse implements ServerResponse {
+        private final ServerResponse delegate;
+        private final Consumer<HttpStatusCode> onWritten;
+
+        @Override
+        public HttpStatusCode statusCode() {
+            return this.delegate.statusCode();
+        }
+
+        @Override
+        @SuppressWarnings("removal")
+        public int rawStatusCode() {
+            return this.delegate.statusCode().value();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return this.delegate.headers();
+        }
+
+        @Override
+        public MultiValueMap<String, ResponseCookie> cookies() {
+            return this.delegate.cookies();
+        }
+
+        @Override
+        public Mono<Void> writeTo(ServerWebExchange exchange, Context context) {
+            return this.delegate.writeTo(exchange, context)
+                    .doOnSuccess(done -> this.onWritten.accept(Optional.ofNullable(exchange.getResponse().getStatusCode())
+                            .orElseGet(this.delegate::statusCode)))
+                    .doOnError(e -> this.onWritten.accept(status(e)))
+                    .doOnCancel(() -> this.onWritten.accept(null));
+        }
+    }
+}
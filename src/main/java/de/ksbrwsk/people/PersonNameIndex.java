@@ -0,0 +1,606 @@
+package de.ksbrwsk.people;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuples;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * This class answers name prefix queries from memory.
+ * The distinct names are kept in a sorted, front coded snapshot: in every block of 16 names only the first is stored
+ * in full, the others as the length of the prefix shared with their predecessor plus the remaining suffix.
+ * Changes are collected in a concurrent skip list on top of the snapshot and merged into a new snapshot
+ * on a maintenance thread once there are enough of them. Both are only replaced, never modified, so reads do not lock.
+ * Names are matched case insensitively and counted, so a name disappears once the last person carrying it is gone.
+ * The index is loaded with a streaming scan of the repository and kept current by the PersonChangeListener,
+ * which rebuilds it whenever notifications may have been missed. Rebuilds and compactions run one at a time,
+ * requests for rebuilds made meanwhile are coalesced into one.
+ */
+@Component
+@Slf4j
+public class PersonNameIndex implements MeterBinder {
+    /**
+     * The name of the timer measuring rebuilds and compactions.
+     */
+    static final String REBUILD_METRIC = "people.autocomplete.rebuild";
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int COMPACTION_THRESHOLD = 4096;
+    private static final char SEPARATOR = '\u0000';
+
+    private final PersonRepository personRepository;
+    private final boolean enabled;
+    private final int fetchSize;
+    private final Scheduler maintenance = Schedulers.newSingle("person-name-index");
+    // set while a rebuild or compaction runs, so they never overlap
+    private final AtomicBoolean maintaining = new AtomicBoolean();
+    private volatile State state = State.EMPTY;
+    // completed by the next rebuild, once one has been requested, guarded by this
+    private Sinks.Empty<Void> pendingRebuild;
+    // the changes collected while a rebuild runs, guarded by this
+    private List<Change> rebuilding;
+    private volatile MeterRegistry meterRegistry;
+
+    /**
+     * The index as seen by readers: the snapshot, the changes being merged into the next snapshot
+     * and the changes collected since.
+     *
+     * @param snapshot The distinct keys and their counts.
+     * @param merging  The changes of the counts being merged into the next snapshot.
+     * @param changes  The changes of the counts collected since.
+     * @param loaded   Whether the index has been loaded from the database.
+     */
+    private record State(FrontCodedKeys snapshot, NavigableMap<String, Integer> merging,
+                         ConcurrentSkipListMap<String, Integer> changes, boolean loaded) {
+        static final State EMPTY = new State(FrontCodedKeys.of(List.of(), new int[0]), Collections.emptyNavigableMap(),
+                new ConcurrentSkipListMap<>(), false);
+    }
+
+    /**
+     * A change of a count collected while a rebuild runs.
+     *
+     * @param transactionId The id of the transaction that made the change.
+     * @param key           The changed key.
+     * @param delta         The change of its count.
+     */
+    private record Change(long transactionId, String key, int delta) {
+    }
+
+    /**
+     * The transactions seen by a snapshot of the database.
+     *
+     * @param xmin       All transactions below are seen, if they committed.
+     * @param xmax       No transaction from here on is seen.
+     * @param inProgress The transactions in between that were still running.
+     */
+    record Snapshot(long xmin, long xmax, Set<Long> inProgress) {
+        /**
+         * Parses the text of a PostgreSQL snapshot.
+         *
+         * @param text The snapshot as xmin:xmax:xip_list.
+         * @return The snapshot.
+         */
+        static Snapshot parse(String text) {
+            var parts = text.split(":", -1);
+            var inProgress = parts[2].isEmpty()
+                    ? Set.<Long>of()
+                    : Arrays.stream(parts[2].split(",")).map(Long::valueOf).collect(Collectors.toUnmodifiableSet());
+            return new Snapshot(Long.parseLong(parts[0]), Long.parseLong(parts[1]), inProgress);
+        }
+
+        /**
+         * Tells whether the changes of a committed transaction are seen by the snapshot.
+         *
+         * @param transactionId The id of the transaction.
+         * @return true if the snapshot sees them.
+         */
+        boolean sees(long transactionId) {
+            return transactionId < this.xmin || transactionId < this.xmax && !this.inProgress.contains(transactionId);
+        }
+    }
+
+    /**
+     * Creates the index.
+     *
+     * @param personRepository The repository the index is loaded from.
+     * @param peopleProperties The application settings.
+     */
+    public PersonNameIndex(PersonRepository personRepository, PeopleProperties peopleProperties) {
+        this.personRepository = personRepository;
+        this.enabled = peopleProperties.autocomplete().enabled();
+        this.fetchSize = peopleProperties.stream().fetchSize();
+    }
+
+    /**
+     * Tells whether the index is enabled and has been loaded.
+     *
+     * @return true if the index can answer queries.
+     */
+    public boolean isLoaded() {
+        return this.enabled && this.state.loaded();
+    }
+
+    /**
+     * Finds the distinct names starting with the given prefix, ignoring case, in alphabetical order.
+     *
+     * @param prefix The prefix of the names.
+     * @param limit  The maximum number of names.
+     * @return The names found.
+     */
+    public List<String> complete(String prefix, int limit) {
+        var current = this.state;
+        var from = fold(prefix);
+        var snapshot = new Peeking(current.snapshot().tail(from));
+        var merging = new Peeking(current.merging().tailMap(from, true).entrySet().iterator());
+        var changes = new Peeking(current.changes().tailMap(from, true).entrySet().iterator());
+        var names = new ArrayList<String>(Math.min(limit, 16));
+        while (names.size() < limit) {
+            var key = min(min(snapshot.key(), merging.key()), changes.key());
+            if (key == null || !key.startsWith(from)) {
+                break;
+            }
+            var count = snapshot.take(key) + merging.take(key) + changes.take(key);
+            if (count > 0) {
+                names.add(key.substring(key.indexOf(SEPARATOR) + 1));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Counts the names of added persons.
+     *
+     * @param transactionId The id of the transaction that added the persons.
+     * @param people        The added persons.
+     */
+    public void add(long transactionId, List<Person> people) {
+        this.change(transactionId, people, 1);
+    }
+
+    /**
+     * Uncounts the names of removed persons.
+     *
+     * @param transactionId The id of the transaction that removed the persons.
+     * @param people        The removed persons.
+     */
+    public void remove(long transactionId, List<Person> people) {
+        this.change(transactionId, people, -1);
+    }
+
+    private void change(long transactionId, List<Person> people, int delta) {
+        if (!this.enabled) {
+            return;
+        }
+        int size;
+        synchronized (this) {
+            var changes = this.state.changes();
+            for (Person person : people) {
+                if (person.name() != null) {
+                    var key = key(person.name());
+                    changes.merge(key, delta, PersonNameIndex::sum);
+                    if (this.rebuilding != null) {
+                        this.rebuilding.add(new Change(transactionId, key, delta));
+                    }
+                }
+            }
+            size = changes.size();
+        }
+        if (size >= COMPACTION_THRESHOLD) {
+            this.maintain();
+        }
+    }
+
+    /**
+     * Reloads the index with a streaming scan of the people.
+     * Changes arriving during the scan are kept on top of the new snapshot, unless the scan already saw them.
+     * Requests arriving while a rebuild or compaction runs are coalesced into one more rebuild after it.
+     *
+     * @return A Mono completing once a new snapshot, scanned after the request, is in place.
+     */
+    public Mono<Void> rebuild() {
+        if (!this.enabled) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            Mono<Void> rebuilt;
+            synchronized (this) {
+                if (this.pendingRebuild == null) {
+                    this.pendingRebuild = Sinks.empty();
+                }
+                rebuilt = this.pendingRebuild.asMono();
+            }
+            this.maintain();
+            return rebuilt;
+        });
+    }
+
+    /**
+     * Starts a pending rebuild or, if there are enough changes, a compaction on the maintenance thread, unless one
+     * of them is running already. The running one calls this again once it is done.
+     */
+    private void maintain() {
+        if (!this.maintaining.compareAndSet(false, true)) {
+            return;
+        }
+        Sinks.Empty<Void> rebuilt;
+        synchronized (this) {
+            rebuilt = this.pendingRebuild;
+            this.pendingRebuild = null;
+            if (rebuilt != null) {
+                this.rebuilding = new ArrayList<>();
+            }
+        }
+        if (rebuilt != null) {
+            Mono.defer(this::load)
+                    .subscribeOn(this.maintenance)
+                    .doFinally(signal -> this.maintained())
+                    .subscribe(null, rebuilt::tryEmitError, rebuilt::tryEmitEmpty);
+        } else if (this.state.changes().size() >= COMPACTION_THRESHOLD) {
+            this.maintenance.schedule(() -> {
+                try {
+                    this.compact();
+                } finally {
+                    this.maintained();
+                }
+            });
+        } else {
+            this.maintained();
+        }
+    }
+
+    /**
+     * Ends a rebuild or compaction and starts the next one, if it was requested in the meantime.
+     */
+    private void maintained() {
+        boolean pending;
+        synchronized (this) {
+            this.rebuilding = null;
+            pending = this.pendingRebuild != null;
+        }
+        this.maintaining.set(false);
+        if (pending || this.state.changes().size() >= COMPACTION_THRESHOLD) {
+            this.maintain();
+        }
+    }
+
+    /**
+     * Scans the names of the people and installs them as the new snapshot.
+     *
+     * @return A Mono completing once the new snapshot is in place.
+     */
+    private Mono<Void> load() {
+        var start = System.nanoTime();
+        return this.personRepository.findAllNamesInSnapshot(this.fetchSize, (snapshot, names) -> names
+                        .collect(HashMap<String, Integer>::new, (counts, name) -> counts.merge(key(name), 1, Integer::sum))
+                        .map(counts -> Tuples.of(Snapshot.parse(snapshot), counts)))
+                .publishOn(this.maintenance)
+                .doOnNext(scanned -> {
+                    var counts = scanned.getT2();
+                    var keys = new ArrayList<>(counts.keySet());
+                    Collections.sort(keys);
+                    var snapshot = FrontCodedKeys.of(keys, keys.stream().mapToInt(counts::get).toArray());
+                    this.installRebuilt(snapshot, scanned.getT1(), start);
+                    log.info("person name index rebuilt with {} names in {} ms", snapshot.size(),
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                })
+                .then();
+    }
+
+    /**
+     * Merges the collected changes into a new snapshot.
+     */
+    private void compact() {
+        var start = System.nanoTime();
+        this.freeze();
+        var current = this.state;
+        var keys = new ArrayList<String>(current.snapshot().size() + current.merging().size());
+        var counts = new int[current.snapshot().size() + current.merging().size()];
+        var snapshot = new Peeking(current.snapshot().tail(""));
+        var merging = new Peeking(current.merging().entrySet().iterator());
+        while (true) {
+            var key = min(snapshot.key(), merging.key());
+            if (key == null) {
+                break;
+            }
+            var count = snapshot.take(key) + merging.take(key);
+            if (count > 0) {
+                counts[keys.size()] = count;
+                keys.add(key);
+            }
+        }
+        this.installCompacted(FrontCodedKeys.of(keys, Arrays.copyOf(counts, keys.size())), start);
+    }
+
+    /**
+     * Moves the collected changes aside, so they can be merged while new changes are collected.
+     */
+    private synchronized void freeze() {
+        var current = this.state;
+        this.state = new State(current.snapshot(), current.changes(), new ConcurrentSkipListMap<>(), current.loaded());
+    }
+
+    /**
+     * Replaces the snapshot with the merged one and drops the merged changes.
+     */
+    private synchronized void installCompacted(FrontCodedKeys snapshot, long start) {
+        var current = this.state;
+        this.state = new State(snapshot, Collections.emptyNavigableMap(), current.changes(), current.loaded());
+        this.record(start, "compaction");
+    }
+
+    /**
+     * Replaces the snapshot with the scanned one and keeps only the changes of transactions the scan did not see.
+     */
+    private synchronized void installRebuilt(FrontCodedKeys snapshot, Snapshot scanned, long start) {
+        var changes = new ConcurrentSkipListMap<String, Integer>();
+        for (var change : this.rebuilding) {
+            if (!scanned.sees(change.transactionId())) {
+                changes.merge(change.key(), change.delta(), PersonNameIndex::sum);
+            }
+        }
+        this.state = new State(snapshot, Collections.emptyNavigableMap(), changes, true);
+        this.record(start, "rebuild");
+    }
+
+    private void record(long start, String kind) {
+        var registry = this.meterRegistry;
+        if (registry != null) {
+            Timer.builder(REBUILD_METRIC)
+                    .description("Time taken to build a snapshot of the person name index")
+                    .tag("kind", kind)
+                    .register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Adds two changes of a count, dropping the count once the changes cancel out.
+     */
+    private static Integer sum(Integer a, Integer b) {
+        return a + b == 0 ? null : a + b;
+    }
+
+    /**
+     * Estimates the heap occupied by the index.
+     *
+     * @return The estimated size in bytes.
+     */
+    long memoryFootprint() {
+        var current = this.state;
+        return current.snapshot().memoryFootprint()
+                + changesFootprint(current.merging())
+                + changesFootprint(current.changes());
+    }
+
+    private static long changesFootprint(Map<String, Integer> changes) {
+        // skip list node, index share, entry and boxed count, plus the key
+        return changes.keySet().stream()
+                .mapToLong(key -> 96L + FrontCodedKeys.stringFootprint(key))
+                .sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.meterRegistry = registry;
+        Gauge.builder("people.autocomplete.memory", this, PersonNameIndex::memoryFootprint)
+                .description("Estimated heap occupied by the person name index")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("people.autocomplete.names", this, index -> index.state.snapshot().size())
+                .description("Number of distinct names in the snapshot of the person name index")
+                .register(registry);
+    }
+
+    @PreDestroy
+    void close() {
+        this.maintenance.dispose();
+    }
+
+    private static String fold(String text) {
+        return text.toLowerCase(Locale.ROOT).replace(String.valueOf(SEPARATOR), "");
+    }
+
+    private static String key(String name) {
+        return fold(name) + SEPARATOR + name;
+    }
+
+    private static String min(String a, String b) {
+        if (a == null) {
+            return b;
+        }
+        return b == null || a.compareTo(b) <= 0 ? a : b;
+    }
+
+    /**
+     * An iterator over keys and counts that can be looked at before it is advanced.
+     */
+    private static final class Peeking {
+        private final Iterator<Map.Entry<String, Integer>> iterator;
+        private Map.Entry<String, Integer> next;
+
+        Peeking(Iterator<Map.Entry<String, Integer>> iterator) {
+            this.iterator = iterator;
+            this.next = iterator.hasNext() ? iterator.next() : null;
+        }
+
+        String key() {
+            return this.next == null ? null : this.next.getKey();
+        }
+
+        /**
+         * Returns the count of the given key and advances, or 0 if the next key is a different one.
+         */
+        int take(String key) {
+            if (this.next == null || !this.next.getKey().equals(key)) {
+                return 0;
+            }
+            var count = this.next.getValue();
+            this.next = this.iterator.hasNext() ? this.iterator.next() : null;
+            return count;
+        }
+    }
+
+    /**
+     * An immutable, sorted list of distinct keys with counts, stored with front coding.
+     */
+    static final class FrontCodedKeys {
+        private final String[] heads;
+        private final int[] blockOffsets;
+        private final char[] tails;
+        private final int[] counts;
+
+        private FrontCodedKeys(String[] heads, int[] blockOffsets, char[] tails, int[] counts) {
+            this.heads = heads;
+            this.blockOffsets = blockOffsets;
+            this.tails = tails;
+            this.counts = counts;
+        }
+
+        /**
+         * Encodes sorted, distinct keys.
+         *
+         * @param keys   The keys in ascending order.
+         * @param counts The counts of the keys.
+         * @return The encoded keys.
+         */
+        static FrontCodedKeys of(List<String> keys, int[] counts) {
+            var blocks = (keys.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            var heads = new String[blocks];
+            var blockOffsets = new int[blocks];
+            var tails = new StringBuilder();
+            for (int i = 0; i < keys.size(); i++) {
+                var key = keys.get(i);
+                if (i % BLOCK_SIZE == 0) {
+                    heads[i / BLOCK_SIZE] = key;
+                    blockOffsets[i / BLOCK_SIZE] = tails.length();
+                    continue;
+                }
+                var previous = keys.get(i - 1);
+                var shared = 0;
+                var max = Math.min(previous.length(), key.length());
+                while (shared < max && previous.charAt(shared) == key.charAt(shared)) {
+                    shared++;
+                }
+                tails.append((char) shared).append((char) (key.length() - shared)).append(key, shared, key.length());
+            }
+            var chars = new char[tails.length()];
+            tails.getChars(0, tails.length(), chars, 0);
+            return new FrontCodedKeys(heads, blockOffsets, chars, counts);
+        }
+
+        int size() {
+            return this.counts.length;
+        }
+
+        /**
+         * Iterates the keys greater than or equal to the given key in ascending order.
+         *
+         * @param from The lowest key to return.
+         * @return An iterator over the keys and their counts.
+         */
+        Iterator<Map.Entry<String, Integer>> tail(String from) {
+            var block = Arrays.binarySearch(this.heads, from);
+            if (block < 0) {
+                block = Math.max(0, -block - 2);
+            }
+            var iterator = new BlockIterator(block);
+            var skipped = new Peeking(iterator);
+            while (skipped.key() != null && skipped.key().compareTo(from) < 0) {
+                skipped.take(skipped.key());
+            }
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return skipped.key() != null;
+                }
+
+                @Override
+                public Map.Entry<String, Integer> next() {
+                    var key = skipped.key();
+                    if (key == null) {
+                        throw new NoSuchElementException();
+                    }
+                    return Map.entry(key, skipped.take(key));
+                }
+            };
+        }
+
+        long memoryFootprint() {
+            var heads = Arrays.stream(this.heads).mapToLong(FrontCodedKeys::stringFootprint).sum();
+            return 16L + 4L * this.heads.length + heads
+                    + 16L + 4L * this.blockOffsets.length
+                    + 16L + 2L * this.tails.length
+                    + 16L + 4L * this.counts.length;
+        }
+
+        static long stringFootprint(String value) {
+            // object header, fields and the backing array, assuming compact strings
+            return 40L + value.length();
+        }
+
+        /**
+         * Decodes the keys block by block, starting at the given block.
+         */
+        private final class BlockIterator implements Iterator<Map.Entry<String, Integer>> {
+            private int block;
+            private int index;
+            private int offset;
+            private String previous;
+
+            BlockIterator(int block) {
+                this.block = block;
+                this.index = block * BLOCK_SIZE;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.index < FrontCodedKeys.this.counts.length;
+            }
+
+            @Override
+            public Map.Entry<String, Integer> next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String key;
+                if (this.index % BLOCK_SIZE == 0) {
+                    this.block = this.index / BLOCK_SIZE;
+                    key = FrontCodedKeys.this.heads[this.block];
+                    this.offset = FrontCodedKeys.this.blockOffsets[this.block];
+                } else {
+                    var tails = FrontCodedKeys.this.tails;
+                    int shared = tails[this.offset];
+                    int length = tails[this.offset + 1];
+                    key = this.previous.substring(0, shared) + new String(tails, this.offset + 2, length);
+                    this.offset += 2 + length;
+                }
+                this.previous = key;
+                return Map.entry(key, FrontCodedKeys.this.counts[this.index++]);
+            }
+        }
+    }
+}
@@ -1,13 +1,16 @@
 package de.ksbrwsk.people;
 
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 /**
  * This interface represents a repository for the Person entity.
- * It extends the ReactiveCrudRepository interface provided by Spring Data.
+ * It extends the ReactiveCrudRepository interface provided by Spring Data
+ * and the CustomPersonRepository interface with the hand written queries.
  */
-public interface PersonRepository extends ReactiveCrudRepository<Person, Long> {
+public interface PersonRepository extends ReactiveCrudRepository<Person, Long>, CustomPersonRepository {
     /**
      * This method returns the first Person found with the given name.
      * @param name The name of the Person to search for.
@@ -20,4 +23,51 @@ public interface PersonRepository extends ReactiveCrudRepository<Person, Long> {
      * @return A Mono that emits the found Person or completes without emitting any items if no Person is found.
      */
     Mono<Person> findTopByOrderByIdAsc();
-}
\ No newline at end of file
+
+    /**
+     * This method returns a page of people ordered by id, starting after the given id.
+     * It uses keyset pagination on the primary key, so the cost of a page does not depend on how deep it is.
+     * @param afterId The id of the last Person of the previous page, 0 for the first page.
+     * @param limit The maximum number of people to return.
+     * @return A Flux that emits at most limit people with an id greater than afterId.
+     */
+    @Query("SELECT * FROM person WHERE id > :afterId ORDER BY id LIMIT :limit")
+    Flux<Person> findPage(long afterId, int limit);
+
+    /**
+     * This method returns the people whose name contains the query or is similar to it, the most similar first.
+     * Both conditions are served by the trigram index on the name.
+     * @param query The text to search for.
+     * @param pattern The ILIKE pattern matching names containing the query, with wildcards in the query escaped.
+     * @param limit The maximum number of people to return.
+     * @return A Flux that emits at most limit people ranked by word similarity to the query.
+     */
+    @Query("SELECT * FROM person WHERE name ILIKE :pattern OR :query <% name "
+            + "ORDER BY word_similarity(:query, name) DESC, id LIMIT :limit")
+    Flux<Person> search(String query, String pattern, int limit);
+
+    /**
+     * This method returns the latest version drawn by a statement changing the person table. Versions are unique,
+     * but they are drawn before the commit, so they are not ordered like the commits and the statement drawing
+     * the latest one may not be committed yet.
+     * @return A Mono that emits the version.
+     */
+    @Query("SELECT last_value FROM person_version_seq")
+    Mono<Long> findVersion();
+
+    /**
+     * This method returns a hash of the snapshot a statement sees, it changes with every commit of a transaction
+     * writing to the database, so it changes whenever the people do.
+     * @return A Mono that emits the hash.
+     */
+    @Query("SELECT hashtextextended(CAST(pg_current_snapshot() AS text), 0)")
+    Mono<Long> findSnapshotHash();
+
+    /**
+     * This method returns the number of people estimated by the query planner, kept current by VACUUM and ANALYZE.
+     * It is read from the catalog in constant time, no matter how large the table is.
+     * @return A Mono that emits the estimate, or -1 if the table has not been analyzed yet.
+     */
+    @Query("SELECT CAST(reltuples AS bigint) FROM pg_class WHERE oid = to_regclass('person')")
+    Mono<Long> estimateCount();
+}
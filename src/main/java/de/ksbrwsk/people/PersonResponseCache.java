@@ -0,0 +1,192 @@
+package de.ksbrwsk.people;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.EncoderHttpMessageWriter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * This class caches the encoded bodies of single persons, keyed by id and representation, so lookups of hot persons
+ * are answered without running Jackson. A cached body is read-only memory shared by all responses, each response
+ * only wraps it in a DataBuffer of its own. Persons are loaded through the PersonCache and their bodies are cached
+ * with the same settings. Updates and deletes have to be reported with the invalidate methods,
+ * after the PersonCache has been invalidated.
+ * Hits, misses and evictions are published as Micrometer cache metrics.
+ */
+@Component
+public class PersonResponseCache implements MeterBinder {
+    private static final ResolvableType PERSON_TYPE = ResolvableType.forClass(Person.class);
+
+    private final PersonCache personCache;
+    private final boolean enabled;
+    private final Map<MediaType, Encoder<Object>> encoders = new HashMap<>();
+    private final Cache<Key, EncodedPerson> bodies;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * The key of a cached body.
+     *
+     * @param id        The id of the person.
+     * @param mediaType The representation of the body.
+     */
+    record Key(Long id, MediaType mediaType) {
+    }
+
+    /**
+     * The encoded body of a person.
+     *
+     * @param etag The ETag of the person.
+     * @param body The encoded person, read-only.
+     */
+    public record EncodedPerson(String etag, ByteBuffer body) {
+        /**
+         * Wraps the body for one response, without copying it.
+         *
+         * @return A DataBuffer reading the body from its start.
+         */
+        public DataBuffer buffer() {
+            return DefaultDataBufferFactory.sharedInstance.wrap(this.body.duplicate());
+        }
+
+        /**
+         * Returns the length of the body.
+         *
+         * @return The number of bytes.
+         */
+        public int length() {
+            return this.body.remaining();
+        }
+    }
+
+    /**
+     * Creates the cache according to the configured settings, encoding persons with the codecs of the server.
+     * The codecs are configured like the ones of the server, so this also works without a web server.
+     *
+     * @param personCache      The cache the persons are loaded from on a miss.
+     * @param codecCustomizers The customizers of the codecs of the server.
+     * @param peopleProperties The application settings.
+     */
+    @SuppressWarnings("unchecked")
+    public PersonResponseCache(PersonCache personCache, ObjectProvider<CodecCustomizer> codecCustomizers,
+                               PeopleProperties peopleProperties) {
+        this.personCache = personCache;
+        this.enabled = peopleProperties.cache().enabled();
+        var serverCodecConfigurer = ServerCodecConfigurer.create();
+        codecCustomizers.orderedStream().forEach(customizer -> customizer.customize(serverCodecConfigurer));
+        Stream.concat(Stream.of(MediaType.APPLICATION_JSON), CodecConfiguration.BINARY_MEDIA_TYPES.stream())
+                .forEach(mediaType -> serverCodecConfigurer.getWriters().stream()
+                        .filter(writer -> writer instanceof EncoderHttpMessageWriter<?>
+                                && writer.canWrite(PERSON_TYPE, mediaType))
+                        .findFirst()
+                        .ifPresent(writer -> this.encoders.put(mediaType,
+                                (Encoder<Object>) ((EncoderHttpMessageWriter<?>) writer).getEncoder())));
+        this.bodies = Caffeine.newBuilder()
+                .maximumSize(peopleProperties.cache().maximumSize())
+                .expireAfterWrite(peopleProperties.cache().expireAfterWrite())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Finds the encoded body of a person by id, using the cache if possible.
+     *
+     * @param id        The id of the person.
+     * @param mediaType The representation of the body, JSON or one of the binary media types.
+     * @return A Mono that emits the body or completes empty if there is no person with the given id.
+     */
+    public Mono<EncodedPerson> findById(Long id, MediaType mediaType) {
+        return Mono.defer(() -> {
+            var key = new Key(id, mediaType);
+            var cached = this.enabled ? this.bodies.getIfPresent(key) : null;
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            var generation = this.invalidations.get();
+            return this.personCache.findById(id)
+                    .map(person -> this.encode(person, mediaType))
+                    .doOnNext(encoded -> this.put(key, encoded, generation));
+        });
+    }
+
+    private EncodedPerson encode(Person person, MediaType mediaType) {
+        var encoder = this.encoders.get(mediaType);
+        if (encoder == null) {
+            throw new IllegalArgumentException("persons cannot be encoded as " + mediaType);
+        }
+        var buffer = encoder.encodeValue(person, DefaultDataBufferFactory.sharedInstance, PERSON_TYPE, mediaType, Map.of());
+        var body = new byte[buffer.readableByteCount()];
+        buffer.read(body);
+        DataBufferUtils.release(buffer);
+        return new EncodedPerson(PersonHandler.etag(person, mediaType), ByteBuffer.wrap(body).asReadOnlyBuffer());
+    }
+
+    /**
+     * Caches a body unless an invalidation happened since its person was loaded, which may have been read before.
+     *
+     * @param key        The key of the body.
+     * @param encoded    The body.
+     * @param generation The number of invalidations before the person was loaded.
+     */
+    private void put(Key key, EncodedPerson encoded, long generation) {
+        if (!this.enabled || generation != this.invalidations.get()) {
+            return;
+        }
+        this.bodies.put(key, encoded);
+        // an invalidation between the check and the put did not see the body
+        if (generation != this.invalidations.get()) {
+            this.bodies.asMap().remove(key, encoded);
+        }
+    }
+
+    /**
+     * Removes the bodies of a person that was updated or deleted.
+     *
+     * @param person The person that was written.
+     */
+    public void invalidate(Person person) {
+        this.invalidate(person.id());
+    }
+
+    /**
+     * Removes the bodies of the person with the given id in all representations.
+     * Bodies that are still being loaded are not cached, since they may have been read before the write.
+     *
+     * @param id The id of the person that was written.
+     */
+    public void invalidate(Long id) {
+        this.invalidations.incrementAndGet();
+        this.encoders.keySet().forEach(mediaType -> this.bodies.invalidate(new Key(id, mediaType)));
+    }
+
+    /**
+     * Removes all bodies, for example when writes may have been missed.
+     */
+    public void invalidateAll() {
+        this.invalidations.incrementAndGet();
+        this.bodies.invalidateAll();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, this.bodies, "people.responses");
+    }
+}
@@ -3,6 +3,7 @@ package de.ksbrwsk.people;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.enums.ParameterIn;
+import io.swagger.v3.oas.annotations.headers.Header;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -18,6 +19,7 @@ import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.ServerResponse;
 
 import static de.ksbrwsk.people.Constants.API;
+import static de.ksbrwsk.people.Constants.NEXT_CURSOR_HEADER;
 import static org.springframework.web.reactive.function.server.RequestPredicates.*;
 import static org.springframework.web.reactive.function.server.RouterFunctions.nest;
 import static org.springframework.web.reactive.function.server.RouterFunctions.route;
@@ -32,7 +34,9 @@ public class PersonRouter {
      * This method defines the routes for the Person API.
      * It uses the @RouterOperations annotation to provide OpenAPI documentation for each route.
      *
-     * @param personHandler The handler class that contains the methods to handle the requests.
+     * @param personHandler            The handler class that contains the methods to handle the requests.
+     * @param personMetrics            The metrics timing the handler functions.
+     * @param personConcurrencyLimiter The limit of the requests handled at once.
      * @return A RouterFunction that routes requests to the appropriate handler methods.
      */
     @Bean
@@ -41,7 +45,11 @@ public class PersonRouter {
                     @RouterOperation(
                             path = API,
                             produces = {
-                                    MediaType.APPLICATION_JSON_VALUE
+                                    MediaType.APPLICATION_JSON_VALUE,
+                                    MediaType.APPLICATION_NDJSON_VALUE,
+                                    MediaType.TEXT_EVENT_STREAM_VALUE,
+                                    MediaType.APPLICATION_CBOR_VALUE,
+                                    "application/x-jackson-smile"
                             },
                             method = RequestMethod.GET,
                             beanClass = PersonHandler.class,
@@ -52,22 +60,248 @@ public class PersonRouter {
                                             @ApiResponse(
                                                     responseCode = "200",
                                                     description = "successful operation",
-                                                    content = @Content(
+                                                    headers = @Header(
+                                                            name = NEXT_CURSOR_HEADER,
+                                                            description = "cursor of the next page, absent on the last page"
+                                                    ),
+                                                    content = {
+                                                            @Content(
+                                                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                                                    array = @ArraySchema(
+                                                                            schema = @Schema(implementation = Person.class))
+                                                            ),
+                                                            @Content(
+                                                                    mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                                                                    schema = @Schema(implementation = Person.class)
+                                                            ),
+                                                            @Content(
+                                                                    mediaType = MediaType.TEXT_EVENT_STREAM_VALUE,
+                                                                    schema = @Schema(implementation = Person.class)
+                                                            )
+                                                    }
+                                            ),
+                                            @ApiResponse(responseCode = "400", description = "cursor or limit not valid")
+                                    },
+                                    parameters = {
+                                            @Parameter(in = ParameterIn.QUERY, name = "ids",
+                                                    description = "comma separated ids, answers like POST " + API + "/lookup when given"),
+                                            @Parameter(in = ParameterIn.QUERY, name = "cursor",
+                                                    description = "opaque cursor of the page to fetch, pages the result when given"),
+                                            @Parameter(in = ParameterIn.QUERY, name = "limit",
+                                                    description = "page size between 1 and 1000, pages the result when given")
+                                    }
+                            )
+                    ),
+                    @RouterOperation(
+                            path = API + "/lookup",
+                            produces = {
+                                    MediaType.APPLICATION_JSON_VALUE,
+                                    MediaType.APPLICATION_NDJSON_VALUE,
+                                    MediaType.TEXT_EVENT_STREAM_VALUE
+                            },
+                            method = RequestMethod.POST,
+                            beanClass = PersonHandler.class,
+                            beanMethod = "handleLookup",
+                            operation = @Operation(
+                                    operationId = "handleLookup",
+                                    description = "finds the persons with the given ids, also available as GET "
+                                            + API + "?ids=1,2,3 for up to 1000 ids; streamed responses emit the result "
+                                            + "of every chunk of ids",
+                                    responses = {
+                                            @ApiResponse(
+                                                    responseCode = "200",
+                                                    description = "successful operation, reports the persons found and the ids missing in request order",
+                                                    content = {
+                                                            @Content(
+                                                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                                                    schema = @Schema(implementation = PersonLookupResult.class)
+                                                            ),
+                                                            @Content(
+                                                                    mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                                                                    schema = @Schema(implementation = PersonLookupResult.class)
+                                                            ),
+                                                            @Content(
+                                                                    mediaType = MediaType.TEXT_EVENT_STREAM_VALUE,
+                                                                    schema = @Schema(implementation = PersonLookupResult.class)
+                                                            )
+                                                    }
+                                            ),
+                                            @ApiResponse(responseCode = "400", description = "ids not valid or more than 1000 ids not streamed")
+                                    },
+                                    requestBody = @RequestBody(
+                                            content = {
+                                                    @Content(
                                                             mediaType = MediaType.APPLICATION_JSON_VALUE,
                                                             array = @ArraySchema(
-                                                                    schema = @Schema(implementation = Person.class))
+                                                                    schema = @Schema(type = "integer", format = "int64"))
+                                                    ),
+                                                    @Content(
+                                                            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                                                            schema = @Schema(type = "integer", format = "int64")
+                                                    )
+                                            }
+                                    )
+                            )
+                    ),
+                    @RouterOperation(
+                            path = API + "/search",
+                            produces = {
+                                    MediaType.APPLICATION_JSON_VALUE,
+                                    MediaType.APPLICATION_NDJSON_VALUE
+                            },
+                            method = RequestMethod.GET,
+                            beanClass = PersonHandler.class,
+                            beanMethod = "handleSearch",
+                            operation = @Operation(
+                                    operationId = "handleSearch",
+                                    responses = {
+                                            @ApiResponse(
+                                                    responseCode = "200",
+                                                    description = "successful operation, the most similar names first",
+                                                    content = {
+                                                            @Content(
+                                                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                                                    array = @ArraySchema(
+                                                                            schema = @Schema(implementation = Person.class))
+                                                            ),
+                                                            @Content(
+                                                                    mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                                                                    schema = @Schema(implementation = Person.class)
+                                                            )
+                                                    }
+                                            ),
+                                            @ApiResponse(responseCode = "400", description = "query or limit not valid")
+                                    },
+                                    parameters = {
+                                            @Parameter(in = ParameterIn.QUERY, name = "q", required = true,
+                                                    description = "text contained in or similar to the name, 3 to 255 characters"),
+                                            @Parameter(in = ParameterIn.QUERY, name = "limit",
+                                                    description = "maximum number of results between 1 and 1000, defaults to 10")
+                                    }
+                            )
+                    ),
+                    @RouterOperation(
+                            path = API + "/autocomplete",
+                            produces = {
+                                    MediaType.APPLICATION_JSON_VALUE
+                            },
+                            method = RequestMethod.GET,
+                            beanClass = PersonHandler.class,
+                            beanMethod = "handleAutocomplete",
+                            operation = @Operation(
+                                    operationId = "handleAutocomplete",
+                                    responses = {
+                                            @ApiResponse(
+                                                    responseCode = "200",
+                                                    description = "successful operation, distinct names in alphabetical order",
+                                                    content = @Content(
+                                                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                                            array = @ArraySchema(schema = @Schema(implementation = String.class))
                                                     )
+                                            ),
+                                            @ApiResponse(responseCode = "400", description = "prefix or limit not valid"),
+                                            @ApiResponse(responseCode = "503", description = "name index not loaded yet")
+                                    },
+                                    parameters = {
+                                            @Parameter(in = ParameterIn.QUERY, name = "prefix", required = true,
+                                                    description = "start of the name, ignoring case, 1 to 255 characters"),
+                                            @Parameter(in = ParameterIn.QUERY, name = "limit",
+                                                    description = "maximum number of names between 1 and 1000, defaults to 10")
+                                    }
+                            )
+                    ),
+                    @RouterOperation(
+                            path = API + "/count",
+                            produces = {
+                                    MediaType.APPLICATION_JSON_VALUE
+                            },
+                            method = RequestMethod.GET,
+                            beanClass = PersonHandler.class,
+                            beanMethod = "handleCount",
+                            operation = @Operation(
+                                    operationId = "handleCount",
+                                    responses = {
+                                            @ApiResponse(
+                                                    responseCode = "200",
+                                                    description = "successful operation",
+                                                    content = @Content(schema = @Schema(
+                                                            implementation = PersonCount.class
+                                                    ))
                                             )
+                                    },
+                                    parameters = {
+                                            @Parameter(in = ParameterIn.QUERY, name = "exact",
+                                                    description = "count the people instead of estimating, defaults to false")
                                     }
                             )
                     ),
                     @RouterOperation(
-                            path = API + "/{id}",
+                            path = API + "/stats",
                             produces = {
                                     MediaType.APPLICATION_JSON_VALUE
                             },
                             method = RequestMethod.GET,
                             beanClass = PersonHandler.class,
+                            beanMethod = "handleStats",
+                            operation = @Operation(
+                                    operationId = "handleStats",
+                                    responses = {
+                                            @ApiResponse(
+                                                    responseCode = "200",
+                                                    description = "successful operation",
+                                                    content = @Content(schema = @Schema(
+                                                            implementation = PersonStats.class
+                                                    ))
+                                            )
+                                    }
+                            )
+                    ),
+                    @RouterOperation(
+                            path = API + "/changes",
+                            produces = {
+                                    MediaType.TEXT_EVENT_STREAM_VALUE,
+                                    MediaType.APPLICATION_NDJSON_VALUE
+                            },
+                            method = RequestMethod.GET,
+                            beanClass = PersonHandler.class,
+                            beanMethod = "handleChanges",
+                            operation = @Operation(
+                                    operationId = "handleChanges",
+                                    responses = {
+                                            @ApiResponse(
+                                                    responseCode = "200",
+                                                    description = "successful operation, the changes in commit order",
+                                                    content = {
+                                                            @Content(
+                                                                    mediaType = MediaType.TEXT_EVENT_STREAM_VALUE,
+                                                                    schema = @Schema(implementation = PersonChange.class)
+                                                            ),
+                                                            @Content(
+                                                                    mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                                                                    schema = @Schema(implementation = PersonChange.class)
+                                                            )
+                                                    }
+                                            ),
+                                            @ApiResponse(responseCode = "400", description = "position not valid"),
+                                            @ApiResponse(responseCode = "503", description = "change feed disabled")
+                                    },
+                                    parameters = {
+                                            @Parameter(in = ParameterIn.QUERY, name = "since",
+                                                    description = "position of the last change received, sequence:index, to resume"),
+                                            @Parameter(in = ParameterIn.HEADER, name = "Last-Event-ID",
+                                                    description = "id of the last event received, used if since is missing")
+                                    }
+                            )
+                    ),
+                    @RouterOperation(
+                            path = API + "/{id}",
+                            produces = {
+                                    MediaType.APPLICATION_JSON_VALUE,
+                                    MediaType.APPLICATION_CBOR_VALUE,
+                                    "application/x-jackson-smile"
+                            },
+                            method = RequestMethod.GET,
+                            beanClass = PersonHandler.class,
                             beanMethod = "handleFindById",
                             operation = @Operation(
                                     operationId = "handleFindById",
@@ -89,7 +323,9 @@ public class PersonRouter {
                     @RouterOperation(
                             path = API + "/firstByName/{name}",
                             produces = {
-                                    MediaType.APPLICATION_JSON_VALUE
+                                    MediaType.APPLICATION_JSON_VALUE,
+                                    MediaType.APPLICATION_CBOR_VALUE,
+                                    "application/x-jackson-smile"
                             },
                             method = RequestMethod.GET,
                             beanClass = PersonHandler.class,
@@ -139,7 +375,9 @@ public class PersonRouter {
                     @RouterOperation(
                             path = API + "/{id}",
                             produces = {
-                                    MediaType.APPLICATION_JSON_VALUE
+                                    MediaType.APPLICATION_JSON_VALUE,
+                                    MediaType.APPLICATION_CBOR_VALUE,
+                                    "application/x-jackson-smile"
                             },
                             method = RequestMethod.PUT,
                             beanClass = PersonHandler.class,
@@ -155,22 +393,33 @@ public class PersonRouter {
                                                     ))
                                             ),
                                             @ApiResponse(responseCode = "404", description = "person not found with given id"),
-                                            @ApiResponse(responseCode = "400", description = "person not not valid")
+                                            @ApiResponse(responseCode = "400", description = "person not not valid"),
+                                            @ApiResponse(responseCode = "409", description = "version in the body outdated"),
+                                            @ApiResponse(responseCode = "412", description = "ETag in If-Match outdated")
                                     },
                                     parameters = {
-                                            @Parameter(in = ParameterIn.PATH, name = "id")
+                                            @Parameter(in = ParameterIn.PATH, name = "id"),
+                                            @Parameter(in = ParameterIn.HEADER, name = "If-Match",
+                                                    description = "ETag the person must still have to be updated")
                                     },
                                     requestBody = @RequestBody(
-                                            content = @Content(
-                                                    schema = @Schema(implementation = Person.class)
-                                            )
+                                            content = {
+                                                    @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                                            schema = @Schema(implementation = Person.class)),
+                                                    @Content(mediaType = MediaType.APPLICATION_CBOR_VALUE,
+                                                            schema = @Schema(implementation = Person.class)),
+                                                    @Content(mediaType = "application/x-jackson-smile",
+                                                            schema = @Schema(implementation = Person.class))
+                                            }
                                     )
                             )
                     ),
                     @RouterOperation(
                             path = API,
                             produces = {
-                                    MediaType.APPLICATION_JSON_VALUE
+                                    MediaType.APPLICATION_JSON_VALUE,
+                                    MediaType.APPLICATION_CBOR_VALUE,
+                                    "application/x-jackson-smile"
                             },
                             method = RequestMethod.POST,
                             beanClass = PersonHandler.class,
@@ -188,22 +437,122 @@ public class PersonRouter {
                                             @ApiResponse(responseCode = "400", description = "person not not valid")
                                     },
                                     requestBody = @RequestBody(
-                                            content = @Content(
-                                                    schema = @Schema(implementation = Person.class)
-                                            )
+                                            content = {
+                                                    @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                                            schema = @Schema(implementation = Person.class)),
+                                                    @Content(mediaType = MediaType.APPLICATION_CBOR_VALUE,
+                                                            schema = @Schema(implementation = Person.class)),
+                                                    @Content(mediaType = "application/x-jackson-smile",
+                                                            schema = @Schema(implementation = Person.class))
+                                            }
+                                    )
+                            )
+                    ),
+                    @RouterOperation(
+                            path = API + "/batch",
+                            produces = {
+                                    MediaType.APPLICATION_JSON_VALUE
+                            },
+                            method = RequestMethod.POST,
+                            beanClass = PersonHandler.class,
+                            beanMethod = "handleCreateBatch",
+                            operation = @Operation(
+                                    operationId = "handleCreateBatch",
+                                    responses = {
+                                            @ApiResponse(
+                                                    responseCode = "200",
+                                                    description = "successful operation, reports the id or the error of every person; "
+                                                            + "chunks are committed on their own",
+                                                    content = @Content(
+                                                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                                            array = @ArraySchema(
+                                                                    schema = @Schema(implementation = PersonBatchResult.class))
+                                                    )
+                                            ),
+                                            @ApiResponse(responseCode = "400", description = "request body not readable")
+                                    },
+                                    requestBody = @RequestBody(
+                                            content = {
+                                                    @Content(
+                                                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                                            array = @ArraySchema(
+                                                                    schema = @Schema(implementation = Person.class))
+                                                    ),
+                                                    @Content(
+                                                            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                                                            schema = @Schema(implementation = Person.class)
+                                                    )
+                                            }
+                                    )
+                            )
+                    ),
+                    @RouterOperation(
+                            path = API + "/import",
+                            produces = {
+                                    MediaType.APPLICATION_JSON_VALUE
+                            },
+                            method = RequestMethod.POST,
+                            beanClass = PersonHandler.class,
+                            beanMethod = "handleImport",
+                            operation = @Operation(
+                                    operationId = "handleImport",
+                                    responses = {
+                                            @ApiResponse(
+                                                    responseCode = "200",
+                                                    description = "successful operation",
+                                                    content = @Content(schema = @Schema(
+                                                            implementation = PersonImportResult.class
+                                                    ))
+                                            ),
+                                            @ApiResponse(responseCode = "400", description = "person not not valid"),
+                                            @ApiResponse(responseCode = "415", description = "content type not supported")
+                                    },
+                                    parameters = {
+                                            @Parameter(in = ParameterIn.QUERY, name = "header",
+                                                    description = "whether the first CSV line is a header line")
+                                    },
+                                    requestBody = @RequestBody(
+                                            content = {
+                                                    @Content(
+                                                            mediaType = "text/csv",
+                                                            schema = @Schema(type = "string", description = "one name per line")
+                                                    ),
+                                                    @Content(
+                                                            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                                                            schema = @Schema(implementation = Person.class)
+                                                    )
+                                            }
                                     )
                             )
                     )
             }
     )
-    RouterFunction<ServerResponse> http(PersonHandler personHandler) {
+    RouterFunction<ServerResponse> http(PersonHandler personHandler, PersonMetrics personMetrics,
+                                        PersonConcurrencyLimiter personConcurrencyLimiter) {
         return nest(path(API),
-                route(GET(""), personHandler::handleFindAll)
-                        .andRoute(GET("/{id}"), personHandler::handleFindById)
-                        .andRoute(GET("/firstByName/{name}"), personHandler::handleFindFirstByName)
-                        .andRoute(DELETE("/{id}"), personHandler::handleDeleteById)
-                        .andRoute(POST(""), personHandler::handleCreate)
-                        .andRoute(PUT("/{id}"), personHandler::handleUpdate)
+                route(GET("").and(queryParam("ids", ids -> true)),
+                        personMetrics.timed("findAllByIds", personHandler::handleFindAllByIds))
+                        .andRoute(GET("").and(queryParam("cursor", cursor -> true).or(queryParam("limit", limit -> true))),
+                                personMetrics.timed("findPage", personHandler::handleFindPage))
+                        .andRoute(GET("").and(request -> PersonHandler.streamingMediaType(request).isPresent()),
+                                personMetrics.timed("streamAll", personHandler::handleStreamAll))
+                        .andRoute(GET(""), personMetrics.timed("findAll", personHandler::handleFindAll))
+                        .andRoute(GET("/search"), personMetrics.timed("search", personHandler::handleSearch))
+                        .andRoute(GET("/autocomplete"),
+                                personMetrics.timed("autocomplete", personHandler::handleAutocomplete))
+                        .andRoute(GET("/count"), personMetrics.timed("count", personHandler::handleCount))
+                        .andRoute(GET("/stats"), personMetrics.timed("stats", personHandler::handleStats))
+                        .andRoute(GET("/changes"), personMetrics.timed("changes", personHandler::handleChanges))
+                        .andRoute(GET("/{id}"), personMetrics.timed("findById", personHandler::handleFindById))
+                        .andRoute(GET("/firstByName/{name}"),
+                                personMetrics.timed("findFirstByName", personHandler::handleFindFirstByName))
+                        .andRoute(DELETE("/{id}"), personMetrics.timed("deleteById", personHandler::handleDeleteById))
+                        .andRoute(POST(""), personMetrics.timed("create", personHandler::handleCreate))
+                        .andRoute(POST("/lookup"), personMetrics.timed("lookup", personHandler::handleLookup))
+                        .andRoute(POST("/batch"), personMetrics.timed("createBatch", personHandler::handleCreateBatch))
+                        .andRoute(POST("/import"), personMetrics.timed("import", personHandler::handleImport))
+                        .andRoute(PUT("/{id}"), personMetrics.timed("update", personHandler::handleUpdate))
+                        .filter(personConcurrencyLimiter)
         );
     }
 }
@@ -0,0 +1,25 @@
+package de.ksbrwsk.people;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.Map;
+
+/**
+ * This record represents statistics of the people, read without scanning the person table.
+ *
+ * @param count       The number of people.
+ * @param minId       The lowest id, null if there are no people.
+ * @param maxId       The highest id, null if there are no people.
+ * @param nameLengths The number of people per length of their name, ordered by length.
+ */
+public record PersonStats(
+        @Schema(name = "count", description = "The number of people")
+        long count,
+        @Schema(name = "minId", description = "The lowest id, null if there are no people")
+        Long minId,
+        @Schema(name = "maxId", description = "The highest id, null if there are no people")
+        Long maxId,
+        @Schema(name = "nameLengths", description = "The number of people per length of their name, ordered by length")
+        Map<Integer, Long> nameLengths
+) {
+}
@@ -0,0 +1,217 @@
+package de.ksbrwsk.people;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import jakarta.validation.groups.Default;
+import jakarta.validation.metadata.ConstraintDescriptor;
+import jakarta.validation.metadata.PropertyDescriptor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * This class validates persons on the write path.
+ * The {@link NotBlank} and {@link Size} constraints declared on the Person record are read once from the metadata
+ * of the Validator and compiled into direct checks with preformatted error messages, so validating a person does
+ * not allocate unless it is invalid. The messages are taken from the Validator itself and are identical.
+ * If Person declares any other constraint, a constraint group, a class level constraint or a cascaded property,
+ * every person is validated with the Validator instead.
+ */
+@Component
+@Slf4j
+public class PersonValidator {
+
+    private final Validator validator;
+    private final List<Check> checks;
+
+    /**
+     * A compiled constraint of a property.
+     *
+     * @param accessor The accessor of the property, typed (Person) -> String.
+     * @param blank    Whether a blank value violates the constraint.
+     * @param min      The minimum length of a non-null value.
+     * @param max      The maximum length of a non-null value.
+     * @param error    The formatted error reported for a violation.
+     */
+    private record Check(MethodHandle accessor, boolean blank, int min, int max, String error) {
+
+        boolean violatedBy(Person person) {
+            String value;
+            try {
+                value = (String) this.accessor.invokeExact(person);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+            if (this.blank) {
+                return isBlank(value);
+            }
+            return value != null && (value.length() < this.min || value.length() > this.max);
+        }
+
+        /**
+         * Matches the NotBlankValidator, which trims the value.
+         */
+        private static boolean isBlank(String value) {
+            if (value == null) {
+                return true;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) > ' ') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Compiles the constraints of the Person record.
+     *
+     * @param validator The Validator providing the constraint metadata and the messages.
+     */
+    public PersonValidator(Validator validator) {
+        this.validator = validator;
+        this.checks = this.compile().orElse(null);
+        if (this.checks == null) {
+            log.info("person constraints not supported by the compiled validator, falling back to the Validator");
+        }
+    }
+
+    /**
+     * Validates a person.
+     *
+     * @param person The person to validate.
+     * @return The formatted validation errors, empty if the person is valid.
+     */
+    public List<String> errors(Person person) {
+        if (this.checks == null) {
+            return this.validatorErrors(person);
+        }
+        List<String> errors = List.of();
+        for (Check check : this.checks) {
+            if (check.violatedBy(person)) {
+                if (errors.isEmpty()) {
+                    errors = new ArrayList<>(this.checks.size());
+                }
+                errors.add(check.error());
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Validates a person with the Validator.
+     *
+     * @param person The person to validate.
+     * @return The formatted validation errors, empty if the person is valid.
+     */
+    List<String> validatorErrors(Person person) {
+        Set<ConstraintViolation<Person>> violations = this.validator.validate(person);
+        return violations.stream()
+                .map(PersonValidator::formatError)
+                .toList();
+    }
+
+    /**
+     * Formats a validation error.
+     *
+     * @param personConstraintViolation The validation error.
+     * @return A string representation of the validation error.
+     */
+    private static String formatError(ConstraintViolation<Person> personConstraintViolation) {
+        String field = StringUtils.capitalize(personConstraintViolation.getPropertyPath().toString());
+        String error = personConstraintViolation.getMessage();
+        return String.format("%s - %s", field, error);
+    }
+
+    /**
+     * Compiles the constraints of the Person record into checks.
+     *
+     * @return The checks in declaration order, empty if a constraint is not supported.
+     */
+    private Optional<List<Check>> compile() {
+        var beanDescriptor = this.validator.getConstraintsForClass(Person.class);
+        if (!beanDescriptor.getConstraintDescriptors().isEmpty()) {
+            return Optional.empty();
+        }
+        var checks = new ArrayList<Check>();
+        var constrainedComponents = 0;
+        for (RecordComponent component : Person.class.getRecordComponents()) {
+            var property = beanDescriptor.getConstraintsForProperty(component.getName());
+            if (property == null) {
+                continue;
+            }
+            constrainedComponents++;
+            if (!supported(property, component)) {
+                return Optional.empty();
+            }
+            for (ConstraintDescriptor<?> constraint : property.getConstraintDescriptors()) {
+                var check = this.compile(component, constraint);
+                if (check.isEmpty()) {
+                    return Optional.empty();
+                }
+                check.filter(c -> c.error() != null).ifPresent(checks::add);
+            }
+        }
+        if (constrainedComponents != beanDescriptor.getConstrainedProperties().size()) {
+            return Optional.empty();
+        }
+        return Optional.of(List.copyOf(checks));
+    }
+
+    private static boolean supported(PropertyDescriptor property, RecordComponent component) {
+        return component.getType() == String.class
+                && !property.isCascaded()
+                && property.getConstrainedContainerElementTypes().isEmpty()
+                && property.getConstraintDescriptors().stream().allMatch(constraint ->
+                constraint.getGroups().equals(Set.of(Default.class))
+                        && constraint.getComposingConstraints().isEmpty()
+                        && (constraint.getAnnotation() instanceof NotBlank || constraint.getAnnotation() instanceof Size));
+    }
+
+    /**
+     * Compiles a constraint of a property and resolves its message by letting the Validator reject a probe value.
+     *
+     * @return The check, a check without error if the constraint can never be violated,
+     * or empty if the message cannot be resolved.
+     */
+    private Optional<Check> compile(RecordComponent component, ConstraintDescriptor<?> constraint) {
+        MethodHandle accessor;
+        try {
+            accessor = MethodHandles.publicLookup()
+                    .unreflect(component.getAccessor())
+                    .asType(MethodType.methodType(String.class, Person.class));
+        } catch (IllegalAccessException e) {
+            return Optional.empty();
+        }
+        var blank = constraint.getAnnotation() instanceof NotBlank;
+        var min = constraint.getAnnotation() instanceof Size size ? size.min() : 0;
+        var max = constraint.getAnnotation() instanceof Size size ? size.max() : Integer.MAX_VALUE;
+        String probe;
+        if (blank) {
+            probe = "";
+        } else if (min > 0) {
+            probe = "x".repeat(min - 1);
+        } else if (max < Integer.MAX_VALUE) {
+            probe = "x".repeat(max + 1);
+        } else {
+            return Optional.of(new Check(accessor, false, min, max, null));
+        }
+        var annotationType = constraint.getAnnotation().annotationType();
+        return this.validator.validateValue(Person.class, component.getName(), probe).stream()
+                .filter(violation -> violation.getConstraintDescriptor().getAnnotation().annotationType() == annotationType)
+                .findFirst()
+                .map(violation -> new Check(accessor, blank, min, max, formatError(violation)));
+    }
+}
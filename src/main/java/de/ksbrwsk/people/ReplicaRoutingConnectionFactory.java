@@ -0,0 +1,202 @@
+package de.ksbrwsk.people;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Wrapped;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * This class routes connections either to the primary or to one of the streaming replicas.
+ * A connection is taken from a replica if the subscriber context marks the work as read only
+ * (see {@link #READ_ONLY}), otherwise, and whenever no replica is in sync, from the primary.
+ * Reads are balanced round robin across the replicas whose replay lag, checked periodically,
+ * does not exceed the configured maximum. Work marked with {@link #readOnly(Context)} sticks to the server
+ * of its first connection, so no later query sees an older state than an earlier one; if that replica falls
+ * out of sync, the rest of the work moves to the primary. Unwrapping yields the primary.
+ */
+@Slf4j
+class ReplicaRoutingConnectionFactory extends AbstractRoutingConnectionFactory
+        implements Wrapped<ConnectionFactory>, Disposable {
+    /**
+     * The subscriber context key marking work as read only.
+     */
+    static final String READ_ONLY = ReplicaRoutingConnectionFactory.class.getName() + ".READ_ONLY";
+
+    /**
+     * The subscriber context key holding the server read only work sticks to.
+     */
+    private static final String PINNED = ReplicaRoutingConnectionFactory.class.getName() + ".PINNED";
+    private static final int UNPINNED = -1;
+    private static final int PRIMARY = -2;
+
+    /**
+     * Reports how far a replica is behind the primary: infinitely far if it is not streaming from the primary,
+     * since it then receives nothing it could lag behind, zero if it has replayed everything it received,
+     * otherwise the age of the last replayed transaction. A server not in recovery reports zero.
+     * Without the pg_read_all_stats role only the pid of the WAL receiver is visible, its presence is taken
+     * as streaming then.
+     */
+    private static final String REPLAY_LAG_QUERY = """
+            SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0
+                   WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver
+                                    WHERE COALESCE(status, 'streaming') = 'streaming') THEN 'Infinity'::float8
+                   WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                   ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END::float8""";
+
+    private final ConnectionFactory primary;
+    private final List<ConnectionFactory> replicas;
+    private final PeopleProperties.Replicas settings;
+    private final Function<ConnectionFactory, Mono<Duration>> lagProbe;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile List<Integer> inSync = List.of();
+    private volatile Disposable lagChecks;
+
+    /**
+     * Creates a routing ConnectionFactory checking the replay lag of the replicas with a query.
+     *
+     * @param primary  The ConnectionFactory of the primary.
+     * @param replicas The ConnectionFactories of the replicas.
+     * @param settings The replica settings.
+     */
+    ReplicaRoutingConnectionFactory(ConnectionFactory primary, List<? extends ConnectionFactory> replicas,
+                                    PeopleProperties.Replicas settings) {
+        this(primary, replicas, settings, ReplicaRoutingConnectionFactory::replayLag);
+    }
+
+    ReplicaRoutingConnectionFactory(ConnectionFactory primary, List<? extends ConnectionFactory> replicas,
+                                    PeopleProperties.Replicas settings,
+                                    Function<ConnectionFactory, Mono<Duration>> lagProbe) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.settings = settings;
+        this.lagProbe = lagProbe;
+        var targets = new HashMap<Integer, ConnectionFactory>();
+        IntStream.range(0, this.replicas.size()).forEach(i -> targets.put(i, this.replicas.get(i)));
+        setTargetConnectionFactories(targets);
+        setDefaultTargetConnectionFactory(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    /**
+     * Marks work as read only and lets all its connections come from the same server.
+     *
+     * @param context The subscriber context of the work.
+     * @return The subscriber context marking the work as read only.
+     */
+    static Context readOnly(Context context) {
+        return context.put(READ_ONLY, true).put(PINNED, new AtomicInteger(UNPINNED));
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.deferContextual(context -> {
+            if (!context.getOrDefault(READ_ONLY, false)) {
+                return Mono.empty();
+            }
+            var candidates = this.inSync;
+            AtomicInteger pinned = context.getOrDefault(PINNED, null);
+            if (pinned == null) {
+                return Mono.justOrEmpty(this.choose(candidates));
+            }
+            pinned.compareAndSet(UNPINNED, this.choose(candidates).orElse(PRIMARY));
+            var target = pinned.get();
+            if (target != PRIMARY && !candidates.contains(target)) {
+                pinned.compareAndSet(target, PRIMARY);
+                return Mono.empty();
+            }
+            return target == PRIMARY ? Mono.empty() : Mono.just(target);
+        });
+    }
+
+    private Optional<Integer> choose(List<Integer> candidates) {
+        if (candidates.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(candidates.get(Math.floorMod(this.next.getAndIncrement(), candidates.size())));
+    }
+
+    /**
+     * Starts checking the replay lag of the replicas periodically. Until the first check completes,
+     * all reads go to the primary.
+     */
+    void start() {
+        this.lagChecks = Flux.interval(Duration.ZERO, this.settings.lagCheckInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> this.checkLag(), 1)
+                .subscribe();
+    }
+
+    /**
+     * Checks the replay lag of all replicas and updates the replicas receiving reads.
+     * A replica failing the check is treated as out of sync.
+     *
+     * @return A Mono completing once all replicas are checked.
+     */
+    Mono<Void> checkLag() {
+        return Flux.range(0, this.replicas.size())
+                .flatMap(i -> this.lagProbe.apply(this.replicas.get(i))
+                        .timeout(this.settings.lagCheckInterval())
+                        .map(lag -> lag.compareTo(this.settings.maxLag()) <= 0)
+                        .onErrorResume(e -> {
+                            log.warn("replay lag check of replica {} failed -> {}", i, e.getMessage());
+                            return Mono.just(false);
+                        })
+                        .filter(Boolean::booleanValue)
+                        .map(inSync -> i))
+                .sort()
+                .collectList()
+                .doOnNext(candidates -> {
+                    if (!candidates.equals(this.inSync)) {
+                        log.info("replicas in sync changed from {} to {}", this.inSync, candidates);
+                    }
+                    this.inSync = List.copyOf(candidates);
+                })
+                .then();
+    }
+
+    /**
+     * Stops the lag checks and disposes the primary and the replicas.
+     */
+    @Override
+    public void dispose() {
+        var current = this.lagChecks;
+        if (current != null) {
+            current.dispose();
+        }
+        this.replicas.forEach(ReplicaRoutingConnectionFactory::dispose);
+        dispose(this.primary);
+    }
+
+    private static void dispose(ConnectionFactory connectionFactory) {
+        if (connectionFactory instanceof Disposable disposable) {
+            disposable.dispose();
+        }
+    }
+
+    private static Mono<Duration> replayLag(ConnectionFactory replica) {
+        return Mono.usingWhen(replica.create(),
+                connection -> Mono.from(connection.createStatement(REPLAY_LAG_QUERY).execute())
+                        .flatMap(result -> Mono.from(result.map(readable -> readable.get(0, Double.class))))
+                        .map(seconds -> Duration.ofNanos((long) (seconds * 1_000_000_000L))),
+                Connection::close);
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return this.primary;
+    }
+}
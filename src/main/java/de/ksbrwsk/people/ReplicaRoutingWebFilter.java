@@ -0,0 +1,60 @@
+package de.ksbrwsk.people;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import static de.ksbrwsk.people.Constants.API;
+
+/**
+ * This class marks the reads of the people API as read only, so the ReplicaRoutingConnectionFactory serves them
+ * from a replica, all queries of a request from the same one. Reads are GET and HEAD requests and lookups posting ids.
+ * To let clients read their own writes, a write sets a cookie that sends the reads of the same client to the primary
+ * until it expires after the configured stickiness.
+ */
+@Component
+@ConditionalOnProperty(prefix = "people.replicas", name = "urls")
+@RequiredArgsConstructor
+public class ReplicaRoutingWebFilter implements WebFilter {
+    /**
+     * The cookie sending the reads of a client to the primary.
+     */
+    static final String PRIMARY_COOKIE = "people-primary";
+
+    /**
+     * The path of the lookup posting the ids to read in its body.
+     */
+    static final String LOOKUP_PATH = API + "/lookup";
+
+    private final PeopleProperties peopleProperties;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var request = exchange.getRequest();
+        var path = request.getPath().pathWithinApplication().value();
+        if (!path.startsWith(API)) {
+            return chain.filter(exchange);
+        }
+        var method = request.getMethod();
+        if (HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method)
+                || HttpMethod.POST.equals(method) && LOOKUP_PATH.equals(path)) {
+            if (request.getCookies().containsKey(PRIMARY_COOKIE)) {
+                return chain.filter(exchange);
+            }
+            return chain.filter(exchange)
+                    .contextWrite(ReplicaRoutingConnectionFactory::readOnly);
+        }
+        exchange.getResponse().addCookie(ResponseCookie.from(PRIMARY_COOKIE, "1")
+                .path(API)
+                .maxAge(this.peopleProperties.replicas().stickiness())
+                .httpOnly(true)
+                .build());
+        return chain.filter(exchange);
+    }
+}
@@ -0,0 +1,149 @@
+package de.ksbrwsk.people;
+
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * This class lets concurrent lookups of the same key share one query instead of issuing their own.
+ * A lookup subscribing while a query for its key is running joins it and receives its result, value, empty or error,
+ * even if it arrives after the result. Once the query has finished, the next lookup runs a new one, so results are
+ * never kept. A lookup cancelling leaves the others undisturbed, the query is only cancelled when all have left.
+ * Queries run without the subscriber context of the lookups, since their result is shared between requests.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the results.
+ */
+class SingleFlight<K, V> {
+    private final ConcurrentMap<K, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Runs a query for a key or joins the one already running for it.
+     *
+     * @param key   The key of the lookup.
+     * @param query The query, only called if no query for the key is running.
+     * @return A Mono that emits the result of the shared query.
+     */
+    Mono<V> execute(K key, Function<? super K, Mono<V>> query) {
+        return Mono.defer(() -> {
+            while (true) {
+                var created = new Flight(key);
+                var flight = this.flights.computeIfAbsent(key, k -> created);
+                if (!flight.join()) {
+                    // abandoned by all its lookups just now, replace it
+                    this.flights.remove(key, flight);
+                    continue;
+                }
+                if (flight == created) {
+                    flight.start(query);
+                } else {
+                    this.coalesced.increment();
+                }
+                return flight.result.asMono()
+                        .doOnCancel(flight::leave);
+            }
+        });
+    }
+
+    /**
+     * Lets the next lookup of a key run a new query, for example because the key was written
+     * and the running query may have read it before. Lookups that joined the running query still receive its result.
+     *
+     * @param key The key.
+     */
+    void forget(K key) {
+        this.flights.remove(key);
+    }
+
+    /**
+     * Lets the next lookup of every key run a new query.
+     */
+    void forgetAll() {
+        this.flights.clear();
+    }
+
+    /**
+     * Tells how many lookups joined a running query, the number of queries saved.
+     *
+     * @return The number of lookups that did not run their own query.
+     */
+    long coalesced() {
+        return this.coalesced.sum();
+    }
+
+    /**
+     * Tells how many queries are running.
+     *
+     * @return The number of keys with a running query.
+     */
+    int inFlight() {
+        return this.flights.size();
+    }
+
+    /**
+     * A running query and the lookups waiting for it.
+     */
+    private final class Flight {
+        private static final int ABANDONED = -1;
+
+        private final K key;
+        private final Sinks.One<V> result = Sinks.one();
+        private final AtomicInteger lookups = new AtomicInteger();
+        private final Disposable.Swap upstream = Disposables.swap();
+
+        Flight(K key) {
+            this.key = key;
+        }
+
+        void start(Function<? super K, Mono<V>> query) {
+            this.upstream.update(Mono.defer(() -> query.apply(this.key)).subscribe(
+                    value -> {
+                        SingleFlight.this.flights.remove(this.key, this);
+                        this.result.tryEmitValue(value);
+                    },
+                    error -> {
+                        SingleFlight.this.flights.remove(this.key, this);
+                        this.result.tryEmitError(error);
+                    },
+                    () -> {
+                        SingleFlight.this.flights.remove(this.key, this);
+                        this.result.tryEmitEmpty();
+                    }));
+        }
+
+        /**
+         * Registers a lookup.
+         *
+         * @return false if the query has already been cancelled because all lookups left.
+         */
+        boolean join() {
+            while (true) {
+                var current = this.lookups.get();
+                if (current == ABANDONED) {
+                    return false;
+                }
+                if (this.lookups.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Unregisters a cancelled lookup and cancels the query if it was the last one.
+         */
+        void leave() {
+            if (this.lookups.decrementAndGet() == 0 && this.lookups.compareAndSet(0, ABANDONED)) {
+                SingleFlight.this.flights.remove(this.key, this);
+                this.upstream.dispose();
+            }
+        }
+    }
+}
@@ -3,5 +3,143 @@ create table person
 (
     id      bigserial primary key,
     name    varchar(255),
-    vorname varchar(255)
+    vorname varchar(255),
+    version bigint not null default 0
 );
+
+-- serves the substring, similarity and equality searches on the name
+create extension if not exists pg_trgm;
+create index person_name_trgm_idx on person using gin (name gin_trgm_ops);
+
+-- the versions of the statements changing the person table; a sequence, so writers do not queue up on one row,
+-- which makes the versions unique but not ordered like the commits; it starts at the creation time in microseconds,
+-- so versions are not reused when the table is recreated
+drop table if exists person_version;
+drop sequence if exists person_version_seq;
+create sequence person_version_seq;
+select setval('person_version_seq', (extract(epoch from clock_timestamp()) * 1000000)::bigint);
+
+-- the number of people per name length, kept current by the triggers below, so statistics of the person table
+-- are read without scanning it; lengths whose people have all been deleted or renamed keep a count of 0
+drop table if exists person_name_lengths;
+create table person_name_lengths
+(
+    length int primary key,
+    people bigint not null
+);
+
+-- draws a version for a statement, counts the name lengths of the rows it changed and publishes these rows
+-- on the person_changes channel as they were before and after the change, together with the version and the id
+-- of the transaction, so every instance can evict them from its cache, update its name index and stream them
+-- in commit order, the order notifications are delivered in;
+-- the rows are counted first, statements changing more than 10000 rows publish a flush instead of listing them,
+-- to flush all caches and rebuild all indexes; the others are listed in as many notifications as needed
+create or replace function notify_person_changes() returns trigger
+    language plpgsql as
+$$
+declare
+    changed        bigint;
+    new_version    bigint;
+    transaction_id bigint;
+    old_people     text[];
+    new_people     text[];
+    before_people  text := '';
+    after_people   text := '';
+    row_size       int;
+    chunk_size     int  := 0;
+begin
+    if TG_OP = 'INSERT' then
+        select count(*) into changed from new_rows;
+    else
+        select count(*) into changed from old_rows;
+    end if;
+    if changed = 0 then
+        return null;
+    end if;
+    new_version := nextval('person_version_seq');
+    transaction_id := pg_current_xact_id()::text::bigint;
+    -- the counts are changed in the order of their lengths, so concurrent statements do not deadlock on them
+    if TG_OP = 'INSERT' then
+        insert into person_name_lengths (length, people)
+        select coalesce(char_length(name), 0), count(*) from new_rows group by 1 order by 1
+        on conflict (length) do update set people = person_name_lengths.people + excluded.people;
+    elsif TG_OP = 'DELETE' then
+        insert into person_name_lengths (length, people)
+        select coalesce(char_length(name), 0), -count(*) from old_rows group by 1 order by 1
+        on conflict (length) do update set people = person_name_lengths.people + excluded.people;
+    else
+        insert into person_name_lengths (length, people)
+        select length, sum(people)
+        from (select coalesce(char_length(name), 0), -1 from old_rows
+              union all
+              select coalesce(char_length(name), 0), 1 from new_rows) as counted (length, people)
+        group by length
+        having sum(people) <> 0
+        order by length
+        on conflict (length) do update set people = person_name_lengths.people + excluded.people;
+    end if;
+    if changed > 10000 then
+        perform pg_notify('person_changes', json_build_object('version', new_version, 'flush', true)::text);
+        return null;
+    end if;
+    if TG_OP in ('UPDATE', 'DELETE') then
+        select array_agg(json_build_object('id', id, 'name', name)::text order by id) into old_people from old_rows;
+    end if;
+    if TG_OP in ('INSERT', 'UPDATE') then
+        select array_agg(json_build_object('id', id, 'name', name)::text order by id) into new_people from new_rows;
+    end if;
+    -- notifications of at most about 7000 bytes stay below the limit of 8000 bytes; ordered by id, the rows
+    -- of an update before and after the change are listed in the same notification, all but the last are marked
+    -- with more, so the statement is published as a whole
+    for i in 1 .. changed loop
+        row_size := coalesce(octet_length(old_people[i]) + 1, 0) + coalesce(octet_length(new_people[i]) + 1, 0);
+        if chunk_size > 0 and chunk_size + row_size > 7000 then
+            perform pg_notify('person_changes',
+                              format('{"version":%s,"xid":%s,"more":true,"before":[%s],"after":[%s]}', new_version,
+                                     transaction_id, before_people, after_people));
+            before_people := '';
+            after_people := '';
+            chunk_size := 0;
+        end if;
+        before_people := concat_ws(',', nullif(before_people, ''), old_people[i]);
+        after_people := concat_ws(',', nullif(after_people, ''), new_people[i]);
+        chunk_size := chunk_size + row_size;
+    end loop;
+    perform pg_notify('person_changes',
+                      format('{"version":%s,"xid":%s,"before":[%s],"after":[%s]}', new_version, transaction_id,
+                             before_people, after_people));
+    return null;
+end;
+$$;
+
+create trigger person_inserted
+    after insert on person
+    referencing new table as new_rows
+    for each statement execute function notify_person_changes();
+
+create trigger person_updated
+    after update on person
+    referencing old table as old_rows new table as new_rows
+    for each statement execute function notify_person_changes();
+
+create trigger person_deleted
+    after delete on person
+    referencing old table as old_rows
+    for each statement execute function notify_person_changes();
+
+-- a truncate fires no row level triggers and lists no rows, so the counts are reset and every instance is told
+-- to flush its caches and rebuild its index
+create or replace function notify_person_truncated() returns trigger
+    language plpgsql as
+$$
+begin
+    update person_name_lengths set people = 0 where people <> 0;
+    perform pg_notify('person_changes',
+                      json_build_object('version', nextval('person_version_seq'), 'flush', true)::text);
+    return null;
+end;
+$$;
+
+create trigger person_truncated
+    after truncate on person
+    for each statement execute function notify_person_truncated();
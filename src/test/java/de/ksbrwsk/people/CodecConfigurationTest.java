@@ -0,0 +1,54 @@
+package de.ksbrwsk.people;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import reactor.core.publisher.Flux;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class CodecConfigurationTest {
+
+    private static final List<Person> PEOPLE = LongStream.rangeClosed(1, 1000)
+            .mapToObj(id -> new Person(id, "Name" + (id % 1000)))
+            .toList();
+
+    private static long encode(Encoder<Object> encoder, MediaType mediaType) {
+        return encoder.encode(Flux.fromIterable(PEOPLE), DefaultDataBufferFactory.sharedInstance,
+                        ResolvableType.forClass(Person.class), mediaType, Collections.emptyMap())
+                .map(buffer -> {
+                    int readable = buffer.readableByteCount();
+                    DataBufferUtils.release(buffer);
+                    return (long) readable;
+                })
+                .reduce(0L, Long::sum)
+                .block();
+    }
+
+    @Test
+    @DisplayName("should encode arrays of persons smaller as CBOR and Smile than as JSON")
+    void should_encode_binary_arrays_smaller() {
+        var json = encode(new Jackson2JsonEncoder(new ObjectMapper()), MediaType.APPLICATION_JSON);
+        var cbor = encode(new CodecConfiguration.CborArrayEncoder(new ObjectMapper(new CBORFactory())),
+                MediaType.APPLICATION_CBOR);
+        var smile = encode(new CodecConfiguration.SmileArrayEncoder(new ObjectMapper(new SmileFactory())),
+                CodecConfiguration.APPLICATION_SMILE);
+        log.info("{} persons: json {} bytes, cbor {} bytes, smile {} bytes", PEOPLE.size(), json, cbor, smile);
+        assertThat(cbor).isPositive().isLessThan(json);
+        assertThat(smile).isPositive().isLessThan(json);
+    }
+}
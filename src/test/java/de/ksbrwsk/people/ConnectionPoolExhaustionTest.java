@@ -0,0 +1,58 @@
+package de.ksbrwsk.people;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs more slow queries at once than the pool has connections and shows how the pool behaves:
+ * the first queries get a connection, the others wait and fail once the acquire timeout is reached.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "people.cache.enabled=false",
+        "spring.r2dbc.pool.initial-size=2",
+        "spring.r2dbc.pool.min-idle=2",
+        "spring.r2dbc.pool.max-size=2",
+        "spring.r2dbc.pool.max-acquire-time=500ms"
+})
+@Slf4j
+class ConnectionPoolExhaustionTest extends PostgreSqlContainer {
+
+    private static final int CONCURRENT_QUERIES = 10;
+
+    @Autowired
+    DatabaseClient databaseClient;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    @DisplayName("should reject acquisitions once the pool is exhausted")
+    void should_reject_when_exhausted() {
+        var pending = Mono.delay(Duration.ofMillis(250))
+                .map(tick -> this.meterRegistry.get("r2dbc.pool.pending").gauge().value());
+        var outcomes = Flux.range(0, CONCURRENT_QUERIES)
+                .flatMap(i -> this.databaseClient.sql("SELECT pg_sleep(1)")
+                        .then()
+                        .thenReturn("completed")
+                        .onErrorResume(e -> Mono.just("rejected")))
+                .collectList();
+        var result = Mono.zip(outcomes, pending).block();
+        log.info("outcomes {}, pending acquisitions while exhausted {}", result.getT1(), result.getT2());
+        assertThat(result.getT1()).filteredOn("completed"::equals).hasSize(2);
+        assertThat(result.getT1()).filteredOn("rejected"::equals).hasSize(CONCURRENT_QUERIES - 2);
+        assertThat(result.getT2()).isPositive();
+        assertThat(this.meterRegistry.get(MeteredConnectionFactory.ACQUIRE_METRIC).tag("outcome", "error").timer().count())
+                .isEqualTo(CONCURRENT_QUERIES - 2);
+    }
+}
@@ -0,0 +1,157 @@
+package de.ksbrwsk.people;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * An open model load generator: requests arrive at a fixed rate, independent of how fast the server answers.
+ * Latencies are measured from the intended start of each request, so a stalling server is not hidden by
+ * coordinated omission, and recorded in one HDR histogram per route.
+ */
+@Slf4j
+final class LoadGenerator {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final int MAX_IN_FLIGHT = 10_000;
+
+    private final WebClient webClient;
+    private final List<Route> routes;
+    private final int totalWeight;
+
+    /**
+     * A route of the mix.
+     *
+     * @param name   The name of the route.
+     * @param weight The relative share of requests sent to the route.
+     * @param call   Sends one request, given the client and a random source, and emits the response status.
+     */
+    record Route(String name, int weight, BiFunction<WebClient, SplittableRandom, Mono<HttpStatusCode>> call) {
+    }
+
+    /**
+     * The result of a route.
+     *
+     * @param name      The name of the route.
+     * @param errors    The number of requests failing with a server error, a transport error or dropped on overload.
+     * @param histogram The latencies in microseconds.
+     * @param duration  The duration of the measurement.
+     */
+    record RouteResult(String name, long errors, Histogram histogram, Duration duration) {
+
+        long requests() {
+            return this.histogram.getTotalCount() + this.errors;
+        }
+
+        double throughput() {
+            return this.histogram.getTotalCount() * 1_000.0 / Math.max(1L, this.duration.toMillis());
+        }
+
+        double percentileMillis(double percentile) {
+            return this.histogram.getValueAtPercentile(percentile) / 1_000.0;
+        }
+    }
+
+    LoadGenerator(WebClient webClient, List<Route> routes) {
+        this.webClient = webClient;
+        this.routes = routes.stream().filter(route -> route.weight() > 0).toList();
+        this.totalWeight = this.routes.stream().mapToInt(Route::weight).sum();
+        if (this.totalWeight == 0) {
+            throw new IllegalArgumentException("the mix contains no route");
+        }
+    }
+
+    /**
+     * Sends requests at the given rate for the given duration and waits for the outstanding responses.
+     *
+     * @param rate     The arrival rate in requests per second.
+     * @param duration The duration of the run.
+     * @param seed     The seed of the random source choosing routes and parameters.
+     * @return The results by route name, in the order of the mix.
+     */
+    Map<String, RouteResult> run(double rate, Duration duration, long seed) throws InterruptedException {
+        var histograms = new LinkedHashMap<String, Histogram>();
+        var errors = new LinkedHashMap<String, LongAdder>();
+        this.routes.forEach(route -> {
+            histograms.put(route.name(), new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3));
+            errors.put(route.name(), new LongAdder());
+        });
+        var random = new SplittableRandom(seed);
+        var inFlight = new AtomicInteger();
+        var periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        var arrivals = duration.toNanos() / periodNanos;
+        var scheduler = Executors.newSingleThreadScheduledExecutor();
+        var start = System.nanoTime();
+        var sent = new long[1];
+        try {
+            // dispatches every arrival that is due, so the rate holds even above the resolution of the scheduler
+            scheduler.scheduleAtFixedRate(() -> {
+                var now = System.nanoTime();
+                while (sent[0] < arrivals && start + sent[0] * periodNanos <= now) {
+                    var intendedStart = start + sent[0]++ * periodNanos;
+                    var route = this.pick(random);
+                    if (inFlight.incrementAndGet() > MAX_IN_FLIGHT) {
+                        inFlight.decrementAndGet();
+                        errors.get(route.name()).increment();
+                        continue;
+                    }
+                    route.call().apply(this.webClient, random.split())
+                            .subscribe(status -> {
+                                if (status.is5xxServerError()) {
+                                    errors.get(route.name()).increment();
+                                } else {
+                                    histograms.get(route.name()).recordValue(Math.min(HIGHEST_TRACKABLE_MICROS,
+                                            TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart)));
+                                }
+                                inFlight.decrementAndGet();
+                            }, error -> {
+                                log.debug("request to {} failed", route.name(), error);
+                                errors.get(route.name()).increment();
+                                inFlight.decrementAndGet();
+                            });
+                }
+            }, 0, 1, TimeUnit.MILLISECONDS);
+            TimeUnit.NANOSECONDS.sleep(duration.toNanos());
+        } finally {
+            scheduler.shutdown();
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        if (inFlight.get() > 0) {
+            log.warn("{} requests still in flight after the run", inFlight.get());
+        }
+        var results = new LinkedHashMap<String, RouteResult>();
+        histograms.forEach((name, histogram) ->
+                results.put(name, new RouteResult(name, errors.get(name).sum(), histogram, duration)));
+        return results;
+    }
+
+    private Route pick(SplittableRandom random) {
+        var value = random.nextInt(this.totalWeight);
+        for (Route route : this.routes) {
+            value -= route.weight();
+            if (value < 0) {
+                return route;
+            }
+        }
+        throw new IllegalStateException("weights changed");
+    }
+}
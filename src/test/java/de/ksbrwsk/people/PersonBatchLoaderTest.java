@@ -0,0 +1,113 @@
+package de.ksbrwsk.people;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PersonBatchLoaderTest {
+
+    PersonRepository personRepository;
+    SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        this.personRepository = mock(PersonRepository.class);
+        this.registry = new SimpleMeterRegistry();
+    }
+
+    private PersonBatchLoader loader(boolean batched, int batchSize, Duration batchWindow) {
+        var loader = new PersonBatchLoader(this.personRepository, TestPeopleProperties.defaults()
+                .cache(false)
+                .autocomplete(false)
+                .lookups(new PeopleProperties.Lookups(batched, batchSize, batchWindow))
+                .build());
+        loader.bindTo(this.registry);
+        return loader;
+    }
+
+    @Test
+    @DisplayName("should find the ids of a window with one query")
+    void should_batch_lookups() {
+        var loader = loader(true, 100, Duration.ofMillis(50));
+        when(this.personRepository.findAllByIds(Set.of(1L, 2L, 3L)))
+                .thenReturn(Flux.just(new Person(2L, "Sabo"), new Person(1L, "Name")));
+        var lookups = Flux.merge(
+                loader.findById(1L).map(Person::name),
+                loader.findById(2L).map(Person::name),
+                loader.findById(3L).map(Person::name).defaultIfEmpty("absent"),
+                loader.findById(1L).map(Person::name));
+        StepVerifier
+                .create(lookups.collectList())
+                .assertNext(names -> assertThat(names).containsExactlyInAnyOrder("Name", "Sabo", "absent", "Name"))
+                .verifyComplete();
+        verify(this.personRepository, times(1)).findAllByIds(any());
+        verify(this.personRepository, never()).findById(any(Long.class));
+        assertThat(this.registry.get(PersonBatchLoader.BATCH_SIZE_METRIC).summary().totalAmount()).isEqualTo(3.0);
+    }
+
+    @Test
+    @DisplayName("should query a full batch without waiting for the window")
+    void should_dispatch_full_batch() {
+        var loader = loader(true, 2, Duration.ofHours(1));
+        when(this.personRepository.findAllByIds(Set.of(1L, 2L)))
+                .thenReturn(Flux.just(new Person(1L, "Name"), new Person(2L, "Sabo")));
+        StepVerifier
+                .create(Flux.merge(loader.findById(1L), loader.findById(2L)).count())
+                .expectNext(2L)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("should query a single id like a single lookup")
+    void should_find_single_id() {
+        var loader = loader(true, 100, Duration.ofMillis(1));
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name")));
+        StepVerifier
+                .create(loader.findById(1L))
+                .expectNext(new Person(1L, "Name"))
+                .verifyComplete();
+        verify(this.personRepository, never()).findAllByIds(any());
+    }
+
+    @Test
+    @DisplayName("should pass errors to all lookups of the batch")
+    void should_fail_batch() {
+        var loader = loader(true, 100, Duration.ofMillis(10));
+        when(this.personRepository.findAllByIds(any()))
+                .thenReturn(Flux.error(new IllegalStateException()));
+        StepVerifier
+                .create(Flux.merge(
+                        loader.findById(1L).onErrorResume(IllegalStateException.class, e -> Mono.just(new Person(1L, "error"))),
+                        loader.findById(2L).onErrorResume(IllegalStateException.class, e -> Mono.just(new Person(2L, "error"))))
+                        .map(Person::name))
+                .expectNext("error", "error")
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("should not batch when disabled")
+    void should_not_batch_disabled() {
+        var loader = loader(false, 100, Duration.ofMillis(10));
+        when(this.personRepository.findById(any(Long.class)))
+                .thenReturn(Mono.empty());
+        Flux.merge(loader.findById(1L), loader.findById(2L)).blockLast();
+        verify(this.personRepository, times(2)).findById(any(Long.class));
+        verify(this.personRepository, never()).findAllByIds(any());
+    }
+}
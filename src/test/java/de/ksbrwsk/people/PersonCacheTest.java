@@ -0,0 +1,161 @@
+package de.ksbrwsk.people;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PersonCacheTest {
+
+    PersonRepository personRepository;
+    PersonCache personCache;
+
+    @BeforeEach
+    void setUp() {
+        this.personRepository = mock(PersonRepository.class);
+        this.personCache = new PersonCache(this.personRepository, new PersonBatchLoader(this.personRepository, properties(true)), properties(true));
+    }
+
+    private static PeopleProperties properties(boolean enabled) {
+        return TestPeopleProperties.defaults()
+                .cache(enabled)
+                .lookups(false)
+                .build();
+    }
+
+    @Test
+    @DisplayName("should read through once per id")
+    void should_cache_find_by_id() {
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name")));
+        for (int i = 0; i < 3; i++) {
+            StepVerifier
+                    .create(this.personCache.findById(1L))
+                    .expectNext(new Person(1L, "Name"))
+                    .verifyComplete();
+        }
+        verify(this.personRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    @DisplayName("should cache absent person")
+    void should_cache_absent_person() {
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.empty());
+        for (int i = 0; i < 3; i++) {
+            StepVerifier
+                    .create(this.personCache.findById(1L))
+                    .verifyComplete();
+        }
+        verify(this.personRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    @DisplayName("should invalidate absent name on create")
+    void should_invalidate_absent_name() {
+        when(this.personRepository.findFirstByName("Name"))
+                .thenReturn(Mono.empty())
+                .thenReturn(Mono.just(new Person(1L, "Name")));
+        StepVerifier
+                .create(this.personCache.findFirstByName("Name"))
+                .verifyComplete();
+        this.personCache.invalidate(new Person(1L, "Name"));
+        StepVerifier
+                .create(this.personCache.findFirstByName("Name"))
+                .expectNext(new Person(1L, "Name"))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("should invalidate names pointing to a renamed person")
+    void should_invalidate_old_name() {
+        when(this.personRepository.findFirstByName("Name"))
+                .thenReturn(Mono.just(new Person(1L, "Name")))
+                .thenReturn(Mono.empty());
+        when(this.personRepository.findFirstByName("Sabo"))
+                .thenReturn(Mono.just(new Person(2L, "Sabo")));
+        StepVerifier
+                .create(this.personCache.findFirstByName("Name").then(this.personCache.findFirstByName("Sabo")))
+                .expectNextCount(1L)
+                .verifyComplete();
+        this.personCache.invalidate(new Person(1L, "Update"));
+        StepVerifier
+                .create(this.personCache.findFirstByName("Name"))
+                .verifyComplete();
+        StepVerifier
+                .create(this.personCache.findFirstByName("Sabo"))
+                .expectNext(new Person(2L, "Sabo"))
+                .verifyComplete();
+        verify(this.personRepository, times(2)).findFirstByName("Name");
+        verify(this.personRepository, times(1)).findFirstByName("Sabo");
+    }
+
+    @Test
+    @DisplayName("should keep running lookups of other names on invalidation")
+    void should_keep_unrelated_lookups() {
+        var person = Sinks.<Person>one();
+        when(this.personRepository.findFirstByName("Sabo"))
+                .thenReturn(person.asMono());
+        var first = this.personCache.findFirstByName("Sabo").toFuture();
+        this.personCache.invalidate(new Person(1L, "Name"));
+        var second = this.personCache.findFirstByName("Sabo").toFuture();
+        person.tryEmitValue(new Person(2L, "Sabo"));
+        assertThat(first.join()).isEqualTo(new Person(2L, "Sabo"));
+        assertThat(second.join()).isEqualTo(new Person(2L, "Sabo"));
+        verify(this.personRepository, times(1)).findFirstByName("Sabo");
+    }
+
+    @Test
+    @DisplayName("should bypass disabled cache")
+    void should_bypass_disabled_cache() {
+        var cache = new PersonCache(this.personRepository, new PersonBatchLoader(this.personRepository, properties(false)), properties(false));
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name")));
+        cache.findById(1L).block();
+        cache.findById(1L).block();
+        verify(this.personRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    @DisplayName("should share running lookups of disabled cache")
+    void should_coalesce_disabled_cache() {
+        var cache = new PersonCache(this.personRepository, new PersonBatchLoader(this.personRepository, properties(false)), properties(false));
+        var registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        var person = Sinks.<Person>one();
+        when(this.personRepository.findById(1L))
+                .thenReturn(person.asMono());
+        var first = cache.findById(1L).toFuture();
+        var second = cache.findById(1L).toFuture();
+        person.tryEmitValue(new Person(1L, "Name"));
+        assertThat(first.join()).isEqualTo(new Person(1L, "Name"));
+        assertThat(second.join()).isEqualTo(new Person(1L, "Name"));
+        verify(this.personRepository, times(1)).findById(1L);
+        assertThat(registry.get("people.lookups.coalesced").tag("lookup", "byId").functionCounter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("should publish hit and miss metrics")
+    void should_publish_metrics() {
+        var registry = new SimpleMeterRegistry();
+        this.personCache.bindTo(registry);
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name")));
+        this.personCache.findById(1L).block();
+        this.personCache.findById(1L).block();
+        assertThat(registry.get("cache.gets").tag("cache", "people.byId").tag("result", "hit").functionCounter().count())
+                .isEqualTo(1.0);
+        assertThat(registry.get("cache.gets").tag("cache", "people.byId").tag("result", "miss").functionCounter().count())
+                .isEqualTo(1.0);
+    }
+}
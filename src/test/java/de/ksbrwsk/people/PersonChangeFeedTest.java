@@ -0,0 +1,188 @@
+package de.ksbrwsk.people;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.Exceptions;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PersonChangeFeedTest {
+
+    private static PeopleProperties properties(boolean enabled, int history, int bufferSize,
+                                               PeopleProperties.Changes.Overflow onOverflow) {
+        return TestPeopleProperties.defaults()
+                .changes(new PeopleProperties.Changes(enabled, history, bufferSize, onOverflow))
+                .build();
+    }
+
+    private static PersonChangeFeed feed(int history, int bufferSize, PeopleProperties.Changes.Overflow onOverflow) {
+        var feed = new PersonChangeFeed(properties(true, history, bufferSize, onOverflow));
+        feed.reset(10L);
+        return feed;
+    }
+
+    @Test
+    @DisplayName("should stream created, updated and deleted persons")
+    void should_stream_changes() {
+        var feed = feed(100, 16, PeopleProperties.Changes.Overflow.DISCONNECT);
+        StepVerifier.create(feed.changes(null))
+                .then(() -> {
+                    feed.publish(11, List.of(), List.of(new Person(1L, "Name")));
+                    feed.publish(12, List.of(new Person(1L, "Name")), List.of(new Person(1L, "Update")));
+                    feed.publish(13, List.of(new Person(1L, "Update")), List.of());
+                })
+                .expectNext(new PersonChange(11, 0, PersonChange.Type.CREATED, 1L, "Name"))
+                .expectNext(new PersonChange(12, 0, PersonChange.Type.UPDATED, 1L, "Update"))
+                .expectNext(new PersonChange(13, 0, PersonChange.Type.DELETED, 1L, "Update"))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("should resume after the last change received")
+    void should_resume_after_sequence() {
+        var feed = feed(100, 16, PeopleProperties.Changes.Overflow.DISCONNECT);
+        feed.publish(11, List.of(), List.of(new Person(1L, "First")));
+        feed.publish(12, List.of(), List.of(new Person(2L, "Second")));
+        StepVerifier.create(feed.changes("11"))
+                .expectNext(new PersonChange(12, 0, PersonChange.Type.CREATED, 2L, "Second"))
+                .then(() -> feed.publish(13, List.of(), List.of(new Person(3L, "Third"))))
+                .expectNext(new PersonChange(13, 0, PersonChange.Type.CREATED, 3L, "Third"))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("should resume after the position of the last change received, whatever its sequence")
+    void should_resume_after_position() {
+        var feed = feed(100, 16, PeopleProperties.Changes.Overflow.DISCONNECT);
+        feed.publish(20, List.of(), List.of(new Person(1L, "First")));
+        feed.publish(15, List.of(), List.of(new Person(2L, "Second")));
+        feed.publish(30, List.of(), List.of(new Person(3L, "Third")));
+        StepVerifier.create(feed.changes("20"))
+                .expectNext(new PersonChange(15, 0, PersonChange.Type.CREATED, 2L, "Second"))
+                .expectNext(new PersonChange(30, 0, PersonChange.Type.CREATED, 3L, "Third"))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+        StepVerifier.create(feed.changes("10"))
+                .expectNextCount(3)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("should resume after the last change received in the middle of a statement")
+    void should_resume_within_statement() {
+        var feed = feed(100, 2, PeopleProperties.Changes.Overflow.DISCONNECT);
+        var people = LongStream.rangeClosed(1, 100)
+                .mapToObj(id -> new Person(id, "Name"))
+                .toList();
+        var received = new ArrayList<PersonChange>();
+        StepVerifier.create(feed.changes(null), 0)
+                .then(() -> feed.publish(11, List.of(), people))
+                .thenRequest(Long.MAX_VALUE)
+                .thenConsumeWhile(change -> true, received::add)
+                .expectErrorMatches(Exceptions::isOverflow)
+                .verify(Duration.ofSeconds(5));
+        assertThat(received).isNotEmpty().hasSizeLessThan(people.size());
+        StepVerifier.create(feed.changes(received.getLast().position()))
+                .recordWith(() -> received)
+                .expectNextCount(people.size() - received.size())
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+        assertThat(received)
+                .extracting(PersonChange::id)
+                .containsExactlyElementsOf(people.stream().map(Person::id).toList());
+    }
+
+    @Test
+    @DisplayName("should reset subscription resumed after changes no longer known")
+    void should_reset_unknown_sequence() {
+        var feed = feed(2, 16, PeopleProperties.Changes.Overflow.DISCONNECT);
+        for (long sequence = 11; sequence <= 15; sequence++) {
+            feed.publish(sequence, List.of(), List.of(new Person(sequence, "Name")));
+        }
+        StepVerifier.create(feed.changes("12"))
+                .expectNext(PersonChange.reset(15))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+        StepVerifier.create(feed.changes("13"))
+                .expectNextCount(2)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("should reset subscription resumed before any version is known")
+    void should_reset_before_version_known() {
+        var feed = new PersonChangeFeed(properties(true, 100, 16, PeopleProperties.Changes.Overflow.DISCONNECT));
+        StepVerifier.create(feed.changes("1"))
+                .expectNext(PersonChange.reset(0))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("should disconnect subscriber not keeping up")
+    void should_disconnect_slow_subscriber() {
+        var feed = feed(100, 2, PeopleProperties.Changes.Overflow.DISCONNECT);
+        var meterRegistry = new SimpleMeterRegistry();
+        feed.bindTo(meterRegistry);
+        StepVerifier.create(feed.changes(null), 0)
+                .then(() -> {
+                    for (long sequence = 11; sequence <= 100; sequence++) {
+                        feed.publish(sequence, List.of(), List.of(new Person(sequence, "Name")));
+                    }
+                })
+                .thenRequest(Long.MAX_VALUE)
+                .thenConsumeWhile(change -> true)
+                .expectErrorMatches(Exceptions::isOverflow)
+                .verify(Duration.ofSeconds(5));
+        assertThat(meterRegistry.get("people.changes.disconnected").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("people.changes.subscribers").gauge().value()).isZero();
+    }
+
+    @Test
+    @DisplayName("should drop changes for subscriber not keeping up and reset it once it caught up")
+    void should_drop_changes_for_slow_subscriber() {
+        var feed = feed(100, 2, PeopleProperties.Changes.Overflow.DROP);
+        var meterRegistry = new SimpleMeterRegistry();
+        feed.bindTo(meterRegistry);
+        StepVerifier.create(feed.changes(null), 0)
+                .then(() -> {
+                    for (long sequence = 11; sequence <= 100; sequence++) {
+                        feed.publish(sequence, List.of(), List.of(new Person(sequence, "Name")));
+                    }
+                })
+                .thenRequest(Long.MAX_VALUE)
+                .expectNextCount(1)
+                .thenAwait(Duration.ofMillis(200))
+                .then(() -> feed.publish(101, List.of(), List.of(new Person(101L, "Name"))))
+                .thenConsumeWhile(change -> change.type() != PersonChange.Type.RESET)
+                .expectNext(PersonChange.reset(101))
+                .expectNext(new PersonChange(101, 0, PersonChange.Type.CREATED, 101L, "Name"))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+        assertThat(meterRegistry.get("people.changes.dropped").functionCounter().count()).isPositive();
+    }
+
+    @Test
+    @DisplayName("should not publish changes if disabled")
+    void should_not_publish_if_disabled() {
+        var feed = new PersonChangeFeed(properties(false, 100, 16, PeopleProperties.Changes.Overflow.DISCONNECT));
+        feed.reset(10L);
+        feed.publish(11, List.of(), List.of(new Person(1L, "Name")));
+        assertThat(feed.isEnabled()).isFalse();
+        StepVerifier.create(feed.changes("10"))
+                .expectNext(PersonChange.reset(0))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,103 @@
+package de.ksbrwsk.people;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class PersonChangeListenerTest extends PostgreSqlContainer {
+
+    @Autowired
+    PersonRepository personRepository;
+
+    @Autowired
+    PersonCache personCache;
+
+    @Autowired
+    PersonChangeListener personChangeListener;
+
+    @Autowired
+    PersonChangeFeed personChangeFeed;
+
+    @BeforeEach
+    void setUp() {
+        await().atMost(Duration.ofSeconds(10)).until(this.personChangeListener::isRunning);
+        this.personRepository.deleteAll().block();
+    }
+
+    @Test
+    @DisplayName("should evict person updated behind the cache")
+    void should_evict_updated_person() {
+        var person = this.personRepository.save(new Person("Name")).block();
+        assertThat(this.personCache.findById(person.id()).block()).isEqualTo(person);
+        this.personRepository.save(new Person(person.id(), "Update", person.version())).block();
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertThat(this.personCache.findById(person.id()).block())
+                        .isEqualTo(new Person(person.id(), "Update", person.version() + 1)));
+    }
+
+    @Test
+    @DisplayName("should evict absent name created behind the cache")
+    void should_evict_created_name() {
+        assertThat(this.personCache.findFirstByName("Created").block()).isNull();
+        this.personRepository.save(new Person("Created")).block();
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertThat(this.personCache.findFirstByName("Created").block()).isNotNull());
+    }
+
+    @Test
+    @DisplayName("should evict person deleted behind the cache")
+    void should_evict_deleted_person() {
+        var person = this.personRepository.save(new Person("Name")).block();
+        assertThat(this.personCache.findById(person.id()).block()).isEqualTo(person);
+        this.personRepository.deleteById(person.id()).block();
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertThat(this.personCache.findById(person.id()).block()).isNull());
+    }
+
+    @Test
+    @DisplayName("should publish person created behind the feed")
+    void should_publish_created_person() {
+        var version = this.personRepository.findVersion().block();
+        StepVerifier.create(this.personChangeFeed.changes(null))
+                .then(() -> this.personRepository.save(new Person("Created")).block())
+                .assertNext(change -> {
+                    assertThat(change.type()).isEqualTo(PersonChange.Type.CREATED);
+                    assertThat(change.name()).isEqualTo("Created");
+                    assertThat(change.sequence()).isGreaterThan(version);
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+    }
+
+    @Test
+    @DisplayName("should publish all persons created by a statement too large for one notification")
+    void should_publish_large_statement() {
+        var version = this.personRepository.findVersion().block();
+        var people = IntStream.rangeClosed(1, 1000)
+                .mapToObj(i -> new Person("Name " + i))
+                .toList();
+        StepVerifier.create(this.personChangeFeed.changes(null))
+                .then(() -> this.personRepository.insertAll(people).blockLast())
+                .recordWith(ArrayList::new)
+                .expectNextCount(people.size())
+                .consumeRecordedWith(changes -> assertThat(changes)
+                        .allMatch(change -> change.sequence() == changes.iterator().next().sequence()
+                                && change.sequence() > version
+                                && change.type() == PersonChange.Type.CREATED)
+                        .extracting(PersonChange::index)
+                        .containsExactlyElementsOf(IntStream.range(0, people.size()).boxed().toList()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+    }
+}
@@ -0,0 +1,195 @@
+package de.ksbrwsk.people;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static de.ksbrwsk.people.Constants.API;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RequestPredicates.path;
+import static org.springframework.web.reactive.function.server.RouterFunctions.nest;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+class PersonConcurrencyLimiterTest {
+
+    private static PersonConcurrencyLimiter limiter(boolean enabled, int initialLimit) {
+        return new PersonConcurrencyLimiter(TestPeopleProperties.defaults()
+                .limiter(new PeopleProperties.Limiter(enabled, initialLimit, 1, 100, 1.5, 0.2, Duration.ofMillis(1500)))
+                .build());
+    }
+
+    /**
+     * Routes a request through a router with the given handler on all routes, so the pattern of the matching route
+     * is set like in the PersonRouter.
+     */
+    private static Mono<ServerResponse> handle(PersonConcurrencyLimiter limiter, MockServerHttpRequest request,
+                                               HandlerFunction<ServerResponse> handler) {
+        var router = nest(path(API), route(GET(""), handler)
+                .andRoute(GET("/changes"), handler)
+                .andRoute(GET("/{id}"), handler))
+                .filter(limiter);
+        var serverRequest = ServerRequest.create(MockServerWebExchange.from(request),
+                HandlerStrategies.withDefaults().messageReaders());
+        return router.route(serverRequest)
+                .flatMap(handlerFunction -> handlerFunction.handle(serverRequest));
+    }
+
+    @Test
+    @DisplayName("should prioritize reads by key over writes over scans")
+    void should_prioritize_requests() {
+        var none = new LinkedMultiValueMap<String, String>();
+        var exact = MultiValueMap.fromSingleValue(Map.of("exact", "true"));
+        assertThat(PersonConcurrencyLimiter.priority(HttpMethod.GET, API + "/{id}", none))
+                .isEqualTo(PersonConcurrencyLimiter.Priority.READ);
+        assertThat(PersonConcurrencyLimiter.priority(HttpMethod.GET, API + "/firstByName/{name}", none))
+                .isEqualTo(PersonConcurrencyLimiter.Priority.READ);
+        assertThat(PersonConcurrencyLimiter.priority(HttpMethod.GET, API + "/count", none))
+                .isEqualTo(PersonConcurrencyLimiter.Priority.READ);
+        assertThat(PersonConcurrencyLimiter.priority(HttpMethod.GET, API + "/count", exact))
+                .isEqualTo(PersonConcurrencyLimiter.Priority.SCAN);
+        assertThat(PersonConcurrencyLimiter.priority(HttpMethod.GET, API + "/stats", none))
+                .isEqualTo(PersonConcurrencyLimiter.Priority.READ);
+        assertThat(PersonConcurrencyLimiter.priority(HttpMethod.GET, API, none))
+                .isEqualTo(PersonConcurrencyLimiter.Priority.SCAN);
+        assertThat(PersonConcurrencyLimiter.priority(HttpMethod.GET, API + "/search", none))
+                .isEqualTo(PersonConcurrencyLimiter.Priority.SCAN);
+        assertThat(PersonConcurrencyLimiter.priority(HttpMethod.PUT, API + "/{id}", none))
+                .isEqualTo(PersonConcurrencyLimiter.Priority.WRITE);
+        assertThat(PersonConcurrencyLimiter.priority(HttpMethod.POST, API, none))
+                .isEqualTo(PersonConcurrencyLimiter.Priority.WRITE);
+        assertThat(PersonConcurrencyLimiter.priority(HttpMethod.POST, API + "/import", none))
+                .isEqualTo(PersonConcurrencyLimiter.Priority.SCAN);
+    }
+
+    @Test
+    @DisplayName("should see the pattern of the matching route")
+    void should_see_route_pattern() {
+        var pattern = new AtomicReference<String>();
+        StepVerifier
+                .create(handle(limiter(true, 10), MockServerHttpRequest.get(API + "/1").build(), request -> {
+                    pattern.set(PersonConcurrencyLimiter.pattern(request));
+                    return ServerResponse.ok().build();
+                }))
+                .expectNextCount(1)
+                .verifyComplete();
+        assertThat(pattern.get()).isEqualTo(API + "/{id}");
+    }
+
+    @Test
+    @DisplayName("should shed scans before reads by key")
+    void should_shed_scans_first() {
+        var limiter = limiter(true, 4);
+        var meterRegistry = new SimpleMeterRegistry();
+        limiter.bindTo(meterRegistry);
+        HandlerFunction<ServerResponse> pending = request -> Mono.never();
+        var scans = List.of(
+                handle(limiter, MockServerHttpRequest.get(API).build(), pending).subscribe(),
+                handle(limiter, MockServerHttpRequest.get(API).build(), pending).subscribe());
+        StepVerifier
+                .create(handle(limiter, MockServerHttpRequest.get(API).build(), pending))
+                .assertNext(response -> {
+                    assertThat(response.statusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+                    assertThat(response.headers().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+                })
+                .verifyComplete();
+        var reads = List.of(
+                handle(limiter, MockServerHttpRequest.get(API + "/1").build(), pending).subscribe(),
+                handle(limiter, MockServerHttpRequest.get(API + "/2").build(), pending).subscribe());
+        assertThat(limiter.inFlight()).isEqualTo(4);
+        StepVerifier
+                .create(handle(limiter, MockServerHttpRequest.get(API + "/3").build(), pending))
+                .assertNext(response -> assertThat(response.statusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE))
+                .verifyComplete();
+        assertThat(meterRegistry.get("people.limiter.rejected").tag("priority", "SCAN").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("people.limiter.rejected").tag("priority", "READ").functionCounter().count())
+                .isEqualTo(1);
+        scans.forEach(Disposable::dispose);
+        reads.forEach(Disposable::dispose);
+        assertThat(limiter.inFlight()).isZero();
+        assertThat(meterRegistry.get("people.limiter.inflight").gauge().value()).isZero();
+    }
+
+    @Test
+    @DisplayName("should not limit the change feed")
+    void should_not_limit_changes() {
+        var limiter = limiter(true, 1);
+        HandlerFunction<ServerResponse> pending = request -> Mono.never();
+        var read = handle(limiter, MockServerHttpRequest.get(API + "/1").build(), pending).subscribe();
+        StepVerifier
+                .create(handle(limiter, MockServerHttpRequest.get(API + "/changes").build(),
+                        request -> ServerResponse.ok().build()))
+                .assertNext(response -> assertThat(response.statusCode()).isEqualTo(HttpStatus.OK))
+                .verifyComplete();
+        read.dispose();
+    }
+
+    @Test
+    @DisplayName("should release requests failing before a response")
+    void should_release_failed_request() {
+        var limiter = limiter(true, 4);
+        StepVerifier
+                .create(handle(limiter, MockServerHttpRequest.get(API + "/1").build(),
+                        request -> Mono.error(new IllegalStateException("failed"))))
+                .verifyError(IllegalStateException.class);
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("should not limit requests if disabled")
+    void should_not_limit_if_disabled() {
+        var limiter = limiter(false, 1);
+        HandlerFunction<ServerResponse> pending = request -> Mono.never();
+        var scan = handle(limiter, MockServerHttpRequest.get(API).build(), pending).subscribe();
+        StepVerifier
+                .create(handle(limiter, MockServerHttpRequest.get(API).build(), request -> ServerResponse.ok().build()))
+                .assertNext(response -> assertThat(response.statusCode()).isEqualTo(HttpStatus.OK))
+                .verifyComplete();
+        scan.dispose();
+    }
+
+    @Test
+    @DisplayName("should grow the limit while latency is stable and shrink it when latency rises")
+    void should_adapt_limit_to_latency() {
+        var limiter = limiter(true, 10);
+        for (int i = 0; i < 50; i++) {
+            limiter.sample(Duration.ofMillis(2).toNanos(), limiter.limit());
+        }
+        var grown = limiter.limit();
+        assertThat(grown).isGreaterThan(10);
+        for (int i = 0; i < 50; i++) {
+            limiter.sample(Duration.ofMillis(20).toNanos(), limiter.limit());
+        }
+        assertThat(limiter.limit()).isLessThan(grown);
+    }
+
+    @Test
+    @DisplayName("should keep the limit while it is not used")
+    void should_keep_unused_limit() {
+        var limiter = limiter(true, 10);
+        for (int i = 0; i < 50; i++) {
+            limiter.sample(Duration.ofMillis(2).toNanos(), 1);
+        }
+        assertThat(limiter.limit()).isEqualTo(10);
+    }
+}
@@ -1,6 +1,9 @@
 package de.ksbrwsk.people;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.log4j.Log4j2;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -8,91 +11,817 @@ import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.NullAndEmptySource;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.context.annotation.Import;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.stream.LongStream;
 
 import static de.ksbrwsk.people.Constants.API;
+import static de.ksbrwsk.people.Constants.NEXT_CURSOR_HEADER;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest
-@Import({PersonHandler.class, PersonRouter.class})
+@Import({PersonHandler.class, PersonRouter.class, PersonCache.class, PersonResponseCache.class, PersonBatchLoader.class,
+        PersonValidator.class, PersonNameIndex.class, PersonChangeFeed.class, PersonMetrics.class,
+        PersonConcurrencyLimiter.class, CodecConfiguration.class, SimpleMeterRegistry.class})
+@EnableConfigurationProperties(PeopleProperties.class)
 @Log4j2
 class PersonHandlerTest {
 
     @Autowired
     WebTestClient webTestClient;
 
-    @MockitoBean
-    PersonRepository personRepository;
+    @MockitoBean
+    PersonRepository personRepository;
+
+    @MockitoBean
+    DatabaseClient databaseClient;
+
+    @Autowired
+    PersonCache personCache;
+
+    @Autowired
+    PersonResponseCache personResponseCache;
+
+    @Autowired
+    PersonChangeFeed personChangeFeed;
+
+    @Autowired
+    PersonConcurrencyLimiter personConcurrencyLimiter;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @MockitoSpyBean
+    PersonNameIndex personNameIndex;
+
+    @BeforeEach
+    void setUp() {
+        this.personCache.invalidateAll();
+        this.personResponseCache.invalidateAll();
+        when(this.personRepository.findSnapshotHash())
+                .thenReturn(Mono.just(42L));
+    }
+
+    @Test
+    @DisplayName("should handle request find all")
+    void should_handle_find_all() {
+        when(this.personRepository.findAll())
+                .thenReturn(Flux.just(
+                        new Person(1L, "Name"),
+                        new Person(2L, "Sabo")
+                ));
+        this.webTestClient
+                .get()
+                .uri(API)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Person.class)
+                .hasSize(2)
+                .contains(
+                        new Person(1L, "Name"),
+                        new Person(2L, "Sabo"));
+    }
+
+    @Test
+    @DisplayName("should handle request find all with the table version as ETag")
+    void should_handle_find_all_etag() {
+        when(this.personRepository.findAll())
+                .thenReturn(Flux.just(new Person(1L, "Name")));
+        this.webTestClient
+                .get()
+                .uri(API)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(HttpHeaders.ETAG, "W/\"2a\"");
+    }
+
+    @Test
+    @DisplayName("should handle request find all not modified without reading the persons")
+    void should_handle_find_all_not_modified() {
+        this.webTestClient
+                .get()
+                .uri(API)
+                .ifNoneMatch("W/\"2a\"")
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectBody()
+                .isEmpty();
+        verify(this.personRepository, never()).findAll();
+    }
+
+    @Test
+    @DisplayName("should handle request stream all as ndjson")
+    void should_handle_stream_all_ndjson() {
+        when(this.personRepository.findAll())
+                .thenReturn(Flux.just(
+                        new Person(1L, "Name"),
+                        new Person(2L, "Sabo")
+                ));
+        var result = this.webTestClient
+                .get()
+                .uri(API)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(Person.class);
+        StepVerifier
+                .create(result.getResponseBody())
+                .expectNext(new Person(1L, "Name"))
+                .expectNext(new Person(2L, "Sabo"))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("should handle request stream all as server-sent events")
+    void should_handle_stream_all_event_stream() {
+        when(this.personRepository.findAll())
+                .thenReturn(Flux.just(
+                        new Person(1L, "Name"),
+                        new Person(2L, "Sabo")
+                ));
+        var result = this.webTestClient
+                .get()
+                .uri(API)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<Person>>() {
+                });
+        StepVerifier
+                .create(result.getResponseBody())
+                .expectNextMatches(event -> "1".equals(event.id()) && new Person(1L, "Name").equals(event.data()))
+                .expectNextMatches(event -> "2".equals(event.id()) && new Person(2L, "Sabo").equals(event.data()))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("should handle request find page with next cursor")
+    void should_handle_find_page() {
+        when(this.personRepository.findPage(0L, 3))
+                .thenReturn(Flux.just(
+                        new Person(1L, "Name"),
+                        new Person(2L, "Sabo"),
+                        new Person(3L, "Jimbo")
+                ));
+        this.webTestClient
+                .get()
+                .uri(API + "?limit=2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(NEXT_CURSOR_HEADER, new PersonCursor(2L).encode())
+                .expectBodyList(Person.class)
+                .hasSize(2)
+                .contains(
+                        new Person(1L, "Name"),
+                        new Person(2L, "Sabo"));
+    }
+
+    @Test
+    @DisplayName("should handle request find last page")
+    void should_handle_find_last_page() {
+        when(this.personRepository.findPage(2L, 3))
+                .thenReturn(Flux.just(new Person(3L, "Jimbo")));
+        this.webTestClient
+                .get()
+                .uri(API + "?limit=2&cursor=" + new PersonCursor(2L).encode())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .doesNotExist(NEXT_CURSOR_HEADER)
+                .expectBodyList(Person.class)
+                .hasSize(1)
+                .contains(new Person(3L, "Jimbo"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"limit=0", "limit=1001", "limit=abc", "cursor=%%%", "cursor=LTE"})
+    @DisplayName("should handle request find page with invalid parameters")
+    void should_handle_find_page_invalid(String query) {
+        this.webTestClient
+                .get()
+                .uri(API + "?" + query)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    @DisplayName("should handle request search")
+    void should_handle_search() {
+        when(this.personRepository.search("Nam_%", "%Nam\\_\\%%", 10))
+                .thenReturn(Flux.just(
+                        new Person(1L, "Nam_%"),
+                        new Person(2L, "Nam_%e")
+                ));
+        this.webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder.path(API + "/search").queryParam("q", " {q} ").build("Nam_%"))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Person.class)
+                .hasSize(2)
+                .contains(new Person(1L, "Nam_%"), new Person(2L, "Nam_%e"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "q=", "q=Na", "q=Name&limit=0", "q=Name&limit=1001"})
+    @DisplayName("should handle request search with invalid query or limit")
+    void should_handle_search_invalid(String query) {
+        this.webTestClient
+                .get()
+                .uri(API + "/search?" + query)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {MediaType.APPLICATION_CBOR_VALUE, "application/x-jackson-smile"})
+    @DisplayName("should handle request find all in a binary representation")
+    void should_handle_find_all_binary(String mediaType) {
+        when(this.personRepository.findAll())
+                .thenReturn(Flux.just(new Person(1L, "Name", 0L), new Person(2L, "Sabo", 3L)));
+        this.webTestClient
+                .get()
+                .uri(API)
+                .accept(MediaType.parseMediaType(mediaType), MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentType(mediaType)
+                .expectBody(new ParameterizedTypeReference<List<Person>>() {
+                })
+                .isEqualTo(List.of(new Person(1L, "Name", 0L), new Person(2L, "Sabo", 3L)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {MediaType.APPLICATION_CBOR_VALUE, "application/x-jackson-smile"})
+    @DisplayName("should handle request create and find by id in a binary representation")
+    void should_handle_create_binary(String mediaType) {
+        when(this.personRepository.save(new Person("Name")))
+                .thenReturn(Mono.just(new Person(1L, "Name", 0L)));
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name", 0L)));
+        this.webTestClient
+                .post()
+                .uri(API)
+                .contentType(MediaType.parseMediaType(mediaType))
+                .accept(MediaType.parseMediaType(mediaType))
+                .bodyValue(new Person("Name"))
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectHeader()
+                .contentType(mediaType)
+                .expectBody(Person.class)
+                .isEqualTo(new Person(1L, "Name", 0L));
+        this.webTestClient
+                .get()
+                .uri(API + "/1")
+                .accept(MediaType.parseMediaType(mediaType))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .expectBody(Person.class)
+                .isEqualTo(new Person(1L, "Name", 0L));
+    }
+
+    @Test
+    @DisplayName("should prefer JSON if accepted with a higher quality")
+    void should_handle_find_by_id_prefer_json() {
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name")));
+        this.webTestClient
+                .get()
+                .uri(API + "/1")
+                .header(HttpHeaders.ACCEPT, "application/cbor;q=0.5, application/json, */*")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_JSON)
+                .expectBody(Person.class)
+                .isEqualTo(new Person(1L, "Name"));
+    }
+
+    @Test
+    @DisplayName("should handle request find all by ids in request order")
+    void should_handle_find_all_by_ids() {
+        when(this.personRepository.findAllByIds(Set.of(3L, 1L, 2L)))
+                .thenReturn(Flux.just(new Person(1L, "Name"), new Person(3L, "Sabo")));
+        this.webTestClient
+                .get()
+                .uri(API + "?ids=3, 1,2,3")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(PersonLookupResult.class)
+                .isEqualTo(new PersonLookupResult(
+                        List.of(new Person(3L, "Sabo"), new Person(1L, "Name"), new Person(3L, "Sabo")),
+                        List.of(2L)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ids=", "ids=1,,2", "ids=Name"})
+    @DisplayName("should handle request find all by ids with invalid ids")
+    void should_handle_find_all_by_ids_invalid(String query) {
+        this.webTestClient
+                .get()
+                .uri(API + "?" + query)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    @DisplayName("should handle request lookup streaming one result per chunk")
+    void should_handle_lookup_streaming() {
+        when(this.personRepository.findAllByIds(any()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<Collection<Long>>getArgument(0))
+                        .filter(id -> id % 2 == 0)
+                        .map(id -> new Person(id, "Person@" + id)));
+        var results = this.webTestClient
+                .post()
+                .uri(API + "/lookup")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(LongStream.rangeClosed(1, 1500).boxed().toList())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(PersonLookupResult.class)
+                .getResponseBody();
+        StepVerifier
+                .create(results)
+                .assertNext(first -> {
+                    assertThat(first.people()).hasSize(50).first().isEqualTo(new Person(2L, "Person@2"));
+                    assertThat(first.missing()).hasSize(50).startsWith(1L, 3L);
+                })
+                .expectNextCount(14L)
+                .verifyComplete();
+        verify(this.personRepository, times(15)).findAllByIds(any());
+    }
+
+    @Test
+    @DisplayName("should handle request lookup with too many ids not streamed")
+    void should_handle_lookup_too_many() {
+        when(this.personRepository.findAllByIds(any()))
+                .thenReturn(Flux.empty());
+        this.webTestClient
+                .post()
+                .uri(API + "/lookup")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(LongStream.rangeClosed(1, 1001).boxed().toList())
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    @DisplayName("should handle request autocomplete")
+    void should_handle_autocomplete() {
+        when(this.personRepository.findAllNamesInSnapshot(anyInt(), any()))
+                .thenAnswer(invocation -> {
+                    BiFunction<String, Flux<String>, Mono<?>> reader = invocation.getArgument(1);
+                    return reader.apply("1:1:", Flux.just("Name", "name", "Name", "Nase", "Sabo"));
+                });
+        this.personNameIndex.rebuild().block();
+        this.webTestClient
+                .get()
+                .uri(API + "/autocomplete?prefix=NA&limit=2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(new ParameterizedTypeReference<List<String>>() {
+                })
+                .isEqualTo(List.of("Name", "name"));
+    }
+
+    @Test
+    @DisplayName("should handle request autocomplete before the index is loaded")
+    void should_handle_autocomplete_not_loaded() {
+        doReturn(false).when(this.personNameIndex).isLoaded();
+        this.webTestClient
+                .get()
+                .uri(API + "/autocomplete?prefix=Na")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @Test
+    @DisplayName("should handle request count with the estimate")
+    void should_handle_count_estimate() {
+        when(this.personRepository.estimateCount())
+                .thenReturn(Mono.just(1000L));
+        this.webTestClient
+                .get()
+                .uri(API + "/count")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(PersonCount.class)
+                .isEqualTo(new PersonCount(1000L, false));
+        verify(this.personRepository, times(0)).count();
+    }
+
+    @Test
+    @DisplayName("should handle request count with the statistics before the table is analyzed")
+    void should_handle_count_not_analyzed() {
+        when(this.personRepository.estimateCount())
+                .thenReturn(Mono.just(-1L));
+        when(this.personRepository.findStats())
+                .thenReturn(Mono.just(new PersonStats(2L, 1L, 2L, Map.of(4, 2L))));
+        this.webTestClient
+                .get()
+                .uri(API + "/count")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(PersonCount.class)
+                .isEqualTo(new PersonCount(2L, true));
+    }
+
+    @Test
+    @DisplayName("should handle request count exact")
+    void should_handle_count_exact() {
+        when(this.personRepository.count())
+                .thenReturn(Mono.just(3L));
+        this.webTestClient
+                .get()
+                .uri(API + "/count?exact=true")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(PersonCount.class)
+                .isEqualTo(new PersonCount(3L, true));
+        verify(this.personRepository, times(0)).estimateCount();
+    }
+
+    @Test
+    @DisplayName("should handle request stats")
+    void should_handle_stats() {
+        when(this.personRepository.findStats())
+                .thenReturn(Mono.just(new PersonStats(3L, 1L, 5L, Map.of(4, 2L, 5, 1L))));
+        this.webTestClient
+                .get()
+                .uri(API + "/stats")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(3)
+                .jsonPath("$.minId").isEqualTo(1)
+                .jsonPath("$.maxId").isEqualTo(5)
+                .jsonPath("$.nameLengths.4").isEqualTo(2)
+                .jsonPath("$.nameLengths.5").isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should handle request changes as server-sent events resumed after last event id")
+    void should_handle_changes_event_stream() {
+        this.personChangeFeed.reset(100L);
+        this.personChangeFeed.publish(101, List.of(), List.of(new Person(1L, "Name")));
+        this.personChangeFeed.publish(102, List.of(new Person(1L, "Name")), List.of(new Person(1L, "Sabo")));
+        var result = this.webTestClient
+                .get()
+                .uri(API + "/changes")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .header("Last-Event-ID", "101:0")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<PersonChange>>() {
+                });
+        StepVerifier
+                .create(result.getResponseBody())
+                .expectNextMatches(event -> "102:0".equals(event.id()) && "UPDATED".equals(event.event())
+                        && new PersonChange(102, 0, PersonChange.Type.UPDATED, 1L, "Sabo").equals(event.data()))
+                .then(() -> this.personChangeFeed.publish(103, List.of(new Person(1L, "Sabo")), List.of()))
+                .expectNextMatches(event -> "103:0".equals(event.id())
+                        && new PersonChange(103, 0, PersonChange.Type.DELETED, 1L, "Sabo").equals(event.data()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("should handle request changes as ndjson resumed after unknown sequence with reset")
+    void should_handle_changes_ndjson_reset() {
+        this.personChangeFeed.reset(200L);
+        var result = this.webTestClient
+                .get()
+                .uri(API + "/changes?since=150")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(PersonChange.class);
+        StepVerifier
+                .create(result.getResponseBody())
+                .expectNext(PersonChange.reset(200))
+                .then(() -> this.personChangeFeed.publish(201, List.of(), List.of(new Person(2L, "Name"))))
+                .expectNext(new PersonChange(201, 0, PersonChange.Type.CREATED, 2L, "Name"))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"abc", "1:", "1:x", "1:2:3", "1:-2"})
+    @DisplayName("should handle request changes with invalid position")
+    void should_handle_changes_invalid_position(String since) {
+        this.webTestClient
+                .get()
+                .uri(API + "/changes?since={since}", since)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "prefix=", "prefix=Na&limit=0", "prefix=Na&limit=1001"})
+    @DisplayName("should handle request autocomplete with invalid prefix or limit")
+    void should_handle_autocomplete_invalid(String query) {
+        this.webTestClient
+                .get()
+                .uri(API + "/autocomplete?" + query)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    @DisplayName("should handle request find by id x")
+    void should_handle_find_by_id() {
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name")));
+        this.webTestClient
+                .get()
+                .uri(API + "/1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(Person.class)
+                .consumeWith(response -> {
+                    assertThat(response.getResponseBody()).isNotNull();
+                    assertThat(response.getResponseBody().name()).isEqualTo("Name");
+                    assertThat(response.getResponseBody().id()).isEqualTo(1L);
+                });
+    }
+
+    @Test
+    @DisplayName("should release the limit once the response is written")
+    void should_release_limit_after_response() {
+        when(this.personRepository.findAll())
+                .thenReturn(Flux.just(new Person(1L, "Name")));
+        this.webTestClient
+                .get()
+                .uri(API)
+                .exchange()
+                .expectStatus()
+                .isOk();
+        assertThat(this.personConcurrencyLimiter.inFlight()).isZero();
+        assertThat(this.personConcurrencyLimiter.limit()).isPositive();
+    }
+
+    @Test
+    @DisplayName("should handle request find by id not modified")
+    void should_handle_find_by_id_not_modified() {
+        var person = new Person(1L, "Name");
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(person));
+        var etag = this.webTestClient
+                .get()
+                .uri(API + "/1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(HttpHeaders.ETAG, PersonHandler.etag(person, MediaType.APPLICATION_JSON))
+                .returnResult(Person.class)
+                .getResponseHeaders()
+                .getETag();
+        this.webTestClient
+                .get()
+                .uri(API + "/1")
+                .ifNoneMatch(etag)
+                .exchange()
+                .expectStatus()
+                .isNotModified();
+        this.webTestClient
+                .get()
+                .uri(API + "/1")
+                .ifNoneMatch(PersonHandler.etag(new Person(1L, "Other"), MediaType.APPLICATION_JSON))
+                .exchange()
+                .expectStatus()
+                .isOk();
+    }
+
+    @Test
+    @DisplayName("should handle request find by unknown id x")
+    void should_handle_find_by_unknown_id() {
+        when(this.personRepository.findById(1000L))
+                .thenReturn(Mono.empty());
+        this.webTestClient
+                .get()
+                .uri(API + "/1000")
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
 
     @Test
-    @DisplayName("should handle request find all")
-    void should_handle_find_all() {
-        when(this.personRepository.findAll())
-                .thenReturn(Flux.just(
-                        new Person(1L, "Name"),
-                        new Person(2L, "Sabo")
-                ));
+    @DisplayName("should time requests by handler and status")
+    void should_time_requests_by_handler_and_status() {
+        when(this.personRepository.findById(1000L))
+                .thenReturn(Mono.empty());
+        var notFound = this.handlerCount("findById", "404");
+        var badRequest = this.handlerCount("create", "400");
         this.webTestClient
                 .get()
+                .uri(API + "/1000")
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+        this.webTestClient
+                .post()
                 .uri(API)
+                .bodyValue(new Person(""))
                 .exchange()
                 .expectStatus()
-                .isOk()
-                .expectBodyList(Person.class)
-                .hasSize(2)
-                .contains(
-                        new Person(1L, "Name"),
-                        new Person(2L, "Sabo"));
+                .isBadRequest();
+        assertThat(this.handlerCount("findById", "404")).isEqualTo(notFound + 1);
+        assertThat(this.handlerCount("create", "400")).isEqualTo(badRequest + 1);
+    }
+
+    private long handlerCount(String handler, String status) {
+        var timer = this.meterRegistry.find(PersonMetrics.HANDLER_METRIC)
+                .tags("handler", handler, "status", status)
+                .timer();
+        return timer == null ? 0 : timer.count();
     }
 
     @Test
-    @DisplayName("should handle request find by id x")
-    void should_handle_find_by_id() {
+    @DisplayName("should handle request find by id x from cache")
+    void should_handle_find_by_id_cached() {
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name")));
+        for (int i = 0; i < 3; i++) {
+            this.webTestClient
+                    .get()
+                    .uri(API + "/1")
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .expectBody(Person.class)
+                    .isEqualTo(new Person(1L, "Name"));
+        }
+        verify(this.personRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    @DisplayName("should handle request find by id x from cached bodies per representation")
+    void should_handle_find_by_id_cached_per_representation() {
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name")));
+        for (var mediaType : List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR,
+                MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR)) {
+            this.webTestClient
+                    .get()
+                    .uri(API + "/1")
+                    .accept(mediaType)
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .expectHeader()
+                    .contentType(mediaType)
+                    .expectHeader()
+                    .valueEquals(HttpHeaders.ETAG, PersonHandler.etag(new Person(1L, "Name"), mediaType))
+                    .expectBody(Person.class)
+                    .isEqualTo(new Person(1L, "Name"));
+        }
+        verify(this.personRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    @DisplayName("should handle request find by id x after delete")
+    void should_handle_find_by_id_after_delete() {
         when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name")))
+                .thenReturn(Mono.empty());
+        when(this.personRepository.deleteReturning(1L))
                 .thenReturn(Mono.just(new Person(1L, "Name")));
         this.webTestClient
                 .get()
                 .uri(API + "/1")
                 .exchange()
                 .expectStatus()
-                .isOk()
-                .expectBody(Person.class)
-                .consumeWith(response -> {
-                    assertThat(response.getResponseBody()).isNotNull();
-                    assertThat(response.getResponseBody().name()).isEqualTo("Name");
-                    assertThat(response.getResponseBody().id()).isEqualTo(1L);
-                });
+                .isOk();
+        this.webTestClient
+                .delete()
+                .uri(API + "/1")
+                .exchange()
+                .expectStatus()
+                .isOk();
+        this.webTestClient
+                .get()
+                .uri(API + "/1")
+                .exchange()
+                .expectStatus()
+                .isNotFound();
     }
 
     @Test
-    @DisplayName("should handle request find by unknown id x")
-    void should_handle_find_by_unknown_id() {
-        when(this.personRepository.findById(1000L))
-                .thenReturn(Mono.empty());
+    @DisplayName("should handle request find by id x after update")
+    void should_handle_find_by_id_after_update() {
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name")))
+                .thenReturn(Mono.just(new Person(1L, "Update")));
+        when(this.personRepository.updateName(1L, "Update"))
+                .thenReturn(Mono.just(new Person(1L, "Update")));
         this.webTestClient
                 .get()
-                .uri(API + "/1000")
+                .uri(API + "/1")
+                .exchange()
+                .expectBody(Person.class)
+                .isEqualTo(new Person(1L, "Name"));
+        this.webTestClient
+                .put()
+                .uri(API + "/1")
+                .bodyValue(new Person(1L, "Update"))
                 .exchange()
                 .expectStatus()
-                .isNotFound();
+                .isOk();
+        this.webTestClient
+                .get()
+                .uri(API + "/1")
+                .exchange()
+                .expectBody(Person.class)
+                .isEqualTo(new Person(1L, "Update"));
     }
 
     @Test
     @DisplayName("should handle request delete by id x")
     void should_handle_delete_by_id() {
         Person person = new Person(1L, "Name");
-        when(this.personRepository.findById(any(Long.class)))
+        when(this.personRepository.deleteReturning(any(Long.class)))
                 .thenReturn(Mono.just(person));
-        when(this.personRepository.delete(any(Person.class)))
-                .thenReturn(Mono.empty());
         this.webTestClient
                 .delete()
                 .uri(API + "/1")
@@ -108,7 +837,7 @@ class PersonHandlerTest {
     @Test
     @DisplayName("should handle request delete by unknown id x")
     void should_handle_delete_by_unknown_id() {
-        when(this.personRepository.findById(1L))
+        when(this.personRepository.deleteReturning(1L))
                 .thenReturn(Mono.empty());
         this.webTestClient
                 .delete()
@@ -124,7 +853,7 @@ class PersonHandlerTest {
     void should_handle_create_person(String name) {
         Person person = new Person(1L, name);
         Mono<Person> personMono = Mono.just(person);
-        when(this.personRepository.save(person))
+        when(this.personRepository.save(new Person(name)))
                 .thenReturn(personMono);
         this.webTestClient
                 .post()
@@ -152,15 +881,215 @@ class PersonHandlerTest {
     }
 
 
+    @Test
+    @DisplayName("should handle request create batch")
+    void should_handle_create_batch() {
+        when(this.personRepository.insertAll(List.of(new Person("Name"), new Person("Sabo"))))
+                .thenReturn(Flux.just(new Person(1L, "Name"), new Person(2L, "Sabo")));
+        this.webTestClient
+                .post()
+                .uri(API + "/batch")
+                .bodyValue(List.of(new Person("Name"), new Person(""), new Person("Sabo")))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$[0].index").isEqualTo(0)
+                .jsonPath("$[0].id").isEqualTo(1)
+                .jsonPath("$[1].index").isEqualTo(1)
+                .jsonPath("$[1].id").doesNotExist()
+                .jsonPath("$[1].error").exists()
+                .jsonPath("$[2].index").isEqualTo(2)
+                .jsonPath("$[2].id").isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("should handle request create batch with failing chunk")
+    void should_handle_create_batch_failing_chunk() {
+        when(this.personRepository.insertAll(List.of(new Person("Name"), new Person("Sabo"))))
+                .thenReturn(Flux.error(new IllegalStateException("connection lost")));
+        this.webTestClient
+                .post()
+                .uri(API + "/batch")
+                .bodyValue(List.of(new Person("Name"), new Person(""), new Person("Sabo")))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$[0].id").doesNotExist()
+                .jsonPath("$[0].error").isEqualTo("not inserted, the chunk failed")
+                .jsonPath("$[1].error").exists()
+                .jsonPath("$[2].error").isEqualTo("not inserted, the chunk failed");
+    }
+
+    @Test
+    @DisplayName("should handle request create batch as ndjson")
+    void should_handle_create_batch_ndjson() {
+        when(this.personRepository.insertAll(anyList()))
+                .thenReturn(Flux.just(new Person(1L, "Name"), new Person(2L, "Sabo")));
+        this.webTestClient
+                .post()
+                .uri(API + "/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue("{\"name\":\"Name\"}\n{\"name\":\"Sabo\"}\n")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(PersonBatchResult.class)
+                .hasSize(2)
+                .contains(
+                        new PersonBatchResult(0, 1L, null),
+                        new PersonBatchResult(1, 2L, null));
+    }
+
+    @Test
+    @DisplayName("should handle request import csv")
+    void should_handle_import_csv() {
+        when(this.personRepository.copyFromCsv(any(), eq(false)))
+                .thenAnswer(invocation -> DataBufferUtils.join(invocation.<Publisher<? extends DataBuffer>>getArgument(0))
+                        .map(buffer -> buffer.toString(StandardCharsets.UTF_8))
+                        .filter("\"Name\"\n\"Sa\"\"bo\"\n\"Sa,bo\"\n\"Sa\nbo\"\n"::equals)
+                        .map(csv -> 4L));
+        this.webTestClient
+                .post()
+                .uri(API + "/import?header=true")
+                .contentType(PersonHandler.TEXT_CSV)
+                .bodyValue("name\nName\r\n\"Sa\"\"bo\"\n\"Sa,bo\"\n\"Sa\nbo\"")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(PersonImportResult.class)
+                .isEqualTo(new PersonImportResult(4L));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"Name\n\n", "Name\n   \n", "Name\n\"\"\n", "Name\nName123456789\n", "Name\nNa,me\n",
+            "Name\n\"Name\n"})
+    @DisplayName("should handle request import invalid csv")
+    void should_handle_import_invalid_csv(String body) {
+        var copied = new AtomicReference<String>();
+        when(this.personRepository.copyFromCsv(any(), eq(false)))
+                .thenAnswer(invocation -> DataBufferUtils.join(invocation.<Publisher<? extends DataBuffer>>getArgument(0))
+                        .map(buffer -> buffer.toString(StandardCharsets.UTF_8))
+                        .doOnNext(copied::set)
+                        .map(csv -> csv.lines().count()));
+        this.webTestClient
+                .post()
+                .uri(API + "/import")
+                .contentType(PersonHandler.TEXT_CSV)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+        assertThat(copied.get()).isNull();
+    }
+
+    @Test
+    @DisplayName("should find person cached as absent after import")
+    void should_handle_import_evicting_absent_person() {
+        when(this.personRepository.findById(5L))
+                .thenReturn(Mono.empty())
+                .thenReturn(Mono.just(new Person(5L, "Name")));
+        this.webTestClient
+                .get()
+                .uri(API + "/5")
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+        when(this.personRepository.copyFromCsv(any(), eq(false)))
+                .thenAnswer(invocation -> countLines(invocation.getArgument(0)));
+        this.webTestClient
+                .post()
+                .uri(API + "/import")
+                .contentType(PersonHandler.TEXT_CSV)
+                .bodyValue("Name\n")
+                .exchange()
+                .expectStatus()
+                .isOk();
+        this.webTestClient
+                .get()
+                .uri(API + "/5")
+                .exchange()
+                .expectStatus()
+                .isOk();
+    }
+
+    @Test
+    @DisplayName("should handle request import ndjson")
+    void should_handle_import_ndjson() {
+        when(this.personRepository.copyFromCsv(any(), eq(false)))
+                .thenAnswer(invocation -> DataBufferUtils.join(invocation.<Publisher<? extends DataBuffer>>getArgument(0))
+                        .map(buffer -> buffer.toString(StandardCharsets.UTF_8))
+                        .filter("\"Name\"\n\"Sa\"\"bo\"\n"::equals)
+                        .map(csv -> 2L));
+        this.webTestClient
+                .post()
+                .uri(API + "/import")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue("{\"name\":\"Name\"}\n{\"name\":\"Sa\\\"bo\"}\n")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(PersonImportResult.class)
+                .isEqualTo(new PersonImportResult(2L));
+    }
+
+    @Test
+    @DisplayName("should handle request import invalid ndjson")
+    void should_handle_import_invalid_ndjson() {
+        when(this.personRepository.copyFromCsv(any(), eq(false)))
+                .thenAnswer(invocation -> countLines(invocation.getArgument(0)));
+        this.webTestClient
+                .post()
+                .uri(API + "/import")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue("{\"name\":\"Name\"}\n{\"name\":\"\"}\n")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    @DisplayName("should handle request import unsupported media type")
+    void should_handle_import_unsupported_media_type() {
+        this.webTestClient
+                .post()
+                .uri(API + "/import")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue("<person/>")
+                .exchange()
+                .expectStatus()
+                .isEqualTo(415);
+    }
+
+    private static Mono<Long> countLines(Publisher<? extends DataBuffer> csv) {
+        return DataBufferUtils.join(csv)
+                .map(buffer -> buffer.toString(StandardCharsets.UTF_8).lines().count());
+    }
+
+    @Test
+    @DisplayName("should handle request update unknown person")
+    void should_handle_update_unknown_person() {
+        when(this.personRepository.updateName(1L, "Update"))
+                .thenReturn(Mono.empty());
+        this.webTestClient
+                .put()
+                .uri(API + "/1")
+                .bodyValue(new Person(1L, "Update"))
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
+
     @ParameterizedTest
     @ValueSource(strings = {"Name123456"})
     @DisplayName("should successfully handle request update person")
     void should_handle_update_person(String name) {
         Person person = new Person(1L, name);
         Mono<Person> personMono = Mono.just(person);
-        when(this.personRepository.findById(any(Long.class)))
-                .thenReturn(Mono.just(new Person(1L, "Name")));
-        when(this.personRepository.save(person))
+        when(this.personRepository.updateName(1L, name))
                 .thenReturn(personMono);
         this.webTestClient
                 .put()
@@ -173,6 +1102,110 @@ class PersonHandlerTest {
                 .isEqualTo(person);
     }
 
+    @Test
+    @DisplayName("should handle request update person if match")
+    void should_handle_update_if_match() {
+        var current = new Person(1L, "Name", 3L);
+        var updated = new Person(1L, "Update", 4L);
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(current));
+        when(this.personRepository.updateName(1L, "Update", 3L))
+                .thenReturn(Mono.just(updated));
+        this.webTestClient
+                .put()
+                .uri(API + "/1")
+                .header(HttpHeaders.IF_MATCH, PersonHandler.etag(current, MediaType.APPLICATION_JSON))
+                .bodyValue(new Person(1L, "Update"))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(HttpHeaders.ETAG, PersonHandler.etag(updated, MediaType.APPLICATION_JSON))
+                .expectBody(Person.class)
+                .isEqualTo(updated);
+    }
+
+    @Test
+    @DisplayName("should handle request update person if match with the ETag of another representation")
+    void should_handle_update_if_match_other_representation() {
+        var current = new Person(1L, "Name", 3L);
+        var updated = new Person(1L, "Update", 4L);
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(current));
+        when(this.personRepository.updateName(1L, "Update", 3L))
+                .thenReturn(Mono.just(updated));
+        assertThat(PersonHandler.etag(current, MediaType.APPLICATION_CBOR))
+                .isNotEqualTo(PersonHandler.etag(current, MediaType.APPLICATION_JSON));
+        this.webTestClient
+                .put()
+                .uri(API + "/1")
+                .header(HttpHeaders.IF_MATCH, PersonHandler.etag(current, MediaType.APPLICATION_CBOR))
+                .bodyValue(new Person(1L, "Update"))
+                .exchange()
+                .expectStatus()
+                .isOk();
+    }
+
+    @Test
+    @DisplayName("should handle request update person if match with outdated ETag")
+    void should_handle_update_if_match_outdated() {
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name", 4L)));
+        this.webTestClient
+                .put()
+                .uri(API + "/1")
+                .header(HttpHeaders.IF_MATCH,
+                        PersonHandler.etag(new Person(1L, "Name", 3L), MediaType.APPLICATION_JSON))
+                .bodyValue(new Person(1L, "Update"))
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.PRECONDITION_FAILED);
+        verify(this.personRepository, never()).updateName(any(), any(), anyLong());
+    }
+
+    @Test
+    @DisplayName("should handle request update person if match changed concurrently")
+    void should_handle_update_if_match_changed_concurrently() {
+        var current = new Person(1L, "Name", 3L);
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(current));
+        when(this.personRepository.updateName(1L, "Update", 3L))
+                .thenReturn(Mono.empty());
+        this.webTestClient
+                .put()
+                .uri(API + "/1")
+                .header(HttpHeaders.IF_MATCH, PersonHandler.etag(current, MediaType.APPLICATION_JSON))
+                .bodyValue(new Person(1L, "Update"))
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @Test
+    @DisplayName("should handle request update person with outdated version")
+    void should_handle_update_outdated_version() {
+        when(this.personRepository.updateName(1L, "Update", 3L))
+                .thenReturn(Mono.empty());
+        when(this.personRepository.existsById(1L))
+                .thenReturn(Mono.just(true));
+        this.webTestClient
+                .put()
+                .uri(API + "/1")
+                .bodyValue(new Person(1L, "Update", 3L))
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+        when(this.personRepository.existsById(1L))
+                .thenReturn(Mono.just(false));
+        this.webTestClient
+                .put()
+                .uri(API + "/1")
+                .bodyValue(new Person(1L, "Update", 3L))
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
+
     /**
      * Handle validation
      * name is null
@@ -220,6 +1253,22 @@ class PersonHandlerTest {
                 .isEqualTo(new Person(1L, "First"));
     }
 
+    @Test
+    @DisplayName("should handle request find first by name not modified")
+    void should_handle_find_first_by_name_not_modified() {
+        when(this.personRepository.findFirstByName(any(String.class)))
+                .thenReturn(Mono.just(new Person(1L, "First")));
+        this.webTestClient
+                .get()
+                .uri(API + "/firstByName/First")
+                .ifNoneMatch(PersonHandler.etag(new Person(1L, "First"), MediaType.APPLICATION_JSON))
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectHeader()
+                .valueEquals(HttpHeaders.ETAG, PersonHandler.etag(new Person(1L, "First"), MediaType.APPLICATION_JSON));
+    }
+
     @Test
     @DisplayName("should handle request find first by name not found")
     void should_handle_find_first_by_name_not_found() {
@@ -0,0 +1,58 @@
+package de.ksbrwsk.people;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the COPY import with saving people one by one.
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+@DataR2dbcTest
+@Tag("benchmark")
+@Slf4j
+class PersonImportBenchmarkTest extends PostgreSqlContainer {
+
+    private static final int SAVE_ROWS = 10_000;
+    private static final int COPY_ROWS = 1_000_000;
+
+    @Autowired
+    PersonRepository personRepository;
+
+    @Test
+    @DisplayName("should copy faster than save")
+    void should_copy_faster_than_save() {
+        var saveRate = this.rowsPerSecond(SAVE_ROWS, Flux.range(0, SAVE_ROWS)
+                .concatMap(i -> this.personRepository.save(new Person("Save@" + i)))
+                .count());
+        var copyRate = this.rowsPerSecond(COPY_ROWS, this.personRepository.copyFromCsv(Flux.range(0, COPY_ROWS)
+                .buffer(1_000)
+                .map(chunk -> {
+                    var csv = new StringBuilder();
+                    chunk.forEach(i -> csv.append("Copy@").append(i).append('\n'));
+                    return DefaultDataBufferFactory.sharedInstance.wrap(csv.toString().getBytes(StandardCharsets.UTF_8));
+                }), false));
+        log.info("save: {} rows/s, copy: {} rows/s, speedup {}x", saveRate, copyRate, copyRate / saveRate);
+        assertThat(copyRate).isGreaterThan(saveRate);
+    }
+
+    private long rowsPerSecond(int expectedRows, Mono<Long> load) {
+        this.personRepository.deleteAll().block();
+        var start = System.nanoTime();
+        var rows = load.block();
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+        assertThat(rows).isEqualTo(expectedRows);
+        return Math.max(1L, expectedRows * 1_000L / Math.max(1L, elapsed.toMillis()));
+    }
+}
@@ -0,0 +1,200 @@
+package de.ksbrwsk.people;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+import static de.ksbrwsk.people.Constants.API;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives a weighted mix of the routes of {@link PersonRouter} at a fixed arrival rate against the application
+ * running on a seeded PostgreSQL container, and reports latency percentiles and throughput per route.
+ * Run with {@code mvn test -Pbenchmark -Dtest=PersonLoadTest}, the load is configured with system properties:
+ * <ul>
+ *     <li>{@code load.rows} - the number of people seeded before the run, defaults to 100000</li>
+ *     <li>{@code load.rate} - the arrival rate in requests per second, defaults to 500</li>
+ *     <li>{@code load.warmup} - the duration of the discarded warmup run, defaults to 10s</li>
+ *     <li>{@code load.duration} - the duration of the measured run, defaults to 60s</li>
+ *     <li>{@code load.seed} - the seed of the random source, defaults to 42</li>
+ *     <li>{@code load.mix} - the weights by route, e.g. {@code findById:50,findAll:1}</li>
+ *     <li>{@code load.max-p99} - fails the run if the p99 of a route exceeds this duration, unset by default</li>
+ * </ul>
+ * The percentile distribution of each route is written to {@code target/load-test/<route>.hgrm},
+ * a summary of all routes to {@code target/load-test/summary.json}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Tag("benchmark")
+@Slf4j
+class PersonLoadTest extends PostgreSqlContainer {
+
+    private static final String DEFAULT_MIX =
+            "findAll:1,findById:50,findFirstByName:20,create:10,update:15,deleteById:4";
+    private static final Path REPORT_DIRECTORY = Path.of("target", "load-test");
+
+    private final int rows = Integer.getInteger("load.rows", 100_000);
+    private final double rate = Double.parseDouble(System.getProperty("load.rate", "500"));
+    private final Duration warmup = DurationStyle.detectAndParse(System.getProperty("load.warmup", "10s"));
+    private final Duration duration = DurationStyle.detectAndParse(System.getProperty("load.duration", "60s"));
+    private final long seed = Long.getLong("load.seed", 42L);
+    private final Map<String, Integer> mix = parseMix(System.getProperty("load.mix", DEFAULT_MIX));
+    private final Duration maxP99 = System.getProperty("load.max-p99") == null
+            ? null : DurationStyle.detectAndParse(System.getProperty("load.max-p99"));
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    PersonRepository personRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private long firstId;
+
+    @BeforeEach
+    void setUp() {
+        log.info("seeding {} people", this.rows);
+        var imported = this.personRepository.deleteAll()
+                .then(this.personRepository.copyFromCsv(Flux.range(0, this.rows)
+                        .buffer(1_000)
+                        .map(chunk -> {
+                            var csv = new StringBuilder();
+                            chunk.forEach(i -> csv.append(name(i)).append('\n'));
+                            return DefaultDataBufferFactory.sharedInstance.wrap(csv.toString().getBytes(StandardCharsets.UTF_8));
+                        }), false))
+                .block();
+        assertThat(imported).isEqualTo((long) this.rows);
+        this.firstId = this.personRepository.findTopByOrderByIdAsc().map(Person::id).block();
+    }
+
+    @Test
+    @DisplayName("should serve the route mix at the arrival rate")
+    void should_serve_the_route_mix() throws Exception {
+        var webClient = WebClient.builder()
+                .baseUrl("http://localhost:" + this.port + API)
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(-1))
+                .build();
+        var generator = new LoadGenerator(webClient, this.routes());
+
+        log.info("warming up at {} requests/s for {}", this.rate, this.warmup);
+        generator.run(this.rate, this.warmup, this.seed);
+        log.info("measuring at {} requests/s for {} with mix {}", this.rate, this.duration, this.mix);
+        var results = generator.run(this.rate, this.duration, this.seed + 1);
+
+        this.report(results);
+        results.values().forEach(result -> {
+            assertThat(result.errors()).as("errors of %s", result.name()).isZero();
+            if (this.maxP99 != null) {
+                assertThat(result.percentileMillis(99.0))
+                        .as("p99 of %s in ms", result.name())
+                        .isLessThanOrEqualTo(this.maxP99.toMillis());
+            }
+        });
+    }
+
+    private List<LoadGenerator.Route> routes() {
+        return List.of(
+                this.route("findAll", (client, random) -> client.get()
+                        .accept(MediaType.APPLICATION_JSON)
+                        .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()))),
+                this.route("findById", (client, random) -> client.get()
+                        .uri("/{id}", this.randomId(random))
+                        .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()))),
+                this.route("findFirstByName", (client, random) -> client.get()
+                        .uri("/firstByName/{name}", name(random.nextInt(this.rows)))
+                        .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()))),
+                this.route("create", (client, random) -> client.post()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(new Person(name(random.nextInt(this.rows))))
+                        .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()))),
+                this.route("update", (client, random) -> client.put()
+                        .uri("/{id}", this.randomId(random))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(new Person(name(random.nextInt(this.rows))))
+                        .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()))),
+                this.route("deleteById", (client, random) -> client.delete()
+                        .uri("/{id}", this.randomId(random))
+                        .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()))));
+    }
+
+    private LoadGenerator.Route route(String name, BiFunction<WebClient, SplittableRandom, Mono<HttpStatusCode>> call) {
+        return new LoadGenerator.Route(name, this.mix.getOrDefault(name, 0), call);
+    }
+
+    private long randomId(SplittableRandom random) {
+        return this.firstId + random.nextInt(this.rows);
+    }
+
+    private void report(Map<String, LoadGenerator.RouteResult> results) throws IOException {
+        Files.createDirectories(REPORT_DIRECTORY);
+        var summary = new LinkedHashMap<String, Map<String, Object>>();
+        var table = new StringBuilder(String.format("%n%-16s %10s %8s %10s %10s %10s %10s %10s",
+                "route", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (LoadGenerator.RouteResult result : results.values()) {
+            table.append(String.format("%n%-16s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f",
+                    result.name(), result.requests(), result.errors(), result.throughput(),
+                    result.percentileMillis(50.0), result.percentileMillis(99.0), result.percentileMillis(99.9),
+                    result.histogram().getMaxValue() / 1_000.0));
+            var route = new LinkedHashMap<String, Object>();
+            route.put("requests", result.requests());
+            route.put("errors", result.errors());
+            route.put("throughput", result.throughput());
+            route.put("p50", result.percentileMillis(50.0));
+            route.put("p99", result.percentileMillis(99.0));
+            route.put("p99.9", result.percentileMillis(99.9));
+            route.put("max", result.histogram().getMaxValue() / 1_000.0);
+            summary.put(result.name(), route);
+            try (var out = new PrintStream(Files.newOutputStream(REPORT_DIRECTORY.resolve(result.name() + ".hgrm")))) {
+                result.histogram().outputPercentileDistribution(out, 1_000.0);
+            }
+        }
+        log.info("load test at {} requests/s over {}:{}", this.rate, this.duration, table);
+        this.objectMapper.writerWithDefaultPrettyPrinter()
+                .writeValue(REPORT_DIRECTORY.resolve("summary.json").toFile(), Map.of(
+                        "rate", this.rate,
+                        "duration", this.duration.toString(),
+                        "rows", this.rows,
+                        "routes", summary));
+    }
+
+    private static String name(int i) {
+        return "P" + i;
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        return Arrays.stream(mix.split(","))
+                .map(String::trim)
+                .filter(entry -> !entry.isEmpty())
+                .map(entry -> entry.split(":"))
+                .collect(Collectors.toMap(entry -> entry[0].trim(), entry -> Integer.parseInt(entry[1].trim()),
+                        (a, b) -> b, LinkedHashMap::new));
+    }
+}
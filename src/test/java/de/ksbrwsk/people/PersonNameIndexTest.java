@@ -0,0 +1,180 @@
+package de.ksbrwsk.people;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PersonNameIndexTest {
+
+    PersonRepository personRepository;
+    PersonNameIndex personNameIndex;
+
+    @BeforeEach
+    void setUp() {
+        this.personRepository = mock(PersonRepository.class);
+        this.personNameIndex = new PersonNameIndex(this.personRepository, properties(true));
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.personNameIndex.close();
+    }
+
+    private static PeopleProperties properties(boolean enabled) {
+        return TestPeopleProperties.defaults()
+                .autocomplete(enabled)
+                .build();
+    }
+
+    private void load(String... names) {
+        scan("100:100:", () -> Flux.fromStream(Arrays.stream(names).filter(Objects::nonNull)));
+        this.personNameIndex.rebuild().block();
+    }
+
+    /**
+     * Answers the scans of the index with the given snapshot and the names supplied for every scan.
+     */
+    private void scan(String snapshot, Supplier<Flux<String>> names) {
+        when(this.personRepository.findAllNamesInSnapshot(anyInt(), any())).thenAnswer(invocation -> {
+            BiFunction<String, Flux<String>, Mono<?>> reader = invocation.getArgument(1);
+            return reader.apply(snapshot, names.get());
+        });
+    }
+
+    @Test
+    @DisplayName("should complete distinct names ignoring case")
+    void should_complete() {
+        assertThat(this.personNameIndex.isLoaded()).isFalse();
+        load("Sabo", "Name", "name", "Name", "Nase", "Na", "Anna", null);
+        assertThat(this.personNameIndex.isLoaded()).isTrue();
+        assertThat(this.personNameIndex.complete("NA", 10)).containsExactly("Na", "Name", "name", "Nase");
+        assertThat(this.personNameIndex.complete("nam", 10)).containsExactly("Name", "name");
+        assertThat(this.personNameIndex.complete("n", 2)).containsExactly("Na", "Name");
+        assertThat(this.personNameIndex.complete("x", 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should complete across front coded blocks")
+    void should_complete_across_blocks() {
+        var names = IntStream.range(0, 1000).mapToObj(i -> "Name%04d".formatted(i)).toArray(String[]::new);
+        load(names);
+        assertThat(this.personNameIndex.complete("name", 1000)).containsExactly(names);
+        assertThat(this.personNameIndex.complete("Name05", 3)).containsExactly("Name0500", "Name0501", "Name0502");
+        assertThat(this.personNameIndex.complete("Name0999", 3)).containsExactly("Name0999");
+        assertThat(this.personNameIndex.complete("Name1", 3)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should keep names until the last person carrying them is removed")
+    void should_count_names() {
+        load("Name", "Name");
+        this.personNameIndex.add(11L, List.of(new Person(3L, "Nase")));
+        assertThat(this.personNameIndex.complete("Na", 10)).containsExactly("Name", "Nase");
+        this.personNameIndex.remove(12L, List.of(new Person(1L, "Name")));
+        assertThat(this.personNameIndex.complete("Na", 10)).containsExactly("Name", "Nase");
+        this.personNameIndex.remove(13L, List.of(new Person(2L, "Name"), new Person(3L, "Nase")));
+        assertThat(this.personNameIndex.complete("Na", 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should merge changes into a new snapshot")
+    void should_compact() {
+        load("Name");
+        var registry = new SimpleMeterRegistry();
+        this.personNameIndex.bindTo(registry);
+        var added = IntStream.range(0, 5000).mapToObj(i -> new Person((long) i, "Added%04d".formatted(i))).toList();
+        this.personNameIndex.remove(11L, List.of(new Person(1L, "Name")));
+        this.personNameIndex.add(11L, added);
+        await().atMost(Duration.ofSeconds(10)).until(() ->
+                registry.find(PersonNameIndex.REBUILD_METRIC).tag("kind", "compaction").timer() != null);
+        assertThat(registry.get("people.autocomplete.names").gauge().value()).isEqualTo(5000);
+        assertThat(registry.get("people.autocomplete.memory").gauge().value()).isPositive();
+        assertThat(this.personNameIndex.complete("added4", 1000)).hasSize(1000);
+        assertThat(this.personNameIndex.complete("Na", 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should keep changes made while rebuilding")
+    void should_keep_changes_during_rebuild() {
+        scan("100:105:102", () -> {
+            this.personNameIndex.add(102L, List.of(new Person(2L, "Nase")));
+            this.personNameIndex.add(105L, List.of(new Person(3L, "Nabe")));
+            return Flux.just("Name");
+        });
+        this.personNameIndex.rebuild().block();
+        assertThat(this.personNameIndex.complete("Na", 10)).containsExactly("Nabe", "Name", "Nase");
+    }
+
+    @Test
+    @DisplayName("should not count changes seen by the rebuild twice")
+    void should_drop_changes_seen_by_rebuild() {
+        scan("100:105:102", () -> {
+            this.personNameIndex.add(99L, List.of(new Person(2L, "Nase")));
+            this.personNameIndex.add(103L, List.of(new Person(3L, "Nabe")));
+            return Flux.just("Name", "Nase", "Nabe");
+        });
+        this.personNameIndex.rebuild().block();
+        this.personNameIndex.remove(106L, List.of(new Person(2L, "Nase"), new Person(3L, "Nabe")));
+        assertThat(this.personNameIndex.complete("Na", 10)).containsExactly("Name");
+    }
+
+    @Test
+    @DisplayName("should coalesce rebuilds requested while rebuilding")
+    void should_coalesce_rebuilds() throws Exception {
+        var scans = new AtomicInteger();
+        Sinks.Many<String> first = Sinks.many().unicast().onBackpressureBuffer();
+        scan("100:100:", () -> scans.getAndIncrement() == 0 ? first.asFlux() : Flux.just("Name"));
+        var rebuilt = this.personNameIndex.rebuild().toFuture();
+        var second = this.personNameIndex.rebuild().toFuture();
+        var third = this.personNameIndex.rebuild().toFuture();
+        first.tryEmitNext("Nase");
+        first.tryEmitComplete();
+        rebuilt.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+        third.get(10, TimeUnit.SECONDS);
+        assertThat(scans.get()).isEqualTo(2);
+        assertThat(this.personNameIndex.complete("Na", 10)).containsExactly("Name");
+    }
+
+    @Test
+    @DisplayName("should see the transactions committed before a snapshot")
+    void should_parse_snapshot() {
+        var snapshot = PersonNameIndex.Snapshot.parse("100:105:101,103");
+        assertThat(snapshot.sees(99)).isTrue();
+        assertThat(snapshot.sees(101)).isFalse();
+        assertThat(snapshot.sees(102)).isTrue();
+        assertThat(snapshot.sees(105)).isFalse();
+        assertThat(PersonNameIndex.Snapshot.parse("100:100:").sees(100)).isFalse();
+    }
+
+    @Test
+    @DisplayName("should not load when disabled")
+    void should_not_load_disabled() {
+        var disabled = new PersonNameIndex(this.personRepository, properties(false));
+        disabled.rebuild().block();
+        assertThat(disabled.isLoaded()).isFalse();
+        disabled.close();
+    }
+}
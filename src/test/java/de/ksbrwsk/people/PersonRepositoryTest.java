@@ -4,16 +4,29 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.r2dbc.core.DatabaseClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
 @DataR2dbcTest
 class PersonRepositoryTest extends PostgreSqlContainer {
 
     @Autowired
     PersonRepository personRepository;
 
+    @Autowired
+    DatabaseClient databaseClient;
+
     private Person findFirst() {
         var first = this.personRepository
                 .findTopByOrderByIdAsc()
@@ -53,6 +66,56 @@ class PersonRepositoryTest extends PostgreSqlContainer {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("should find people by ids")
+    void should_find_all_by_ids() {
+        Flux<Person> personFlux = this.personRepository
+                .deleteAll()
+                .thenMany(this.personRepository.insertAll(List.of(new Person("Name"), new Person("Sabo"), new Person("Jimbo"))))
+                .collectList()
+                .flatMapMany(people -> this.personRepository.findAllByIds(
+                        List.of(people.get(0).id(), people.get(2).id(), 11111111L)));
+        StepVerifier
+                .create(personFlux.map(Person::name).sort())
+                .expectNext("Jimbo", "Name")
+                .verifyComplete();
+        StepVerifier
+                .create(this.personRepository.findAllByIds(List.of()))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("should keep stats current without scanning")
+    void should_find_stats() {
+        var people = this.personRepository.deleteAll()
+                .thenMany(this.personRepository.insertAll(List.of(new Person("Name"), new Person("Sabo"), new Person("Jimbo"))))
+                .collectList()
+                .block();
+        this.personRepository.updateName(people.get(1).id(), "Sab").block();
+        this.personRepository.deleteById(people.get(0).id()).block();
+        StepVerifier
+                .create(this.personRepository.findStats())
+                .expectNext(new PersonStats(2L, people.get(1).id(), people.get(2).id(), Map.of(3, 1L, 5, 1L)))
+                .verifyComplete();
+        StepVerifier
+                .create(this.personRepository.estimateCount())
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("should reset stats and draw a version when the table is truncated")
+    void should_reset_stats_on_truncate() {
+        this.personRepository.insertAll(List.of(new Person("Name"), new Person("Sabo"))).blockLast();
+        var version = this.personRepository.findVersion().block();
+        this.databaseClient.sql("TRUNCATE person").then().block();
+        StepVerifier
+                .create(this.personRepository.findStats())
+                .expectNext(new PersonStats(0L, null, null, Map.of()))
+                .verifyComplete();
+        assertThat(this.personRepository.findVersion().block()).isGreaterThan(version);
+    }
+
     @Test
     @DisplayName("should find first person by name x")
     void should_find_first_person_by_name() {
@@ -94,4 +157,190 @@ class PersonRepositoryTest extends PostgreSqlContainer {
                 .create(byId)
                 .verifyComplete();
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("should find page after id x")
+    void should_find_page() {
+        Flux<Person> personFlux = this.personRepository
+                .deleteAll()
+                .then(this.personRepository.save(new Person(null, "Name")))
+                .then(this.personRepository.save(new Person(null, "Sabo")))
+                .then(this.personRepository.save(new Person(null, "Jimbo")))
+                .flatMapMany(last -> this.personRepository.findPage(last.id() - 2, 5));
+        StepVerifier
+                .create(personFlux)
+                .expectNextMatches(person -> person.name().equalsIgnoreCase("sabo"))
+                .expectNextMatches(person -> person.name().equalsIgnoreCase("jimbo"))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("should draw a version for every statement changing people")
+    void should_raise_version() {
+        var before = this.personRepository.findVersion().block();
+        var person = this.personRepository.save(new Person("Name")).block();
+        var saved = this.personRepository.findVersion().block();
+        assertThat(saved).isGreaterThan(before);
+        this.personRepository.deleteById(999_999_999L).block();
+        assertThat(this.personRepository.findVersion().block()).isEqualTo(saved);
+        this.personRepository.deleteById(person.id()).block();
+        assertThat(this.personRepository.findVersion().block()).isGreaterThan(saved);
+    }
+
+    @Test
+    @DisplayName("should change the snapshot hash with every write")
+    void should_change_snapshot_hash() {
+        var before = this.personRepository.findSnapshotHash().block();
+        assertThat(this.personRepository.findSnapshotHash().block()).isEqualTo(before);
+        this.personRepository.save(new Person("Name")).block();
+        assertThat(this.personRepository.findSnapshotHash().block()).isNotEqualTo(before);
+    }
+
+    @Test
+    @DisplayName("should read the names of the people in one snapshot")
+    void should_find_all_names_in_snapshot() {
+        this.personRepository.deleteAll()
+                .thenMany(this.personRepository.saveAll(List.of(new Person("Name"), new Person(null, null))))
+                .blockLast();
+        StepVerifier
+                .create(this.personRepository.findAllNamesInSnapshot(1, (snapshot, names) -> this.personRepository
+                        .save(new Person("Later"))
+                        .then(names.collectList())
+                        .map(list -> Map.entry(snapshot, list))))
+                .assertNext(read -> {
+                    assertThat(read.getKey()).matches("\\d+:\\d+:[\\d,]*");
+                    assertThat(read.getValue()).containsExactly("Name");
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("should search people by substring and similarity")
+    void should_search() {
+        Flux<Person> personFlux = this.personRepository
+                .deleteAll()
+                .thenMany(this.personRepository.insertAll(List.of(
+                        new Person("Jimbo"), new Person("Jumbo"), new Person("Sabo"), new Person("Jim_bo"))))
+                .thenMany(this.personRepository.search("jimbo", "%jimbo%", 10));
+        StepVerifier
+                .create(personFlux)
+                .expectNextMatches(person -> person.name().equals("Jimbo"))
+                .thenConsumeWhile(person -> !person.name().equals("Sabo"))
+                .verifyComplete();
+        StepVerifier
+                .create(this.personRepository.search("m_b", "%m\\_b%", 10))
+                .expectNextMatches(person -> person.name().equals("Jim_bo"))
+                .verifyComplete();
+        StepVerifier
+                .create(this.personRepository.search("jimbo", "%jimbo%", 1))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("should insert all people in order")
+    void should_insert_all() {
+        Flux<Person> personFlux = this.personRepository
+                .deleteAll()
+                .thenMany(this.personRepository.insertAll(List.of(new Person("Name"), new Person("Sabo"))));
+        StepVerifier
+                .create(personFlux)
+                .expectNextMatches(person -> person.id() != null && person.name().equals("Name"))
+                .expectNextMatches(person -> person.id() != null && person.name().equals("Sabo"))
+                .verifyComplete();
+        StepVerifier
+                .create(this.personRepository.count())
+                .expectNext(2L)
+                .verifyComplete();
+        var names = IntStream.range(0, 1000).mapToObj(i -> new Person("Name" + i)).toList();
+        var inserted = this.personRepository.insertAll(names).collectList().block();
+        assertThat(inserted).extracting(Person::name).containsExactlyElementsOf(names.stream().map(Person::name).toList());
+        StepVerifier
+                .create(Flux.fromIterable(inserted)
+                        .concatMap(person -> this.personRepository.findById(person.id())
+                                .filter(stored -> stored.name().equals(person.name()))))
+                .expectNextCount(names.size())
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("should copy people from csv")
+    void should_copy_from_csv() {
+        var csv = Flux.just("name\nName\n", "\"Sa,bo\"\n")
+                .map(chunk -> DefaultDataBufferFactory.sharedInstance.wrap(chunk.getBytes(StandardCharsets.UTF_8)));
+        Mono<Long> rows = this.personRepository
+                .deleteAll()
+                .then(this.personRepository.copyFromCsv(csv, true));
+        StepVerifier
+                .create(rows)
+                .expectNext(2L)
+                .verifyComplete();
+        StepVerifier
+                .create(this.personRepository.findFirstByName("Sa,bo"))
+                .expectNextCount(1L)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("should delete person returning the deleted row")
+    void should_delete_returning() {
+        Person saved = this.personRepository
+                .deleteAll()
+                .then(this.personRepository.save(new Person(null, "Name")))
+                .block();
+        StepVerifier
+                .create(this.personRepository.deleteReturning(saved.id()))
+                .expectNext(saved)
+                .verifyComplete();
+        StepVerifier
+                .create(this.personRepository.deleteReturning(saved.id()))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("should update name returning the updated row")
+    void should_update_name() {
+        Person saved = this.personRepository
+                .deleteAll()
+                .then(this.personRepository.save(new Person(null, "Name")))
+                .block();
+        StepVerifier
+                .create(this.personRepository.updateName(saved.id(), "Update"))
+                .expectNext(new Person(saved.id(), "Update", saved.version() + 1))
+                .verifyComplete();
+        StepVerifier
+                .create(this.personRepository.updateName(11111111L, "Update"))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("should update name only with the current version")
+    void should_update_name_if_version() {
+        Person saved = this.personRepository
+                .deleteAll()
+                .then(this.personRepository.save(new Person(null, "Name")))
+                .block();
+        StepVerifier
+                .create(this.personRepository.updateName(saved.id(), "Update", saved.version()))
+                .expectNext(new Person(saved.id(), "Update", saved.version() + 1))
+                .verifyComplete();
+        StepVerifier
+                .create(this.personRepository.updateName(saved.id(), "Other", saved.version()))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("should reject saving an outdated version")
+    void should_reject_outdated_version() {
+        Person saved = this.personRepository
+                .deleteAll()
+                .then(this.personRepository.save(new Person(null, "Name")))
+                .block();
+        Person updated = this.personRepository.save(new Person(saved.id(), "Update", saved.version())).block();
+        assertThat(updated.version()).isEqualTo(saved.version() + 1);
+        StepVerifier
+                .create(this.personRepository.save(new Person(saved.id(), "Other", saved.version())))
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+    }
+}
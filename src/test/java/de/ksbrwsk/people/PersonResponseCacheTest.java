@@ -0,0 +1,144 @@
+package de.ksbrwsk.people;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PersonResponseCacheTest {
+
+    PersonRepository personRepository;
+    PersonCache personCache;
+    PersonResponseCache personResponseCache;
+
+    @BeforeEach
+    void setUp() {
+        this.personRepository = mock(PersonRepository.class);
+        this.personCache = new PersonCache(this.personRepository,
+                new PersonBatchLoader(this.personRepository, properties(true)), properties(true));
+        this.personResponseCache = responseCache(this.personCache, properties(true));
+    }
+
+    private static PersonResponseCache responseCache(PersonCache personCache, PeopleProperties properties) {
+        var codecCustomizers = new StaticListableBeanFactory(Map.of("binaryCodecCustomizer",
+                new CodecConfiguration().binaryCodecCustomizer(new Jackson2ObjectMapperBuilder())));
+        return new PersonResponseCache(personCache, codecCustomizers.getBeanProvider(CodecCustomizer.class), properties);
+    }
+
+    private static PeopleProperties properties(boolean enabled) {
+        return TestPeopleProperties.defaults()
+                .cache(enabled)
+                .lookups(false)
+                .build();
+    }
+
+    private static byte[] read(PersonResponseCache.EncodedPerson encoded) {
+        var buffer = encoded.buffer();
+        var bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+        return bytes;
+    }
+
+    @Test
+    @DisplayName("should encode person once per representation")
+    void should_encode_once_per_representation() throws IOException {
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name", 0L)));
+        var json = this.personResponseCache.findById(1L, MediaType.APPLICATION_JSON).block();
+        var smile = this.personResponseCache.findById(1L, CodecConfiguration.APPLICATION_SMILE).block();
+        assertThat(this.personResponseCache.findById(1L, MediaType.APPLICATION_JSON).block()).isSameAs(json);
+        assertThat(this.personResponseCache.findById(1L, CodecConfiguration.APPLICATION_SMILE).block()).isSameAs(smile);
+        assertThat(new ObjectMapper().readValue(read(json), Person.class)).isEqualTo(new Person(1L, "Name", 0L));
+        assertThat(json.etag()).isEqualTo(PersonHandler.etag(new Person(1L, "Name", 0L), MediaType.APPLICATION_JSON));
+        assertThat(smile.etag())
+                .isEqualTo(PersonHandler.etag(new Person(1L, "Name", 0L), CodecConfiguration.APPLICATION_SMILE))
+                .isNotEqualTo(json.etag());
+        verify(this.personRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    @DisplayName("should share read-only body between responses")
+    void should_share_read_only_body() {
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name")));
+        var encoded = this.personResponseCache.findById(1L, MediaType.APPLICATION_JSON).block();
+        assertThat(encoded.body().isReadOnly()).isTrue();
+        var first = read(encoded);
+        var second = read(encoded);
+        assertThat(first).hasSize(encoded.length()).isEqualTo(second);
+    }
+
+    @Test
+    @DisplayName("should reload person after invalidation")
+    void should_invalidate() {
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name")))
+                .thenReturn(Mono.empty());
+        assertThat(this.personResponseCache.findById(1L, MediaType.APPLICATION_JSON).block()).isNotNull();
+        this.personCache.invalidate(1L);
+        this.personResponseCache.invalidate(new Person(1L, "Name"));
+        assertThat(this.personResponseCache.findById(1L, MediaType.APPLICATION_JSON).block()).isNull();
+        verify(this.personRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    @DisplayName("should not cache body loaded before invalidation")
+    void should_not_cache_body_loaded_before_invalidation() {
+        var person = Sinks.<Person>one();
+        when(this.personRepository.findById(1L))
+                .thenReturn(person.asMono())
+                .thenReturn(Mono.just(new Person(1L, "Update", 1L)));
+        var running = this.personResponseCache.findById(1L, MediaType.APPLICATION_JSON).toFuture();
+        this.personCache.invalidate(1L);
+        this.personResponseCache.invalidate(1L);
+        person.tryEmitValue(new Person(1L, "Name", 0L));
+        assertThat(running.join().etag()).isEqualTo(PersonHandler.etag(new Person(1L, "Name", 0L), MediaType.APPLICATION_JSON));
+        assertThat(this.personResponseCache.findById(1L, MediaType.APPLICATION_JSON).block().etag())
+                .isEqualTo(PersonHandler.etag(new Person(1L, "Update", 1L), MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    @DisplayName("should encode every lookup of disabled cache")
+    void should_bypass_disabled_cache() {
+        var personCache = new PersonCache(this.personRepository,
+                new PersonBatchLoader(this.personRepository, properties(false)), properties(false));
+        var responseCache = responseCache(personCache, properties(false));
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name")));
+        var first = responseCache.findById(1L, MediaType.APPLICATION_JSON).block();
+        var second = responseCache.findById(1L, MediaType.APPLICATION_JSON).block();
+        assertThat(second).isNotSameAs(first);
+        verify(this.personRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    @DisplayName("should publish hit and miss metrics")
+    void should_publish_metrics() {
+        var registry = new SimpleMeterRegistry();
+        this.personResponseCache.bindTo(registry);
+        when(this.personRepository.findById(1L))
+                .thenReturn(Mono.just(new Person(1L, "Name")));
+        this.personResponseCache.findById(1L, MediaType.APPLICATION_JSON).block();
+        this.personResponseCache.findById(1L, MediaType.APPLICATION_JSON).block();
+        assertThat(registry.get("cache.gets").tag("cache", "people.responses").tag("result", "hit").functionCounter().count())
+                .isEqualTo(1.0);
+        assertThat(registry.get("cache.gets").tag("cache", "people.responses").tag("result", "miss").functionCounter().count())
+                .isEqualTo(1.0);
+    }
+}
@@ -15,6 +15,9 @@ class PersonTest {
     @Autowired
     Validator validator;
 
+    @Autowired
+    PersonValidator personValidator;
+
     @Test
     void should_create_person() {
         Person person = new Person(1L, "Name");
@@ -39,4 +42,13 @@ class PersonTest {
         assertThat(violations).isNotEmpty();
         violations.forEach(System.out::println);
     }
-}
\ No newline at end of file
+
+    @ParameterizedTest
+    @NullAndEmptySource
+    @ValueSource(strings = {" ", "\t\n", "N", " N ", "0123456789", "01234567890", "           "})
+    void should_report_the_errors_of_the_validator(String name) {
+        Person person = new Person(name);
+        assertThat(this.personValidator.errors(person))
+                .containsExactlyInAnyOrderElementsOf(this.personValidator.validatorErrors(person));
+    }
+}
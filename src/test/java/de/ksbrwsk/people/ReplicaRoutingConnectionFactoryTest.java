@@ -0,0 +1,124 @@
+package de.ksbrwsk.people;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+class ReplicaRoutingConnectionFactoryTest {
+
+    Map<Connection, ConnectionFactory> factories = new HashMap<>();
+    ConnectionFactory primary;
+    ConnectionFactory first;
+    ConnectionFactory second;
+    Map<ConnectionFactory, Duration> lags;
+    ReplicaRoutingConnectionFactory routing;
+
+    @BeforeEach
+    void setUp() {
+        this.primary = this.connectionFactory();
+        this.first = this.connectionFactory();
+        this.second = this.connectionFactory();
+        this.lags = new HashMap<>(Map.of(this.first, Duration.ZERO, this.second, Duration.ZERO));
+        var settings = new PeopleProperties.Replicas(List.of("first", "second"),
+                Duration.ofSeconds(1), Duration.ofSeconds(5), Duration.ofSeconds(5));
+        this.routing = new ReplicaRoutingConnectionFactory(this.primary, List.of(this.first, this.second), settings,
+                replica -> Mono.justOrEmpty(this.lags.get(replica)).switchIfEmpty(Mono.error(new IllegalStateException("down"))));
+    }
+
+    private ConnectionFactory connectionFactory() {
+        var connectionFactory = mock(ConnectionFactory.class);
+        var connection = mock(Connection.class);
+        doReturn(Mono.just(connection)).when(connectionFactory).create();
+        this.factories.put(connection, connectionFactory);
+        return connectionFactory;
+    }
+
+    private ConnectionFactory target(boolean readOnly) {
+        return Mono.from(this.routing.create())
+                .contextWrite(context -> context.put(ReplicaRoutingConnectionFactory.READ_ONLY, readOnly))
+                .map(this.factories::get)
+                .block();
+    }
+
+    @Test
+    @DisplayName("should route to the primary before the first lag check")
+    void should_route_to_primary_before_lag_check() {
+        assertThat(this.target(true)).isSameAs(this.primary);
+    }
+
+    @Test
+    @DisplayName("should route writes to the primary")
+    void should_route_writes_to_primary() {
+        this.routing.checkLag().block();
+        assertThat(this.target(false)).isSameAs(this.primary);
+        assertThat(Mono.from(this.routing.create()).map(this.factories::get).block()).isSameAs(this.primary);
+    }
+
+    @Test
+    @DisplayName("should balance reads across replicas in sync")
+    void should_balance_reads_across_replicas() {
+        this.routing.checkLag().block();
+        var targets = List.of(this.target(true), this.target(true), this.target(true), this.target(true));
+        assertThat(targets).containsOnly(this.first, this.second);
+        assertThat(targets).filteredOn(target -> target == this.first).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("should exclude lagging and failing replicas")
+    void should_exclude_lagging_replicas() {
+        this.lags.put(this.first, Duration.ofSeconds(2));
+        this.routing.checkLag().block();
+        assertThat(this.target(true)).isSameAs(this.second);
+        assertThat(this.target(true)).isSameAs(this.second);
+
+        this.lags.remove(this.second);
+        this.routing.checkLag().block();
+        assertThat(this.target(true)).isSameAs(this.primary);
+
+        this.lags.put(this.first, Duration.ZERO);
+        this.routing.checkLag().block();
+        assertThat(this.target(true)).isSameAs(this.first);
+    }
+
+    @Test
+    @DisplayName("should keep the reads of one request on one server")
+    void should_pin_reads_of_request() {
+        this.routing.checkLag().block();
+        var targets = Flux.range(0, 4)
+                .concatMap(i -> Mono.from(this.routing.create()).map(this.factories::get))
+                .collectList()
+                .contextWrite(ReplicaRoutingConnectionFactory::readOnly)
+                .block();
+        assertThat(targets).hasSize(4).containsOnly(targets.get(0));
+        assertThat(targets.get(0)).isIn(this.first, this.second);
+
+        var pinned = Mono.from(this.routing.create()).map(this.factories::get)
+                .flatMap(target -> {
+                    this.lags.put(target, Duration.ofSeconds(2));
+                    return this.routing.checkLag()
+                            .then(Mono.from(this.routing.create()).map(this.factories::get));
+                })
+                .contextWrite(ReplicaRoutingConnectionFactory::readOnly)
+                .block();
+        assertThat(pinned).isSameAs(this.primary);
+    }
+
+    @Test
+    @DisplayName("should unwrap to the primary")
+    void should_unwrap_to_primary() {
+        assertThat(this.routing.unwrap()).isSameAs(this.primary);
+    }
+}
@@ -7,6 +7,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.restdocs.RestDocumentationContextProvider;
 import org.springframework.restdocs.RestDocumentationExtension;
@@ -16,13 +18,19 @@ import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
 import static de.ksbrwsk.people.Constants.API;
+import static de.ksbrwsk.people.Constants.NEXT_CURSOR_HEADER;
+import static org.awaitility.Awaitility.await;
+import static org.springframework.restdocs.headers.HeaderDocumentation.headerWithName;
+import static org.springframework.restdocs.headers.HeaderDocumentation.responseHeaders;
 import static org.springframework.restdocs.payload.PayloadDocumentation.fieldWithPath;
 import static org.springframework.restdocs.payload.PayloadDocumentation.responseFields;
+import static org.springframework.restdocs.payload.PayloadDocumentation.subsectionWithPath;
 import static org.springframework.restdocs.snippet.Attributes.key;
 import static org.springframework.restdocs.webtestclient.WebTestClientRestDocumentation.document;
 import static org.springframework.restdocs.webtestclient.WebTestClientRestDocumentation.documentationConfiguration;
@@ -103,7 +111,85 @@ public class RestDocsTest extends PostgreSqlContainer {
                                 fieldWithPath("[].name")
                                         .type(JsonFieldType.STRING)
                                         .description("The person's name")
-                                        .attributes(key("constraints").value(constraintDescriptionForProperty("name"))))));
+                                        .attributes(key("constraints").value(constraintDescriptionForProperty("name"))),
+                                fieldWithPath("[].version")
+                                        .type(JsonFieldType.NUMBER)
+                                        .description("The person's version, raised by every update"))));
+    }
+
+    @Test
+    void handleFindPage() {
+        this.webTestClient
+                .get()
+                .uri(API + "?limit=2")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists(NEXT_CURSOR_HEADER)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$.[0].name").isEqualTo("Person@1")
+                .jsonPath("$.[1].name").isEqualTo("Person@2")
+                .consumeWith(document("handle-find-page",
+                        responseHeaders(
+                                headerWithName(NEXT_CURSOR_HEADER)
+                                        .description("The cursor of the next page, absent on the last page")),
+                        responseFields(
+                                fieldWithPath("[].id")
+                                        .type(JsonFieldType.NUMBER)
+                                        .description("The person's id")
+                                        .attributes(key("constraints").value(constraintDescriptionForProperty("id"))),
+                                fieldWithPath("[].name")
+                                        .type(JsonFieldType.STRING)
+                                        .description("The person's name")
+                                        .attributes(key("constraints").value(constraintDescriptionForProperty("name"))),
+                                fieldWithPath("[].version")
+                                        .type(JsonFieldType.NUMBER)
+                                        .description("The person's version, raised by every update"))));
+    }
+
+    @Test
+    void handleSearch() {
+        this.webTestClient
+                .get()
+                .uri(API + "/search?q=Person@42&limit=3")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$.[0].name").isEqualTo("Person@42")
+                .consumeWith(document("handle-search",
+                        responseFields(
+                                fieldWithPath("[].id")
+                                        .type(JsonFieldType.NUMBER)
+                                        .description("The person's id")
+                                        .attributes(key("constraints").value(constraintDescriptionForProperty("id"))),
+                                fieldWithPath("[].name")
+                                        .type(JsonFieldType.STRING)
+                                        .description("The person's name")
+                                        .attributes(key("constraints").value(constraintDescriptionForProperty("name"))),
+                                fieldWithPath("[].version")
+                                        .type(JsonFieldType.NUMBER)
+                                        .description("The person's version, raised by every update"))));
+    }
+
+    @Test
+    void handleAutocomplete() {
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> this.webTestClient
+                .get()
+                .uri(API + "/autocomplete?prefix=person@4&limit=3")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$.[0]").isEqualTo("Person@4")
+                .consumeWith(document("handle-autocomplete",
+                        responseFields(
+                                fieldWithPath("[]")
+                                        .type(JsonFieldType.ARRAY)
+                                        .description("The distinct names starting with the prefix, in alphabetical order")))));
     }
 
     @Test
@@ -127,7 +213,67 @@ public class RestDocsTest extends PostgreSqlContainer {
                                 fieldWithPath("name")
                                         .type(JsonFieldType.STRING)
                                         .description("The person's name")
-                                        .attributes(key("constraints").value(constraintDescriptionForProperty("name"))))));
+                                        .attributes(key("constraints").value(constraintDescriptionForProperty("name"))),
+                                fieldWithPath("version")
+                                        .type(JsonFieldType.NUMBER)
+                                        .description("The person's version, raised by every update"))));
+    }
+
+    @Test
+    void handleLookup() {
+        Person first = this.fetchFirst();
+        this.webTestClient
+                .post()
+                .uri(API + "/lookup")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of(first.id() + 1, 10000000000L, first.id()))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.people.length()").isEqualTo(2)
+                .jsonPath("$.people[1].id").isEqualTo(first.id())
+                .consumeWith(document("handle-lookup",
+                        responseFields(
+                                fieldWithPath("people[].id")
+                                        .type(JsonFieldType.NUMBER)
+                                        .description("The person's id")
+                                        .attributes(key("constraints").value(constraintDescriptionForProperty("id"))),
+                                fieldWithPath("people[].name")
+                                        .type(JsonFieldType.STRING)
+                                        .description("The person's name")
+                                        .attributes(key("constraints").value(constraintDescriptionForProperty("name"))),
+                                fieldWithPath("people[].version")
+                                        .type(JsonFieldType.NUMBER)
+                                        .description("The person's version, raised by every update"),
+                                fieldWithPath("missing")
+                                        .type(JsonFieldType.ARRAY)
+                                        .description("The requested ids without a person, in request order"))));
+    }
+
+    @Test
+    void handleStats() {
+        this.webTestClient
+                .get()
+                .uri(API + "/stats")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .consumeWith(document("handle-stats",
+                        responseFields(
+                                fieldWithPath("count")
+                                        .type(JsonFieldType.NUMBER)
+                                        .description("The number of people"),
+                                fieldWithPath("minId")
+                                        .type(JsonFieldType.NUMBER)
+                                        .description("The lowest id, null if there are no people"),
+                                fieldWithPath("maxId")
+                                        .type(JsonFieldType.NUMBER)
+                                        .description("The highest id, null if there are no people"),
+                                subsectionWithPath("nameLengths")
+                                        .type(JsonFieldType.OBJECT)
+                                        .description("The number of people per length of their name, ordered by length"))));
     }
 
     @Test
@@ -192,7 +338,10 @@ public class RestDocsTest extends PostgreSqlContainer {
                                 fieldWithPath("name")
                                         .type(JsonFieldType.STRING)
                                         .description("The person's name")
-                                        .attributes(key("constraints").value(constraintDescriptionForProperty("name"))))));
+                                        .attributes(key("constraints").value(constraintDescriptionForProperty("name"))),
+                                fieldWithPath("version")
+                                        .type(JsonFieldType.NUMBER)
+                                        .description("The person's version, raised by every update"))));
     }
 
     @Test
@@ -210,6 +359,22 @@ public class RestDocsTest extends PostgreSqlContainer {
                 .consumeWith(document("handle-update-invalid"));
     }
 
+    @Test
+    void handleUpdatePreconditionFailed() {
+        Person first = this.fetchFirst();
+        this.webTestClient
+                .put()
+                .uri(API + "/" + first.id())
+                .header(HttpHeaders.IF_MATCH, PersonHandler.etag(new Person(first.id(), first.name(), first.version() - 1),
+                        MediaType.APPLICATION_JSON))
+                .bodyValue(new Person(first.id(), "Update"))
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED)
+                .expectBody()
+                .consumeWith(document("handle-update-precondition-failed"));
+    }
+
     @Test
     void handleUpdateNotFound() {
         this.webTestClient
@@ -257,7 +422,10 @@ public class RestDocsTest extends PostgreSqlContainer {
                                 fieldWithPath("name")
                                         .type(JsonFieldType.STRING)
                                         .description("The person's name")
-                                        .attributes(key("constraints").value(constraintDescriptionForProperty("name"))))));
+                                        .attributes(key("constraints").value(constraintDescriptionForProperty("name"))),
+                                fieldWithPath("version")
+                                        .type(JsonFieldType.NUMBER)
+                                        .description("The person's version, raised by every update"))));
     }
 
     @Test
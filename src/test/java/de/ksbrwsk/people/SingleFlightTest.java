@@ -0,0 +1,97 @@
+package de.ksbrwsk.people;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightTest {
+
+    SingleFlight<Long, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    @DisplayName("should share one query between concurrent lookups")
+    void should_share_query() {
+        var queries = new AtomicInteger();
+        var result = Sinks.<String>one();
+        var first = this.singleFlight.execute(1L, id -> result.asMono().doOnSubscribe(s -> queries.incrementAndGet()))
+                .toFuture();
+        var second = this.singleFlight.execute(1L, id -> Mono.just("Other")).toFuture();
+        assertThat(this.singleFlight.inFlight()).isEqualTo(1);
+        result.tryEmitValue("Name");
+        assertThat(first.join()).isEqualTo("Name");
+        assertThat(second.join()).isEqualTo("Name");
+        assertThat(queries.get()).isEqualTo(1);
+        assertThat(this.singleFlight.coalesced()).isEqualTo(1L);
+        assertThat(this.singleFlight.inFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("should run a new query after the last one finished")
+    void should_not_keep_results() {
+        StepVerifier
+                .create(this.singleFlight.execute(1L, id -> Mono.just("Name")))
+                .expectNext("Name")
+                .verifyComplete();
+        StepVerifier
+                .create(this.singleFlight.execute(1L, id -> Mono.empty()))
+                .verifyComplete();
+        assertThat(this.singleFlight.coalesced()).isZero();
+    }
+
+    @Test
+    @DisplayName("should pass errors to all lookups and retry afterwards")
+    void should_share_errors() {
+        var result = Sinks.<String>one();
+        var first = this.singleFlight.execute(1L, id -> result.asMono());
+        var second = this.singleFlight.execute(1L, id -> Mono.just("Other"));
+        StepVerifier.create(first)
+                .then(() -> StepVerifier.create(second)
+                        .then(() -> result.tryEmitError(new IllegalStateException()))
+                        .expectError(IllegalStateException.class)
+                        .verify(Duration.ofSeconds(5)))
+                .expectError(IllegalStateException.class)
+                .verify(Duration.ofSeconds(5));
+        StepVerifier
+                .create(this.singleFlight.execute(1L, id -> Mono.just("Name")))
+                .expectNext("Name")
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("should cancel the query only when all lookups cancelled")
+    void should_cancel_when_abandoned() {
+        var cancelled = new AtomicBoolean();
+        var query = Mono.<String>never().doOnCancel(() -> cancelled.set(true));
+        var first = this.singleFlight.execute(1L, id -> query).subscribe();
+        var second = this.singleFlight.execute(1L, id -> query).subscribe();
+        first.dispose();
+        assertThat(cancelled).isFalse();
+        assertThat(this.singleFlight.inFlight()).isEqualTo(1);
+        second.dispose();
+        assertThat(cancelled).isTrue();
+        assertThat(this.singleFlight.inFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("should not let lookups join a forgotten query")
+    void should_forget() {
+        var result = Sinks.<String>one();
+        var first = this.singleFlight.execute(1L, id -> result.asMono()).toFuture();
+        this.singleFlight.forget(1L);
+        StepVerifier
+                .create(this.singleFlight.execute(1L, id -> Mono.just("Update")))
+                .expectNext("Update")
+                .verifyComplete();
+        result.tryEmitValue("Name");
+        assertThat(first.join()).isEqualTo("Name");
+        assertThat(this.singleFlight.coalesced()).isZero();
+    }
+}
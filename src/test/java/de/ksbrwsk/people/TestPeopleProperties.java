@@ -0,0 +1,133 @@
+package de.ksbrwsk.people;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Builds the application settings for tests and benchmarks, starting from the defaults bound when nothing is
+ * configured, so every fixture only names the settings it depends on.
+ */
+final class TestPeopleProperties {
+
+    private PeopleProperties.Stream stream = new PeopleProperties.Stream(250);
+    private PeopleProperties.Batch batch = new PeopleProperties.Batch(500);
+    private PeopleProperties.Cache cache = new PeopleProperties.Cache(true, 10_000, Duration.ofSeconds(60),
+            Duration.ofSeconds(5));
+    private PeopleProperties.Replicas replicas = new PeopleProperties.Replicas(List.of(), Duration.ofSeconds(1),
+            Duration.ofSeconds(5), Duration.ofSeconds(5));
+    private PeopleProperties.Autocomplete autocomplete = new PeopleProperties.Autocomplete(true);
+    private PeopleProperties.Lookups lookups = new PeopleProperties.Lookups(true, 100, Duration.ofMillis(2));
+    private PeopleProperties.Changes changes = new PeopleProperties.Changes(true, 10_000, 256,
+            PeopleProperties.Changes.Overflow.DISCONNECT);
+    private PeopleProperties.Limiter limiter = new PeopleProperties.Limiter(true, 20, 4, 200, 1.5, 0.2,
+            Duration.ofSeconds(1));
+
+    private TestPeopleProperties() {
+    }
+
+    /**
+     * Starts from the default settings.
+     *
+     * @return The builder.
+     */
+    static TestPeopleProperties defaults() {
+        return new TestPeopleProperties();
+    }
+
+    /**
+     * Replaces the settings of the caches.
+     *
+     * @param cache The settings.
+     * @return The builder.
+     */
+    TestPeopleProperties cache(PeopleProperties.Cache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Enables or disables the caches, keeping their other settings.
+     *
+     * @param enabled Whether lookups and encoded bodies are cached.
+     * @return The builder.
+     */
+    TestPeopleProperties cache(boolean enabled) {
+        return this.cache(new PeopleProperties.Cache(enabled, this.cache.maximumSize(),
+                this.cache.expireAfterWrite(), this.cache.negativeExpireAfterWrite()));
+    }
+
+    /**
+     * Enables or disables the autocomplete index.
+     *
+     * @param enabled Whether the index is kept.
+     * @return The builder.
+     */
+    TestPeopleProperties autocomplete(boolean enabled) {
+        this.autocomplete = new PeopleProperties.Autocomplete(enabled);
+        return this;
+    }
+
+    /**
+     * Replaces the settings of the lookups by id.
+     *
+     * @param lookups The settings.
+     * @return The builder.
+     */
+    TestPeopleProperties lookups(PeopleProperties.Lookups lookups) {
+        this.lookups = lookups;
+        return this;
+    }
+
+    /**
+     * Enables or disables batching the lookups by id, keeping their other settings.
+     *
+     * @param batched Whether lookups are batched.
+     * @return The builder.
+     */
+    TestPeopleProperties lookups(boolean batched) {
+        return this.lookups(new PeopleProperties.Lookups(batched, this.lookups.batchSize(), this.lookups.batchWindow()));
+    }
+
+    /**
+     * Replaces the settings of the change feed.
+     *
+     * @param changes The settings.
+     * @return The builder.
+     */
+    TestPeopleProperties changes(PeopleProperties.Changes changes) {
+        this.changes = changes;
+        return this;
+    }
+
+    /**
+     * Replaces the settings of the concurrency limiter.
+     *
+     * @param limiter The settings.
+     * @return The builder.
+     */
+    TestPeopleProperties limiter(PeopleProperties.Limiter limiter) {
+        this.limiter = limiter;
+        return this;
+    }
+
+    /**
+     * Enables or disables the concurrency limiter, keeping its other settings.
+     *
+     * @param enabled Whether requests are limited.
+     * @return The builder.
+     */
+    TestPeopleProperties limiter(boolean enabled) {
+        return this.limiter(new PeopleProperties.Limiter(enabled, this.limiter.initialLimit(), this.limiter.minLimit(),
+                this.limiter.maxLimit(), this.limiter.tolerance(), this.limiter.smoothing(), this.limiter.retryAfter()));
+    }
+
+    /**
+     * Creates the settings.
+     *
+     * @return The settings.
+     */
+    PeopleProperties build() {
+        return new PeopleProperties(this.stream, this.batch, this.cache, this.replicas, this.autocomplete,
+                this.lookups, this.changes, this.limiter);
+    }
+}
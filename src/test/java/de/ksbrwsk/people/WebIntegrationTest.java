@@ -1,5 +1,6 @@
 package de.ksbrwsk.people;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -8,15 +9,23 @@ import org.junit.jupiter.params.provider.NullAndEmptySource;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import static de.ksbrwsk.people.Constants.API;
+import static de.ksbrwsk.people.Constants.NEXT_CURSOR_HEADER;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
 
 @Slf4j
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -28,6 +37,9 @@ public class WebIntegrationTest extends PostgreSqlContainer {
     @Autowired
     PersonRepository personRepository;
 
+    @Autowired
+    MeterRegistry meterRegistry;
+
     @BeforeEach
     public void setUp() {
         log.info("Running setUp -> creatíng 100 people");
@@ -83,6 +95,125 @@ public class WebIntegrationTest extends PostgreSqlContainer {
                 .isBadRequest();
     }
 
+    @Test
+    void handleFindAllMetered() {
+        var rows = this.meterRegistry.find(MeteredRepositoryInterceptor.ROWS_METRIC)
+                .tags("query", "findAll")
+                .summary();
+        var before = rows == null ? 0.0 : rows.totalAmount();
+        this.webTestClient
+                .get()
+                .uri(API)
+                .exchange()
+                .expectStatus()
+                .isOk();
+        assertThat(this.meterRegistry.get(MeteredRepositoryInterceptor.QUERY_METRIC)
+                .tags("query", "findAll", "outcome", "success")
+                .timer()
+                .count()).isPositive();
+        assertThat(this.meterRegistry.get(MeteredRepositoryInterceptor.ROWS_METRIC)
+                .tags("query", "findAll")
+                .summary()
+                .totalAmount()).isEqualTo(before + 100);
+        assertThat(this.meterRegistry.get(PersonMetrics.HANDLER_METRIC)
+                .tags("handler", "findAll", "status", "200", "outcome", "SUCCESS")
+                .timer()
+                .count()).isPositive();
+    }
+
+    @Test
+    void handleCountExact() {
+        this.webTestClient
+                .get()
+                .uri(API + "/count?exact=true")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(PersonCount.class)
+                .isEqualTo(new PersonCount(100L, true));
+    }
+
+    @Test
+    void handleStats() {
+        this.webTestClient
+                .get()
+                .uri(API + "/stats")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(100)
+                .jsonPath("$.minId").isEqualTo(this.fetchFirstPerson().id())
+                .jsonPath("$.nameLengths.8").isEqualTo(9)
+                .jsonPath("$.nameLengths.9").isEqualTo(90)
+                .jsonPath("$.nameLengths.10").isEqualTo(1);
+    }
+
+    @Test
+    void handleSearch() {
+        this.webTestClient
+                .get()
+                .uri(API + "/search?q=Person@42&limit=3")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$.[0].name").isEqualTo("Person@42");
+    }
+
+    @Test
+    void handleAutocomplete() {
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> this.webTestClient
+                .get()
+                .uri(API + "/autocomplete?prefix=person@4&limit=3")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(new ParameterizedTypeReference<List<String>>() {
+                })
+                .isEqualTo(List.of("Person@4", "Person@40", "Person@41")));
+    }
+
+    @Test
+    void handleUpdateIfMatch() {
+        Person first = this.fetchFirstPerson();
+        var etag = this.webTestClient
+                .get()
+                .uri(API + "/" + first.id())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Person.class)
+                .getResponseHeaders()
+                .getETag();
+        this.webTestClient
+                .put()
+                .uri(API + "/" + first.id())
+                .header(HttpHeaders.IF_MATCH, etag)
+                .bodyValue(new Person(first.id(), "Update"))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.version").isEqualTo(first.version() + 1);
+        this.webTestClient
+                .put()
+                .uri(API + "/" + first.id())
+                .header(HttpHeaders.IF_MATCH, etag)
+                .bodyValue(new Person(first.id(), "Lost"))
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.PRECONDITION_FAILED);
+        this.webTestClient
+                .put()
+                .uri(API + "/" + first.id())
+                .bodyValue(new Person(first.id(), "Lost", first.version()))
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+    }
+
     @Test
     void handleUpdateNotFound() {
         this.webTestClient
@@ -151,6 +282,31 @@ public class WebIntegrationTest extends PostgreSqlContainer {
                 .isBadRequest();
     }
 
+    @Test
+    void handleCreateBatch() {
+        var people = new ArrayList<Person>();
+        for (int i = 1; i <= 1200; i++) {
+            people.add(new Person(i % 100 == 0 ? "" : "Batch@" + i));
+        }
+        this.webTestClient
+                .post()
+                .uri(API + "/batch")
+                .bodyValue(people)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(PersonBatchResult.class)
+                .hasSize(1200)
+                .value(results -> {
+                    assertThat(results).extracting(PersonBatchResult::index).isSorted();
+                    assertThat(results).filteredOn(result -> result.error() != null).hasSize(12);
+                });
+        StepVerifier
+                .create(this.personRepository.count())
+                .expectNext(1288L)
+                .verifyComplete();
+    }
+
     @Test
     void handleDeleteById() {
         Person first = this.fetchFirstPerson();
@@ -183,6 +339,73 @@ public class WebIntegrationTest extends PostgreSqlContainer {
                 .jsonPath("$[1].name").isEqualTo("Person@2");
     }
 
+    @Test
+    void handleFindAllNotModified() {
+        var etag = this.webTestClient
+                .get()
+                .uri(API)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Person.class)
+                .getResponseHeaders()
+                .getETag();
+        assertThat(etag).startsWith("W/");
+        this.webTestClient
+                .get()
+                .uri(API)
+                .ifNoneMatch(etag)
+                .exchange()
+                .expectStatus()
+                .isNotModified();
+        this.personRepository.save(new Person("Name")).block();
+        this.webTestClient
+                .get()
+                .uri(API)
+                .ifNoneMatch(etag)
+                .exchange()
+                .expectStatus()
+                .isOk();
+    }
+
+    @Test
+    void handleStreamAll() {
+        var people = this.webTestClient
+                .get()
+                .uri(API)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Person.class)
+                .getResponseBody();
+        StepVerifier
+                .create(people)
+                .expectNextCount(100L)
+                .verifyComplete();
+    }
+
+    @Test
+    void handleFindPages() {
+        var names = new ArrayList<String>();
+        String cursor = null;
+        do {
+            var result = this.webTestClient
+                    .get()
+                    .uri(API + "?limit=30" + (cursor == null ? "" : "&cursor=" + cursor))
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .expectBodyList(Person.class)
+                    .returnResult();
+            result.getResponseBody().forEach(person -> names.add(person.name()));
+            cursor = result.getResponseHeaders().getFirst(NEXT_CURSOR_HEADER);
+        } while (cursor != null);
+        assertThat(names).hasSize(100);
+        assertThat(names.getFirst()).isEqualTo("Person@1");
+        assertThat(names.getLast()).isEqualTo("Person@100");
+    }
+
     @Test
     void handleNotFound() {
         this.webTestClient
@@ -208,6 +431,44 @@ public class WebIntegrationTest extends PostgreSqlContainer {
                 .jsonPath("$.name").isEqualTo(first.name());
     }
 
+    @Test
+    void handleFindAllByIds() {
+        Person first = this.fetchFirstPerson();
+        var id = first.id();
+        this.webTestClient
+                .get()
+                .uri(API + "?ids=" + (id + 1) + ",10000000000," + id)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.people.length()").isEqualTo(2)
+                .jsonPath("$.people[0].id").isEqualTo(id + 1)
+                .jsonPath("$.people[1].name").isEqualTo(first.name())
+                .jsonPath("$.missing[0]").isEqualTo(10000000000L);
+    }
+
+    @Test
+    void handleLookupStreaming() {
+        Person first = this.fetchFirstPerson();
+        var results = this.webTestClient
+                .post()
+                .uri(API + "/lookup")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(Flux.range(0, 100).map(i -> first.id() + i), Long.class)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(PersonLookupResult.class)
+                .getResponseBody();
+        StepVerifier
+                .create(results.flatMapIterable(PersonLookupResult::people))
+                .expectNextMatches(person -> person.id().equals(first.id()))
+                .expectNextCount(99L)
+                .verifyComplete();
+    }
+
     @Test
     void handleFindByIdNotFound() {
         this.webTestClient